@@ -0,0 +1,105 @@
+package com.citasmedicas.benchmarks;
+
+import com.citasmedicas.model.Cita;
+import com.citasmedicas.model.Historial;
+import com.citasmedicas.model.Medico;
+import com.citasmedicas.model.Paciente;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Operaciones de BaseDatos más usadas por la aplicación, sobre bases sintéticas de distinto tamaño.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class BenchmarksBaseDatos {
+
+    // Citas nuevas en huecos libres: después de los días generados, sin repetir médico y hueco
+    @State(Scope.Benchmark)
+    public static class CitasNuevas {
+        private final AtomicLong siguiente = new AtomicLong();
+        private LocalDate primerDia;
+        private List<Medico> medicos;
+
+        @Setup(Level.Trial)
+        public void preparar(EstadoBaseDatos estado) {
+            primerDia = GeneradorDatos.FECHA_INICIO.plusDays(estado.dias + 1L);
+            medicos = estado.medicos;
+        }
+
+        Cita crear(Paciente paciente) {
+            long k = siguiente.getAndIncrement();
+            long hueco = k / medicos.size();
+            LocalDate fecha = primerDia.plusDays(hueco / GeneradorDatos.HUECOS_POR_DIA);
+            LocalTime hora = LocalTime.of(8, 0).plusMinutes(30 * (hueco % GeneradorDatos.HUECOS_POR_DIA));
+            return new Cita(paciente, medicos.get((int) (k % medicos.size())), fecha, hora, "Benchmark");
+        }
+    }
+
+    // Un paciente con un historial de 'entradasHistorial' entradas ya guardadas
+    @State(Scope.Benchmark)
+    public static class PacienteConHistorial {
+        @Param({"1000"})
+        public int entradasHistorial;
+
+        Paciente paciente;
+
+        @Setup(Level.Trial)
+        public void preparar(EstadoBaseDatos estado) {
+            Historial historial = new Historial(null);
+            historial.setAntecedentesMedicos("Hipertensión");
+            paciente = new Paciente("Paciente Historial", "H" + System.nanoTime(), 50, historial);
+            for (int i = 0; i < entradasHistorial; i++) {
+                historial.addEntrada("Consulta de control " + i + ": presión arterial estable, se mantiene el tratamiento.");
+            }
+            estado.baseDatos.guardarPaciente(paciente);
+        }
+    }
+
+    @Benchmark
+    public Object obtenerTodasCitas(EstadoBaseDatos estado) {
+        return estado.baseDatos.obtenerTodasCitas();
+    }
+
+    @Benchmark
+    public Object obtenerCitasPorFecha(EstadoBaseDatos estado) {
+        return estado.baseDatos.obtenerCitasPorFecha(estado.diaAlAzar());
+    }
+
+    @Benchmark
+    public Object obtenerPacientePorId(EstadoBaseDatos estado) {
+        return estado.baseDatos.obtenerPacientePorId(estado.pacienteAlAzar());
+    }
+
+    @Benchmark
+    public boolean guardarCita(EstadoBaseDatos estado, CitasNuevas nuevas) {
+        Paciente paciente = estado.baseDatos.obtenerPacientePorId(estado.pacienteAlAzar());
+        return estado.baseDatos.guardarCita(nuevas.crear(paciente));
+    }
+
+    // Añade una entrada a un historial grande y lo guarda (solo se escriben las entradas nuevas)
+    @Benchmark
+    public Object guardarPacienteConHistorialGrande(EstadoBaseDatos estado, PacienteConHistorial datos) {
+        datos.paciente.getHistorial().addEntrada("Consulta de seguimiento: sin cambios.");
+        estado.baseDatos.guardarPaciente(datos.paciente);
+        return datos.paciente;
+    }
+}
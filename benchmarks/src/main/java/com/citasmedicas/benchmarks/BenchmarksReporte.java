@@ -0,0 +1,48 @@
+package com.citasmedicas.benchmarks;
+
+import com.citasmedicas.model.Reporte;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Los dos reportes de texto de Reporte. El de citas del día usa un día con citas de la base
+ * sintética (un día fijo, para que los resultados sean comparables entre ejecuciones).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class BenchmarksReporte {
+
+    private Reporte reporte;
+    private LocalDate dia;
+
+    @Setup(Level.Trial)
+    public void preparar(EstadoBaseDatos estado) {
+        reporte = new Reporte(estado.baseDatos);
+        dia = GeneradorDatos.FECHA_INICIO.plusDays(estado.dias / 2);
+    }
+
+    @Benchmark
+    public String reportePacientesAtendidos() {
+        return reporte.generarReportePacientesAtendidos();
+    }
+
+    @Benchmark
+    public String reporteCitasDelDia() {
+        return reporte.generarReporteCitasDelDia(dia);
+    }
+}
@@ -0,0 +1,42 @@
+package com.citasmedicas.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Punto de entrada de benchmarks.jar: acepta las mismas opciones que JMH, pero si no se indica
+ * -rf guarda los resultados en JSON en resultados/jmh-&lt;fecha&gt;.json, para poder comparar
+ * ejecuciones (mismos benchmarks y parámetros) sin tener que acordarse de pedirlo.
+ */
+public final class EjecutarBenchmarks {
+
+    private EjecutarBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions opciones = new CommandLineOptions(args);
+        if (opciones.shouldHelp() || opciones.shouldList() || opciones.shouldListWithParams()
+                || opciones.shouldListProfilers() || opciones.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder constructor = new OptionsBuilder().parent(opciones);
+        if (!opciones.getResultFormat().hasValue()) {
+            Path directorio = Path.of("resultados");
+            Files.createDirectories(directorio);
+            String fecha = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            Path archivo = directorio.resolve("jmh-" + fecha + ".json");
+            constructor.resultFormat(ResultFormatType.JSON).result(archivo.toString());
+            System.out.println("Resultados en " + archivo);
+        }
+        new Runner(constructor.build()).run();
+    }
+}
@@ -0,0 +1,68 @@
+package com.citasmedicas.benchmarks;
+
+import com.citasmedicas.model.Medico;
+import com.citasmedicas.persistence.BaseDatos;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Una BaseDatos abierta sobre una copia de la base sintética de 'citas' citas (ver GeneradorDatos).
+ * Los tamaños se eligen con -p citas=1000,100000,1000000; cada combinación trabaja sobre su copia,
+ * así que los benchmarks que escriben no cambian la base de la siguiente ejecución.
+ * Con -p metricas=true,false se compara el coste de las métricas de BaseDatos.
+ */
+@State(Scope.Benchmark)
+public class EstadoBaseDatos {
+
+    @Param({"1000"})
+    public int citas;
+
+    @Param({"42"})
+    public long semilla;
+
+    @Param({"10000"})
+    public int capacidadCache;
+
+    @Param({"true"})
+    public boolean metricas;
+
+    BaseDatos baseDatos;
+    List<String> idsPacientes;
+    List<Medico> medicos;
+    int dias; // Días con citas a partir de GeneradorDatos.FECHA_INICIO
+
+    private Path copia;
+
+    @Setup(Level.Trial)
+    public void abrir() throws Exception {
+        Path original = GeneradorDatos.preparar(citas, semilla);
+        idsPacientes = GeneradorDatos.leerIds(original, "Pacientes");
+        dias = GeneradorDatos.diasPara(citas);
+        copia = GeneradorDatos.copiar(original);
+        baseDatos = new BaseDatos(copia, capacidadCache, Runtime.getRuntime().availableProcessors());
+        baseDatos.getMetricas().setHabilitadas(metricas);
+        medicos = baseDatos.obtenerTodosMedicos();
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws Exception {
+        baseDatos.desconectar();
+        GeneradorDatos.borrar(copia);
+    }
+
+    String pacienteAlAzar() {
+        return idsPacientes.get(ThreadLocalRandom.current().nextInt(idsPacientes.size()));
+    }
+
+    LocalDate diaAlAzar() {
+        return GeneradorDatos.FECHA_INICIO.plusDays(ThreadLocalRandom.current().nextInt(dias));
+    }
+}
@@ -0,0 +1,254 @@
+package com.citasmedicas.benchmarks;
+
+import com.citasmedicas.model.EstadoCita;
+import com.citasmedicas.model.Paciente;
+import com.citasmedicas.persistence.BaseDatos;
+import com.citasmedicas.persistence.ResultadoImportacion;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Bases de datos SQLite sintéticas para los benchmarks, reproducibles: el mismo número de citas y
+ * la misma semilla generan siempre los mismos datos.
+ *
+ * - Pacientes: uno por cada CITAS_POR_PACIENTE citas. Médicos: uno por cada CITAS_POR_MEDICO citas,
+ *   repartidos entre ESPECIALIDADES.
+ * - Citas: la cita k es del médico k % médicos, en el hueco k / médicos de su agenda (huecos de
+ *   30 minutos de 08:00 a 18:00 a partir de FECHA_INICIO), así que ningún médico tiene citas
+ *   solapadas y cada día tiene médicos * HUECOS_POR_DIA citas. Paciente, motivo y estado al azar.
+ * - Historial: la mitad de los pacientes tiene de 1 a MAX_ENTRADAS_HISTORIAL entradas de los tres
+ *   años anteriores a FECHA_INICIO.
+ * - Se cargan con BaseDatos.importarCsv, como una importación real: también se rellenan los
+ *   agregados, el índice de búsqueda y los contadores de IDs. Las entradas de historial se
+ *   guardan después con guardarPacienteDiferido, en lotes.
+ *
+ * La base generada se guarda en el directorio de datos (propiedad benchmarks.datos, por defecto
+ * target/datos-benchmark) y se reutiliza entre ejecuciones; cada benchmark trabaja sobre una copia.
+ */
+public final class GeneradorDatos {
+
+    public static final LocalDate FECHA_INICIO = LocalDate.of(2025, 1, 6);
+    public static final int HUECOS_POR_DIA = 20; // 08:00 - 18:00 en huecos de 30 minutos
+    public static final String[] ESPECIALIDADES = {
+            "General", "Pediatría", "Cardiología", "Dermatología", "Traumatología", "Ginecología", "Oftalmología", "Neurología"};
+
+    private static final int CITAS_POR_PACIENTE = 10;
+    private static final int CITAS_POR_MEDICO = 1_000;
+    private static final int MAX_ENTRADAS_HISTORIAL = 6;
+    private static final LocalTime HORA_APERTURA = LocalTime.of(8, 0);
+    private static final int VERSION_DATOS = 2; // Cambia con el contenido generado: las bases anteriores no se reutilizan
+
+    private static final String[] NOMBRES = {
+            "Ana", "Luis", "María", "José", "Carmen", "Jorge", "Lucía", "Pedro", "Rosa", "Miguel", "Elena", "Raúl"};
+    private static final String[] APELLIDOS = {
+            "García", "Pérez", "Quispe", "Mamani", "Rojas", "Flores", "Torres", "Huamán", "Vargas", "Ramos", "Castillo", "Chávez"};
+    private static final String[] MOTIVOS = {
+            "Control", "Dolor de cabeza", "Fiebre", "Chequeo anual", "Dolor lumbar", "Revisión de análisis", "Vacunación", "Alergia"};
+    private static final String[] ENTRADAS = {
+            "Control de presión arterial: valores normales.", "Se indica tratamiento con paracetamol por 5 días.",
+            "Resultados de laboratorio dentro de rangos normales.", "Se deriva a especialista para evaluación.",
+            "Paciente refiere mejoría de los síntomas.", "Se aplica vacuna contra la influenza.",
+            "Se solicita radiografía de tórax.", "Ajuste de dosis de metformina."};
+    private static final String[] ANTECEDENTES = {
+            "", "Asma", "Hipertensión", "Diabetes tipo 2", "Alergia a la penicilina", "Migraña crónica"};
+
+    private GeneradorDatos() {
+    }
+
+    public static int medicosPara(int citas) {
+        return Math.max(10, citas / CITAS_POR_MEDICO);
+    }
+
+    public static int pacientesPara(int citas) {
+        return Math.max(100, citas / CITAS_POR_PACIENTE);
+    }
+
+    // Días que ocupan las citas generadas (el último puede estar incompleto)
+    public static int diasPara(int citas) {
+        int porDia = medicosPara(citas) * HUECOS_POR_DIA;
+        return (citas + porDia - 1) / porDia;
+    }
+
+    // Base de datos con 'citas' citas y la semilla dada; la genera si todavía no existe
+    public static synchronized Path preparar(int citas, long semilla) throws IOException {
+        Path directorio = Path.of(System.getProperty("benchmarks.datos", "target/datos-benchmark"));
+        Path archivo = directorio.resolve("citas-" + citas + "-" + semilla + "-v" + VERSION_DATOS + ".db");
+        if (Files.exists(archivo)) return archivo;
+
+        Files.createDirectories(directorio);
+        Path temporal = Files.createTempDirectory(directorio, "generando-");
+        try {
+            generar(temporal, citas, semilla);
+            // Hasta aquí la base está incompleta: solo se publica con su nombre definitivo al terminar
+            Files.move(temporal.resolve("citas.db"), archivo, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            borrarDirectorio(temporal);
+        }
+        return archivo;
+    }
+
+    // Copia de trabajo de una base generada, para que los benchmarks que escriben no la modifiquen
+    public static Path copiar(Path original) throws IOException {
+        Path copia = Files.createTempFile(original.getParent(), "trabajo-", ".db");
+        Files.copy(original, copia, StandardCopyOption.REPLACE_EXISTING);
+        return copia;
+    }
+
+    // Borra una base de datos junto con sus archivos -wal y -shm
+    public static void borrar(Path archivo) throws IOException {
+        Files.deleteIfExists(archivo);
+        Files.deleteIfExists(archivo.resolveSibling(archivo.getFileName() + "-wal"));
+        Files.deleteIfExists(archivo.resolveSibling(archivo.getFileName() + "-shm"));
+    }
+
+    // IDs de una tabla (Pacientes, Medicos o Citas) en el orden en que se generaron
+    public static List<String> leerIds(Path archivo, String tabla) throws SQLException {
+        return leerIds(archivo, tabla, "1");
+    }
+
+    // Igual, solo las filas que cumplen 'condicion' (SQL fijo, p. ej. "estado = 0")
+    public static List<String> leerIds(Path archivo, String tabla, String condicion) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + archivo);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM " + tabla + " WHERE " + condicion + " ORDER BY rowid")) {
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+        }
+        return ids;
+    }
+
+    private static void generar(Path directorio, int citas, long semilla) throws IOException {
+        Random aleatorio = new Random(semilla);
+        int pacientes = pacientesPara(citas);
+        int medicos = medicosPara(citas);
+        Path archivoPacientes = directorio.resolve("pacientes.csv");
+        Path archivoMedicos = directorio.resolve("medicos.csv");
+        Path archivoCitas = directorio.resolve("citas.csv");
+
+        try (BufferedWriter out = Files.newBufferedWriter(archivoPacientes, StandardCharsets.UTF_8)) {
+            out.write("id,nombre,dni,edad,antecedentes\n");
+            for (int i = 0; i < pacientes; i++) {
+                out.write("p" + i + "," + nombre(aleatorio) + "," + (10_000_000 + i) + "," + aleatorio.nextInt(90) + ","
+                        + ANTECEDENTES[aleatorio.nextInt(ANTECEDENTES.length)] + "\n");
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(archivoMedicos, StandardCharsets.UTF_8)) {
+            out.write("id,nombre,especialidad\n");
+            for (int i = 0; i < medicos; i++) {
+                out.write("m" + i + ",Dr. " + nombre(aleatorio) + "," + ESPECIALIDADES[i % ESPECIALIDADES.length] + "\n");
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(archivoCitas, StandardCharsets.UTF_8)) {
+            out.write("id,paciente_id,medico_id,fecha,hora,motivo,estado\n");
+            for (int k = 0; k < citas; k++) {
+                int hueco = k / medicos;
+                LocalDate fecha = FECHA_INICIO.plusDays(hueco / HUECOS_POR_DIA);
+                LocalTime hora = HORA_APERTURA.plusMinutes(30L * (hueco % HUECOS_POR_DIA));
+                out.write("c" + k + ",p" + aleatorio.nextInt(pacientes) + ",m" + (k % medicos) + "," + fecha + "," + hora + ","
+                        + MOTIVOS[aleatorio.nextInt(MOTIVOS.length)] + "," + estado(aleatorio).getCodigo() + "\n");
+            }
+        }
+
+        BaseDatos baseDatos = new BaseDatos(directorio.resolve("citas.db"));
+        try {
+            List<ResultadoImportacion> resultados = baseDatos.importarCsv(archivoPacientes, archivoMedicos, archivoCitas,
+                    (archivo, leidas, importadas, rechazadas) -> { });
+            if (resultados.size() != 3) {
+                throw new IOException("No se pudo generar la base de datos sintética (ver los mensajes de la importación)");
+            }
+            for (ResultadoImportacion resultado : resultados) {
+                if (resultado.getError() != null) {
+                    throw new IOException("No se pudo generar la base de datos sintética: " + resultado);
+                }
+            }
+            agregarHistoriales(baseDatos, directorio.resolve("citas.db"), aleatorio);
+        } finally {
+            baseDatos.desconectar();
+        }
+    }
+
+    private static void agregarHistoriales(BaseDatos baseDatos, Path archivo, Random aleatorio) throws IOException {
+        List<String> ids;
+        try {
+            ids = leerIds(archivo, "Pacientes");
+        } catch (SQLException e) {
+            throw new IOException("No se pudieron leer los pacientes generados: " + e.getMessage(), e);
+        }
+        baseDatos.habilitarEscrituraDiferida(10_000, 1_000, 100);
+        List<CompletableFuture<Void>> escrituras = new ArrayList<>();
+        for (String id : ids) {
+            if (!aleatorio.nextBoolean()) continue;
+            Paciente paciente = baseDatos.obtenerPacientePorId(id);
+            int entradas = 1 + aleatorio.nextInt(MAX_ENTRADAS_HISTORIAL);
+            for (int i = 0; i < entradas; i++) {
+                LocalDate fecha = FECHA_INICIO.minusDays(1 + aleatorio.nextInt(3 * 365));
+                paciente.getHistorial().addEntrada(fecha, ENTRADAS[aleatorio.nextInt(ENTRADAS.length)]);
+            }
+            escrituras.add(baseDatos.guardarPacienteDiferido(paciente));
+        }
+        try {
+            CompletableFuture.allOf(escrituras.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw new IOException("No se pudieron guardar los historiales generados: " + e.getCause().getMessage(), e);
+        }
+    }
+
+    private static String nombre(Random aleatorio) {
+        return NOMBRES[aleatorio.nextInt(NOMBRES.length)] + " " + APELLIDOS[aleatorio.nextInt(APELLIDOS.length)];
+    }
+
+    // 60% realizadas, 10% canceladas y el resto programadas
+    private static EstadoCita estado(Random aleatorio) {
+        int n = aleatorio.nextInt(10);
+        if (n < 6) return EstadoCita.REALIZADA;
+        if (n < 7) return EstadoCita.CANCELADA;
+        return EstadoCita.PROGRAMADA;
+    }
+
+    private static void borrarDirectorio(Path directorio) throws IOException {
+        if (!Files.exists(directorio)) return;
+        try (var archivos = Files.list(directorio)) {
+            for (Path archivo : (Iterable<Path>) archivos::iterator) {
+                Files.delete(archivo);
+            }
+        }
+        Files.delete(directorio);
+    }
+
+    // Genera las bases por adelantado: GeneradorDatos <citas>... [--semilla N]
+    public static void main(String[] args) throws IOException {
+        long semilla = 42;
+        List<Integer> tamanos = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--semilla") && i + 1 < args.length) {
+                semilla = Long.parseLong(args[++i]);
+            } else {
+                tamanos.add(Integer.parseInt(args[i].replace("_", "")));
+            }
+        }
+        if (tamanos.isEmpty()) tamanos = List.of(1_000, 100_000, 1_000_000);
+        for (int citas : tamanos) {
+            long inicio = System.nanoTime();
+            Path archivo = preparar(citas, semilla);
+            System.out.println(archivo + " (" + citas + " citas) en " + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.citasmedicas.carga;
+
+import com.citasmedicas.benchmarks.GeneradorDatos;
+import com.citasmedicas.model.Administrador;
+import com.citasmedicas.model.Cita;
+import com.citasmedicas.model.EstadoCita;
+import com.citasmedicas.model.Medico;
+import com.citasmedicas.model.Paciente;
+import com.citasmedicas.model.Reporte;
+import com.citasmedicas.persistence.BaseDatos;
+import com.citasmedicas.persistence.FiltroCitas;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ejecuta las operaciones de la prueba de carga sobre una base sintética (ver GeneradorDatos).
+ * Lo compartido entre hilos es seguro para uso concurrente: las citas nuevas toman huecos de un
+ * contador atómico y las citas programadas se reparten desde una cola.
+ */
+final class ContextoCarga {
+
+    // Textos de búsqueda: prefijos de nombres, de DNI y palabras de los historiales generados
+    private static final String[] BUSQUEDAS = {"gar", "quis", "mam", "rojas", "ana", "luis", "flor", "1000", "presion", "vacuna"};
+    private static final int TAMANO_PAGINA = 50;
+
+    private final BaseDatos baseDatos;
+    private final Administrador administrador;
+    private final Reporte reporte;
+    private final List<String> idsPacientes;
+    private final List<Medico> medicos;
+    private final int dias;
+    private final Queue<String> programadas; // Citas que todavía pueden pasar a Realizada o Cancelada
+    private final AtomicLong siguienteCita = new AtomicLong();
+    private final LocalDate primerDiaLibre;
+
+    ContextoCarga(BaseDatos baseDatos, List<String> idsPacientes, List<String> idsProgramadas, int dias) {
+        this.baseDatos = baseDatos;
+        this.administrador = new Administrador(baseDatos);
+        this.reporte = new Reporte(baseDatos);
+        this.idsPacientes = idsPacientes;
+        this.medicos = baseDatos.obtenerTodosMedicos();
+        this.dias = dias;
+        this.programadas = new ConcurrentLinkedQueue<>(idsProgramadas);
+        this.primerDiaLibre = GeneradorDatos.FECHA_INICIO.plusDays(dias + 1L);
+    }
+
+    // Devuelve false si la operación no se pudo completar (error de la DB, cita rechazada, etc.)
+    boolean ejecutar(TipoOperacion tipo, Random aleatorio) {
+        switch (tipo) {
+            case BUSCAR_PACIENTE:
+                return baseDatos.obtenerPacientePorId(pacienteAlAzar(aleatorio)) != null;
+            case BUSCAR_PACIENTES_TEXTO:
+                baseDatos.buscarPacientes(BUSQUEDAS[aleatorio.nextInt(BUSQUEDAS.length)], 20);
+                return true;
+            case CITAS_DEL_DIA:
+                baseDatos.obtenerCitasPorFecha(diaAlAzar(aleatorio));
+                return true;
+            case PAGINA_CITAS:
+                FiltroCitas filtro = new FiltroCitas();
+                filtro.setMedicoId(medicos.get(aleatorio.nextInt(medicos.size())).getId());
+                filtro.setFechaDesde(diaAlAzar(aleatorio));
+                try {
+                    baseDatos.obtenerPaginaCitas(filtro, null, TAMANO_PAGINA);
+                    return true;
+                } catch (SQLException e) {
+                    System.err.println("Error al obtener página de citas: " + e.getMessage());
+                    return false;
+                }
+            case GUARDAR_CITA:
+                return guardarCita(aleatorio);
+            case ACTUALIZAR_ESTADO:
+                String citaId = programadas.poll();
+                if (citaId == null) return false; // Ya no quedan citas programadas
+                EstadoCita nuevo = aleatorio.nextInt(5) == 0 ? EstadoCita.CANCELADA : EstadoCita.REALIZADA;
+                return administrador.actualizarEstadoCita(citaId, nuevo);
+            case AGREGAR_HISTORIAL:
+                Paciente paciente = baseDatos.obtenerPacientePorId(pacienteAlAzar(aleatorio));
+                if (paciente == null) return false;
+                paciente.getHistorial().addEntrada("Consulta de seguimiento (prueba de carga).");
+                baseDatos.guardarPaciente(paciente);
+                return true;
+            case REPORTE_DEL_DIA:
+                reporte.generarReporteCitasDelDia(diaAlAzar(aleatorio));
+                return true;
+            case REPORTE_ATENDIDOS:
+                reporte.generarReportePacientesAtendidos();
+                return true;
+            case TODAS_CITAS:
+                baseDatos.obtenerTodasCitas();
+                return true;
+            default:
+                throw new IllegalArgumentException("Operación sin implementar: " + tipo);
+        }
+    }
+
+    // Cita nueva en un hueco libre (después de los días generados, sin repetir médico y hueco)
+    private boolean guardarCita(Random aleatorio) {
+        Paciente paciente = baseDatos.obtenerPacientePorId(pacienteAlAzar(aleatorio));
+        if (paciente == null) return false;
+        long k = siguienteCita.getAndIncrement();
+        long hueco = k / medicos.size();
+        LocalDate fecha = primerDiaLibre.plusDays(hueco / GeneradorDatos.HUECOS_POR_DIA);
+        LocalTime hora = LocalTime.of(8, 0).plusMinutes(30 * (hueco % GeneradorDatos.HUECOS_POR_DIA));
+        Cita cita = new Cita(paciente, medicos.get((int) (k % medicos.size())), fecha, hora, "Prueba de carga");
+        if (!baseDatos.guardarCita(cita)) return false;
+        programadas.add(cita.getId());
+        return true;
+    }
+
+    private String pacienteAlAzar(Random aleatorio) {
+        return idsPacientes.get(aleatorio.nextInt(idsPacientes.size()));
+    }
+
+    private LocalDate diaAlAzar(Random aleatorio) {
+        return GeneradorDatos.FECHA_INICIO.plusDays(aleatorio.nextInt(dias));
+    }
+}
@@ -0,0 +1,56 @@
+package com.citasmedicas.carga;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencias (histograma HdrHistogram, en microsegundos) y fallos de un tipo de operación.
+ * Los hilos de carga registran en un Recorder sin bloquearse; el hilo que informa del progreso
+ * toma cada intervalo con tomarIntervalo() y lo suma al total.
+ */
+final class EstadisticasOperacion {
+
+    private static final int DIGITOS_SIGNIFICATIVOS = 3;
+
+    private final TipoOperacion tipo;
+    private final Recorder recorder = new Recorder(DIGITOS_SIGNIFICATIVOS);
+    private final Histogram total = new Histogram(DIGITOS_SIGNIFICATIVOS);
+    private final LongAdder fallidas = new LongAdder();
+    private Histogram intervalo; // Se reutiliza entre intervalos
+
+    EstadisticasOperacion(TipoOperacion tipo) {
+        this.tipo = tipo;
+    }
+
+    TipoOperacion getTipo() {
+        return tipo;
+    }
+
+    void registrar(long nanos, boolean correcta) {
+        recorder.recordValue(Math.max(1, nanos / 1_000));
+        if (!correcta) fallidas.increment();
+    }
+
+    // Latencias registradas desde la llamada anterior; se suman al total si 'acumular'
+    synchronized Histogram tomarIntervalo(boolean acumular) {
+        intervalo = recorder.getIntervalHistogram(intervalo);
+        if (acumular) total.add(intervalo);
+        return intervalo;
+    }
+
+    // Fin del calentamiento: se descarta lo registrado hasta ahora
+    synchronized void reiniciar() {
+        tomarIntervalo(false);
+        total.reset();
+        fallidas.reset();
+    }
+
+    synchronized Histogram getTotal() {
+        return total.copy();
+    }
+
+    long getFallidas() {
+        return fallidas.sum();
+    }
+}
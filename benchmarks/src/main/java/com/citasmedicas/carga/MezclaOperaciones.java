@@ -0,0 +1,72 @@
+package com.citasmedicas.carga;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Proporción de cada operación en la carga. Se escribe como "guardarCita=10,citasDelDia=30,...":
+ * las operaciones indicadas reemplazan su peso por defecto y el resto lo conserva (peso 0 = no se ejecuta).
+ */
+public final class MezclaOperaciones {
+
+    private final TipoOperacion[] tipos;
+    private final int[] acumulados; // Pesos acumulados, para elegir con un único número al azar
+    private final int total;
+
+    private MezclaOperaciones(Map<TipoOperacion, Integer> pesos) {
+        tipos = new TipoOperacion[pesos.size()];
+        acumulados = new int[pesos.size()];
+        int suma = 0, i = 0;
+        for (Map.Entry<TipoOperacion, Integer> peso : pesos.entrySet()) {
+            suma += peso.getValue();
+            tipos[i] = peso.getKey();
+            acumulados[i++] = suma;
+        }
+        total = suma;
+    }
+
+    public static MezclaOperaciones porDefecto() {
+        return parsear("");
+    }
+
+    public static MezclaOperaciones parsear(String texto) {
+        Map<TipoOperacion, Integer> pesos = new EnumMap<>(TipoOperacion.class);
+        for (TipoOperacion tipo : TipoOperacion.values()) {
+            pesos.put(tipo, tipo.getPesoPorDefecto());
+        }
+        for (String parte : texto.split(",")) {
+            if (parte.isBlank()) continue;
+            String[] nombreYPeso = parte.split("=");
+            TipoOperacion tipo = TipoOperacion.desdeNombre(nombreYPeso[0].trim());
+            if (tipo == null || nombreYPeso.length != 2) {
+                throw new IllegalArgumentException("Operación no válida en la mezcla: " + parte);
+            }
+            int peso = Integer.parseInt(nombreYPeso[1].trim());
+            if (peso < 0) throw new IllegalArgumentException("Peso negativo en la mezcla: " + parte);
+            pesos.put(tipo, peso);
+        }
+        pesos.values().removeIf(peso -> peso == 0);
+        if (pesos.isEmpty()) throw new IllegalArgumentException("La mezcla no tiene ninguna operación");
+        return new MezclaOperaciones(pesos);
+    }
+
+    public TipoOperacion elegir(Random aleatorio) {
+        int n = aleatorio.nextInt(total);
+        for (int i = 0; i < acumulados.length; i++) {
+            if (n < acumulados[i]) return tipos[i];
+        }
+        return tipos[tipos.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tipos.length; i++) {
+            int peso = acumulados[i] - (i > 0 ? acumulados[i - 1] : 0);
+            if (sb.length() > 0) sb.append(',');
+            sb.append(tipos[i]).append('=').append(peso);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,268 @@
+package com.citasmedicas.carga;
+
+import com.citasmedicas.benchmarks.GeneradorDatos;
+import com.citasmedicas.persistence.BaseDatos;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Prueba de carga sin interfaz: abre una copia de una base sintética (GeneradorDatos) y ejecuta
+ * desde varios hilos una mezcla de operaciones de BaseDatos, Administrador y Reporte. Al final
+ * informa, por operación y en total, de las operaciones por segundo y de las latencias p50, p99 y p999.
+ *
+ * Con --tasa la carga es de lazo abierto: cada hilo lanza sus operaciones a intervalos fijos y la
+ * latencia se mide desde el momento en que la operación debía empezar, así que incluye la espera
+ * cuando el sistema no da abasto (sin ese ajuste los percentiles altos salen demasiado optimistas).
+ * Sin --tasa cada hilo lanza la siguiente operación en cuanto termina la anterior.
+ *
+ * Uso: PruebaCarga [--citas 100000] [--semilla 42] [--hilos 8] [--tasa 0] [--duracion 60]
+ *                  [--calentamiento 10] [--intervalo 5] [--mezcla guardarCita=10,citasDelDia=20,...]
+ *                  [--lectores N] [--cache 10000] [--json archivo] [--hgrm archivo] [--detalle]
+ */
+public final class PruebaCarga {
+
+    private final Map<String, String> opciones;
+    private final int hilos;
+    private final double tasa;           // Operaciones por segundo entre todos los hilos (0 = sin límite)
+    private final long semilla;
+    private final MezclaOperaciones mezcla;
+    private final Map<TipoOperacion, EstadisticasOperacion> estadisticas = new EnumMap<>(TipoOperacion.class);
+    private final PrintStream consola;   // Salida del informe: System.out se silencia durante la prueba
+    private volatile boolean detener;
+
+    private PruebaCarga(Map<String, String> opciones, PrintStream consola) {
+        this.opciones = opciones;
+        this.consola = consola;
+        this.hilos = entero("hilos", 8);
+        this.tasa = Double.parseDouble(opciones.getOrDefault("tasa", "0"));
+        this.semilla = Long.parseLong(opciones.getOrDefault("semilla", "42"));
+        this.mezcla = MezclaOperaciones.parsear(opciones.getOrDefault("mezcla", ""));
+        for (TipoOperacion tipo : TipoOperacion.values()) {
+            estadisticas.put(tipo, new EstadisticasOperacion(tipo));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Opción no válida: " + args[i]);
+            String clave = args[i].substring(2);
+            if (clave.equals("detalle")) {
+                opciones.put(clave, "true");
+            } else if (i + 1 < args.length) {
+                opciones.put(clave, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Falta el valor de --" + clave);
+            }
+        }
+        new PruebaCarga(opciones, System.out).ejecutar();
+    }
+
+    private void ejecutar() throws Exception {
+        // Los mensajes por operación de BaseDatos saturarían la consola (y la medirían): se silencian
+        boolean detalle = opciones.containsKey("detalle");
+        if (!detalle) System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            int citas = entero("citas", 100_000);
+            consola.println("Preparando la base sintética de " + citas + " citas (semilla " + semilla + ")...");
+            Path original = GeneradorDatos.preparar(citas, semilla);
+            List<String> idsPacientes = GeneradorDatos.leerIds(original, "Pacientes");
+            List<String> idsProgramadas = GeneradorDatos.leerIds(original, "Citas", "estado = 0");
+            Collections.shuffle(idsProgramadas, new Random(semilla));
+            Path copia = GeneradorDatos.copiar(original);
+
+            BaseDatos baseDatos = new BaseDatos(copia, entero("cache", BaseDatos.CAPACIDAD_CACHE_POR_DEFECTO),
+                    entero("lectores", Runtime.getRuntime().availableProcessors()));
+            try {
+                ContextoCarga contexto = new ContextoCarga(baseDatos, idsPacientes, idsProgramadas, GeneradorDatos.diasPara(citas));
+                consola.println("Mezcla: " + mezcla + "; " + hilos + " hilo(s), "
+                        + (tasa > 0 ? tasa + " operaciones/s" : "sin límite de tasa"));
+                long segundosMedidos = lanzar(contexto);
+                informar(segundosMedidos);
+            } finally {
+                baseDatos.desconectar();
+                GeneradorDatos.borrar(copia);
+            }
+        } finally {
+            if (!detalle) System.setOut(consola);
+        }
+    }
+
+    // Arranca los hilos, descarta el calentamiento y mide; devuelve la duración medida en segundos
+    private long lanzar(ContextoCarga contexto) throws InterruptedException {
+        long calentamiento = entero("calentamiento", 10);
+        long duracion = entero("duracion", 60);
+        long intervalo = Math.max(1, entero("intervalo", 5));
+
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int i = 0; i < hilos; i++) {
+            Random aleatorio = new Random(semilla + i); // Misma secuencia de operaciones en cada ejecución
+            Thread hilo = new Thread(() -> trabajar(contexto, aleatorio), "carga-" + i);
+            trabajadores.add(hilo);
+            hilo.start();
+        }
+
+        if (calentamiento > 0) {
+            consola.println("Calentamiento: " + calentamiento + " s");
+            TimeUnit.SECONDS.sleep(calentamiento);
+        }
+        for (EstadisticasOperacion e : estadisticas.values()) {
+            e.reiniciar();
+        }
+        long inicio = System.nanoTime();
+        long fin = inicio + TimeUnit.SECONDS.toNanos(duracion);
+        for (long siguiente = inicio + TimeUnit.SECONDS.toNanos(intervalo); ; siguiente += TimeUnit.SECONDS.toNanos(intervalo)) {
+            long espera = Math.min(siguiente, fin) - System.nanoTime();
+            if (espera > 0) TimeUnit.NANOSECONDS.sleep(espera);
+            if (System.nanoTime() >= fin) break;
+            informarIntervalo((System.nanoTime() - inicio) / 1_000_000_000, intervalo);
+        }
+        detener = true;
+        long medidos = System.nanoTime() - inicio;
+        for (Thread hilo : trabajadores) {
+            hilo.join();
+        }
+        for (EstadisticasOperacion e : estadisticas.values()) {
+            e.tomarIntervalo(true); // Lo registrado desde el último informe de progreso
+        }
+        return Math.max(1, Math.round(medidos / 1e9));
+    }
+
+    private void trabajar(ContextoCarga contexto, Random aleatorio) {
+        long intervaloNanos = tasa > 0 ? (long) (hilos * 1_000_000_000L / tasa) : 0;
+        long previsto = System.nanoTime();
+        while (!detener) {
+            long inicio;
+            if (intervaloNanos > 0) {
+                // Lazo abierto: la operación debía empezar en 'previsto', aunque vaya con retraso
+                previsto += intervaloNanos;
+                long espera = previsto - System.nanoTime();
+                if (espera > 0) LockSupport.parkNanos(espera);
+                inicio = previsto;
+            } else {
+                inicio = System.nanoTime();
+            }
+            TipoOperacion tipo = mezcla.elegir(aleatorio);
+            boolean correcta;
+            try {
+                correcta = contexto.ejecutar(tipo, aleatorio);
+            } catch (RuntimeException e) {
+                correcta = false;
+                System.err.println("Error en " + tipo + ": " + e);
+            }
+            estadisticas.get(tipo).registrar(System.nanoTime() - inicio, correcta);
+        }
+    }
+
+    private void informarIntervalo(long segundo, long intervalo) {
+        Histogram todas = new Histogram(3);
+        for (EstadisticasOperacion e : estadisticas.values()) {
+            todas.add(e.tomarIntervalo(true));
+        }
+        consola.printf(Locale.ROOT, "[%4d s] %9.1f op/s   p50 %8.3f ms   p99 %8.3f ms   máx %8.3f ms%n",
+                segundo, todas.getTotalCount() / (double) intervalo,
+                ms(todas.getValueAtPercentile(50)), ms(todas.getValueAtPercentile(99)), ms(todas.getMaxValue()));
+    }
+
+    private void informar(long segundos) throws IOException {
+        Histogram todas = new Histogram(3);
+        long fallidasTotal = 0;
+        List<EstadisticasOperacion> ejecutadas = new ArrayList<>();
+        for (EstadisticasOperacion e : estadisticas.values()) {
+            if (e.getTotal().getTotalCount() == 0) continue;
+            ejecutadas.add(e);
+            todas.add(e.getTotal());
+            fallidasTotal += e.getFallidas();
+        }
+
+        consola.println();
+        consola.printf(Locale.ROOT, "%-22s %10s %9s %10s %10s %10s %10s %10s%n",
+                "Operación", "Total", "Fallidas", "op/s", "p50 ms", "p99 ms", "p999 ms", "máx ms");
+        for (EstadisticasOperacion e : ejecutadas) {
+            imprimirFila(e.getTipo().getNombre(), e.getTotal(), e.getFallidas(), segundos);
+        }
+        imprimirFila("TOTAL", todas, fallidasTotal, segundos);
+
+        String json = opciones.get("json");
+        if (json != null) {
+            escribirJson(Path.of(json), ejecutadas, todas, fallidasTotal, segundos);
+            consola.println("Resultados en " + json);
+        }
+        String hgrm = opciones.get("hgrm");
+        if (hgrm != null) {
+            escribirDistribuciones(Path.of(hgrm), ejecutadas);
+            consola.println("Distribuciones de latencia en " + hgrm);
+        }
+    }
+
+    private void imprimirFila(String nombre, Histogram h, long fallidas, long segundos) {
+        consola.printf(Locale.ROOT, "%-22s %10d %9d %10.1f %10.3f %10.3f %10.3f %10.3f%n",
+                nombre, h.getTotalCount(), fallidas, h.getTotalCount() / (double) segundos,
+                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(99)),
+                ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()));
+    }
+
+    // Resultados para comparar ejecuciones: configuración y, por operación, totales y percentiles (ms)
+    private void escribirJson(Path archivo, List<EstadisticasOperacion> ejecutadas, Histogram todas,
+                              long fallidasTotal, long segundos) throws IOException {
+        try (Writer out = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            out.write("{\n  \"configuracion\": {");
+            boolean primera = true;
+            for (Map.Entry<String, String> opcion : new TreeMap<>(opciones).entrySet()) {
+                out.write((primera ? "" : ",") + "\n    \"" + opcion.getKey() + "\": \"" + opcion.getValue().replace("\"", "\\\"") + "\"");
+                primera = false;
+            }
+            out.write("\n  },\n  \"mezcla\": \"" + mezcla + "\",\n  \"segundos\": " + segundos + ",\n  \"operaciones\": [");
+            for (int i = 0; i < ejecutadas.size(); i++) {
+                EstadisticasOperacion e = ejecutadas.get(i);
+                out.write((i > 0 ? "," : "") + "\n    " + objetoJson(e.getTipo().getNombre(), e.getTotal(), e.getFallidas(), segundos));
+            }
+            out.write("\n  ],\n  \"total\": " + objetoJson("total", todas, fallidasTotal, segundos) + "\n}\n");
+        }
+    }
+
+    private static String objetoJson(String nombre, Histogram h, long fallidas, long segundos) {
+        return String.format(Locale.ROOT, "{\"operacion\": \"%s\", \"total\": %d, \"fallidas\": %d, \"porSegundo\": %.1f, "
+                        + "\"mediaMs\": %.3f, \"p50Ms\": %.3f, \"p99Ms\": %.3f, \"p999Ms\": %.3f, \"maxMs\": %.3f}",
+                nombre, h.getTotalCount(), fallidas, h.getTotalCount() / (double) segundos, h.getMean() / 1_000,
+                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(99)),
+                ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()));
+    }
+
+    // Distribución completa de percentiles de cada operación, en el formato .hgrm de HdrHistogram
+    private static void escribirDistribuciones(Path archivo, List<EstadisticasOperacion> ejecutadas) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(archivo), false, StandardCharsets.UTF_8)) {
+            for (EstadisticasOperacion e : ejecutadas) {
+                out.println("# " + e.getTipo().getNombre() + " (ms)");
+                e.getTotal().outputPercentileDistribution(out, 1_000.0);
+                out.println();
+            }
+        }
+    }
+
+    private static double ms(long microsegundos) {
+        return microsegundos / 1_000.0;
+    }
+
+    private int entero(String clave, int porDefecto) {
+        String valor = opciones.get(clave);
+        return valor != null ? Integer.parseInt(valor.replace("_", "")) : porDefecto;
+    }
+}
@@ -0,0 +1,47 @@
+package com.citasmedicas.carga;
+
+/**
+ * Operaciones de la prueba de carga. El nombre es el que se usa en --mezcla; el peso por defecto
+ * aproxima el uso de una clínica: muchas consultas por ID y por día, menos escrituras y pocos reportes.
+ */
+public enum TipoOperacion {
+    BUSCAR_PACIENTE("buscarPaciente", 25),          // BaseDatos.obtenerPacientePorId
+    BUSCAR_PACIENTES_TEXTO("buscarPacientesTexto", 10), // BaseDatos.buscarPacientes (búsqueda mientras se escribe)
+    CITAS_DEL_DIA("citasDelDia", 20),               // BaseDatos.obtenerCitasPorFecha
+    PAGINA_CITAS("paginaCitas", 10),                // BaseDatos.obtenerPaginaCitas (tabla de la GUI)
+    GUARDAR_CITA("guardarCita", 10),                // BaseDatos.guardarCita en un hueco libre
+    ACTUALIZAR_ESTADO("actualizarEstado", 10),      // Administrador.actualizarEstadoCita sobre una cita programada
+    AGREGAR_HISTORIAL("agregarHistorial", 10),      // Entrada nueva de historial y BaseDatos.guardarPaciente
+    REPORTE_DEL_DIA("reporteDelDia", 3),            // Reporte.generarReporteCitasDelDia
+    REPORTE_ATENDIDOS("reporteAtendidos", 2),       // Reporte.generarReportePacientesAtendidos
+    TODAS_CITAS("todasCitas", 0);                   // BaseDatos.obtenerTodasCitas (muy costosa: solo si se pide)
+
+    private final String nombre;
+    private final int pesoPorDefecto;
+
+    TipoOperacion(String nombre, int pesoPorDefecto) {
+        this.nombre = nombre;
+        this.pesoPorDefecto = pesoPorDefecto;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public int getPesoPorDefecto() {
+        return pesoPorDefecto;
+    }
+
+    // null si no hay ninguna operación con ese nombre
+    public static TipoOperacion desdeNombre(String nombre) {
+        for (TipoOperacion tipo : values()) {
+            if (tipo.nombre.equalsIgnoreCase(nombre)) return tipo;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return nombre;
+    }
+}
@@ -2,10 +2,20 @@ package com.citasmedicas.gui;
 
 import com.citasmedicas.model.*;
 import com.citasmedicas.persistence.BaseDatos;
+import com.citasmedicas.persistence.HuecoLibre;
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.text.JTextComponent;
 import java.awt.*;
+import java.io.File;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class InterfazGrafica extends JFrame {
 
@@ -13,13 +23,22 @@ public class InterfazGrafica extends JFrame {
     // 1. DECLARACIÓN DE DEPENDENCIAS Y COMPONENTES SWING
     // ====================================================================
 
-    // Dependencias
+    private static final int TAMANO_PAGINA_CITAS = 100;
+    private static final int LIMITE_VISTA_PREVIA = 200_000; // Caracteres de reporte en el JTextArea
+    // Formatos que ve el usuario; en la DB la cita se guarda como un entero (ver Cita.getInicio)
+    static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd-MM-uuuu");
+    static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("H:mm");
+
+    // Dependencias (la DB, el reporte y el administrador existen cuando termina abrirBaseDatos)
     private BaseDatos baseDatos;
     private Reporte reporte;
     private Administrador administrador;
+    private ServicioAsincrono servicio; // Ejecuta las consultas fuera del hilo de eventos
+    private CompletableFuture<BaseDatos> apertura; // Conexión y migraciones en segundo plano
 
     // Componentes principales
     private JTabbedPane tabbedPane;
+    private JProgressBar barraProgreso; // Visible mientras hay consultas en segundo plano
 
     // Componentes de Registro Paciente
     private JTextField txtNombrePaciente, txtDniPaciente, txtEdadPaciente;
@@ -27,19 +46,25 @@ public class InterfazGrafica extends JFrame {
     private JButton btnRegistrarPaciente;
     
     // Componentes de Programación Citas
-    private JComboBox<Paciente> cbPacientesCitas; 
+    private SelectorPaciente cbPacientesCitas; // Búsqueda mientras se escribe (no carga todos los pacientes)
     private JComboBox<Medico> cbMedicosCitas;     
     private JTextField txtFechaCita, txtHoraCita, txtMotivoCita;
     private JButton btnProgramarCita;
+    private JComboBox<String> cbEspecialidadSugerencias; // Primera opción: cualquier especialidad
+    private JButton btnSugerirHorarios;
+    private DefaultListModel<String> modeloSugerencias;
+    private JList<String> lstSugerencias;
+    private List<HuecoLibre> sugerencias = new ArrayList<>(); // En el mismo orden que lstSugerencias
 
     // Componentes de Consulta Historial
-    private JComboBox<Paciente> cbPacientesHistorial;
+    private SelectorPaciente cbPacientesHistorial;
     private JTextArea txtHistorialPaciente;
     private JButton btnConsultarHistorial;
     private JScrollPane scrollHistorial; // Para hacer scroll en el historial
 
     // Componentes de Administrar Citas
     private JTable tblCitas;
+    private ModeloTablaCitas modeloCitas;
     private JButton btnMarcarRealizada;
     private JButton btnCancelarCita;
 
@@ -47,6 +72,12 @@ public class InterfazGrafica extends JFrame {
     private JTextArea txtReportes;
     private JButton btnReportePacientes;
     private JButton btnReporteCitasDia;
+    private JButton btnReportePorMedico;
+    private JButton btnReportePorEspecialidad;
+    private JButton btnReportePorEstado;
+    private JButton btnReporteRangoFechas;
+    private JButton btnExportarReporte;
+    private EscritorReporte ultimoReporte; // El que se muestra en la vista previa, para exportarlo
     private JScrollPane scrollReportes; // Para hacer scroll en los reportes
 
 
@@ -59,24 +90,24 @@ public class InterfazGrafica extends JFrame {
         setSize(800, 600);
         setLocationRelativeTo(null); 
 
-        // 2A. Inicialización de DB y Lógica (Modelo)
-        baseDatos = new BaseDatos(); // Esto conecta y crea las tablas SQLite
-        reporte = new Reporte(baseDatos); // Pasa la DB al objeto Reporte
-        administrador = new Administrador(baseDatos); // Pasa la DB al Administrador
+        // 2A. Servicio para las tareas en segundo plano (la DB se abre con él, en 2E)
+        servicio = new ServicioAsincrono(this::mostrarOcupado);
         
         // 2B. INICIALIZACIÓN DE COMPONENTES SWING (CORRECCIÓN del NullPointerException)
         // Esto debe ir ANTES de cualquier llamada a 'actualizarComboBoxes()'
         inicializarComponentes(); 
 
-        // 2C. Cargar Datos Iniciales (Ahora los ComboBoxes existen)
-        actualizarComboBoxes(); 
-        actualizarTablaCitas(); 
-
-        // 2D. Configurar Listeners (Lógica de botones)
+        // 2C. Configurar Listeners (Lógica de botones)
         configurarListeners(); 
         
-        // 2E. Configuración final de la ventana
-        add(tabbedPane); 
+        // 2D. Configuración final de la ventana
+        add(tabbedPane, BorderLayout.CENTER);
+        add(barraProgreso, BorderLayout.SOUTH);
+
+        // 2E. Inicialización de DB y Lógica (Modelo). Conectar, migrar el esquema y cargar la agenda
+        // puede tardar con una base grande: se hace en segundo plano, con la ventana ya visible y
+        // los controles deshabilitados hasta que termina
+        abrirBaseDatos();
         
         // 2F. GESTIÓN DEL CIERRE DE LA APLICACIÓN
         this.addWindowListener(new java.awt.event.WindowAdapter() {
@@ -86,8 +117,11 @@ public class InterfazGrafica extends JFrame {
                         "¿Está seguro de que desea cerrar la aplicación y guardar los datos?", "Cerrar Aplicación",
                         JOptionPane.YES_NO_OPTION,
                         JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION) {
-                    baseDatos.guardarContadoresId(); // Guarda el último ID usado
-                    baseDatos.desconectar(); // Cierra la conexión SQLite
+                    servicio.cerrar(); // Espera a las escrituras (y a la apertura) que estén en curso
+                    BaseDatos abierta = apertura.getNow(null); // Puede no haberse entregado aún al EDT
+                    if (abierta != null) {
+                        abierta.desconectar(); // Cierra la conexión SQLite
+                    }
                     System.exit(0); // Cierra la aplicación
                 }
             }
@@ -99,6 +133,11 @@ public class InterfazGrafica extends JFrame {
     // ====================================================================
     private void inicializarComponentes() {
         tabbedPane = new JTabbedPane();
+        barraProgreso = new JProgressBar();
+        barraProgreso.setIndeterminate(true);
+        barraProgreso.setString("Cargando...");
+        barraProgreso.setStringPainted(true);
+        barraProgreso.setVisible(false);
 
         // 3A. Pestaña de Registro de Paciente
         JPanel panelRegistroPaciente = new JPanel(new GridBagLayout());
@@ -126,12 +165,18 @@ public class InterfazGrafica extends JFrame {
 
         // 3B. Pestaña de Programación de Citas
         JPanel panelProgramacionCitas = new JPanel(new GridBagLayout());
-        cbPacientesCitas = new JComboBox<>();
+        cbPacientesCitas = new SelectorPaciente(servicio, texto -> baseDatos.buscarPacientes(texto, 20), "pacientesCitas");
         cbMedicosCitas = new JComboBox<>();
         txtFechaCita = new JTextField("", 20);
         txtHoraCita = new JTextField("", 20);
         txtMotivoCita = new JTextField(20);
         btnProgramarCita = new JButton("Programar Cita");
+        cbEspecialidadSugerencias = new JComboBox<>(new String[]{"Cualquiera"});
+        btnSugerirHorarios = new JButton("Sugerir horarios libres");
+        modeloSugerencias = new DefaultListModel<>();
+        lstSugerencias = new JList<>(modeloSugerencias);
+        lstSugerencias.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        lstSugerencias.setVisibleRowCount(6);
         
         gbc.gridx = 0; gbc.gridy = 0; panelProgramacionCitas.add(new JLabel("Paciente:"), gbc);
         gbc.gridx = 1; gbc.gridy = 0; panelProgramacionCitas.add(cbPacientesCitas, gbc);
@@ -144,13 +189,18 @@ public class InterfazGrafica extends JFrame {
         gbc.gridx = 0; gbc.gridy = 4; panelProgramacionCitas.add(new JLabel("Motivo:"), gbc);
         gbc.gridx = 1; gbc.gridy = 4; panelProgramacionCitas.add(txtMotivoCita, gbc);
         gbc.gridx = 1; gbc.gridy = 5; panelProgramacionCitas.add(btnProgramarCita, gbc);
+        gbc.gridx = 0; gbc.gridy = 6; panelProgramacionCitas.add(new JLabel("Especialidad:"), gbc);
+        gbc.gridx = 1; gbc.gridy = 6; panelProgramacionCitas.add(cbEspecialidadSugerencias, gbc);
+        gbc.gridx = 1; gbc.gridy = 7; panelProgramacionCitas.add(btnSugerirHorarios, gbc);
+        gbc.gridx = 0; gbc.gridy = 8; panelProgramacionCitas.add(new JLabel("Horarios libres:"), gbc);
+        gbc.gridx = 1; gbc.gridy = 8; panelProgramacionCitas.add(new JScrollPane(lstSugerencias), gbc);
         tabbedPane.addTab("2. Programar Cita", panelProgramacionCitas);
 
         // 3C. Pestaña de Consulta de Historial
         JPanel panelConsultaHistorial = new JPanel(new BorderLayout(10, 10));
         JPanel panelControlHistorial = new JPanel(new FlowLayout());
         
-        cbPacientesHistorial = new JComboBox<>();
+        cbPacientesHistorial = new SelectorPaciente(servicio, texto -> baseDatos.buscarPacientes(texto, 20), "pacientesHistorial");
         btnConsultarHistorial = new JButton("Consultar Historial");
         txtHistorialPaciente = new JTextArea(25, 60);
         txtHistorialPaciente.setEditable(false);
@@ -168,8 +218,8 @@ public class InterfazGrafica extends JFrame {
         JPanel panelAdminCitas = new JPanel(new BorderLayout());
         JPanel panelBotonesAdmin = new JPanel(new FlowLayout());
         
-        String[] columnNames = {"ID Cita", "Paciente", "Médico", "Fecha", "Hora", "Motivo", "Estado"};
-        tblCitas = new JTable(new DefaultTableModel(columnNames, 0));
+        // El modelo virtual (ModeloTablaCitas) se asigna al abrir la DB
+        tblCitas = new JTable();
         JScrollPane scrollCitas = new JScrollPane(tblCitas);
         
         btnMarcarRealizada = new JButton("Marcar como Realizada");
@@ -184,7 +234,7 @@ public class InterfazGrafica extends JFrame {
 
         // 3E. Pestaña de Reportes
         JPanel panelReportes = new JPanel(new BorderLayout(10, 10));
-        JPanel panelBotonesReportes = new JPanel(new FlowLayout());
+        JPanel panelBotonesReportes = new JPanel(new GridLayout(0, 3, 5, 5));
         
         txtReportes = new JTextArea(25, 60);
         txtReportes.setEditable(false);
@@ -192,9 +242,20 @@ public class InterfazGrafica extends JFrame {
         
         btnReportePacientes = new JButton("Reporte Pacientes Atendidos");
         btnReporteCitasDia = new JButton("Reporte Citas del Día");
+        btnReportePorMedico = new JButton("Citas por Médico");
+        btnReportePorEspecialidad = new JButton("Citas por Especialidad");
+        btnReportePorEstado = new JButton("Citas por Estado");
+        btnReporteRangoFechas = new JButton("Citas por Rango de Fechas");
+        btnExportarReporte = new JButton("Exportar Reporte...");
+        btnExportarReporte.setEnabled(false);
         
         panelBotonesReportes.add(btnReportePacientes);
         panelBotonesReportes.add(btnReporteCitasDia);
+        panelBotonesReportes.add(btnReportePorMedico);
+        panelBotonesReportes.add(btnReportePorEspecialidad);
+        panelBotonesReportes.add(btnReportePorEstado);
+        panelBotonesReportes.add(btnReporteRangoFechas);
+        panelBotonesReportes.add(btnExportarReporte);
         
         panelReportes.add(panelBotonesReportes, BorderLayout.NORTH);
         panelReportes.add(scrollReportes, BorderLayout.CENTER);
@@ -205,54 +266,113 @@ public class InterfazGrafica extends JFrame {
     // 4. MÉTODOS DE ACTUALIZACIÓN DE DATOS (Carga desde SQLite)
     // ====================================================================
 
-    private void actualizarComboBoxes() {
-        // --- PACIENTES ---
-        cbPacientesHistorial.removeAllItems();
-        cbPacientesCitas.removeAllItems();
-        List<Paciente> pacientes = baseDatos.obtenerTodosPacientes(); // Carga de la DB
-        for (Paciente p : pacientes) {
-            cbPacientesHistorial.addItem(p);
-            cbPacientesCitas.addItem(p);
-        }
+    // Abre la DB en segundo plano y, ya en el EDT, crea lo que depende de ella y habilita la ventana
+    private void abrirBaseDatos() {
+        habilitarControles(tabbedPane, false);
+        barraProgreso.setString("Abriendo base de datos...");
+        apertura = servicio.ejecutar(null, BaseDatos::new, abierta -> {
+            baseDatos = abierta;
+            reporte = new Reporte(baseDatos); // Pasa la DB al objeto Reporte
+            administrador = new Administrador(baseDatos); // Pasa la DB al Administrador
+            // Modelo virtual: solo carga las páginas de citas que se están viendo
+            modeloCitas = new ModeloTablaCitas(baseDatos, servicio, TAMANO_PAGINA_CITAS);
+            tblCitas.setModel(modeloCitas);
+            barraProgreso.setString("Cargando...");
+            habilitarControles(tabbedPane, true);
+            btnExportarReporte.setEnabled(ultimoReporte != null);
+
+            // Cargar Datos Iniciales. Se piden en segundo plano y la ventana se muestra mientras tanto
+            actualizarComboBoxes();
+            actualizarTablaCitas();
+        }, error -> {
+            barraProgreso.setString("Cargando...");
+            mostrarError(error);
+        });
+    }
 
-        // --- MÉDICOS ---
-        cbMedicosCitas.removeAllItems();
-        List<Medico> medicos = baseDatos.obtenerTodosMedicos(); // Carga de la DB
-        
-        // Si no hay médicos, añade algunos de ejemplo y los guarda en la DB
-        if (medicos.isEmpty()) { 
-            Medico m1 = new Medico("Dr. Juan Pérez", "General");
-            Medico m2 = new Medico("Dra. Ana García", "Pediatría");
-            baseDatos.guardarMedico(m1);
-            baseDatos.guardarMedico(m2);
-            medicos = baseDatos.obtenerTodosMedicos(); // Vuelve a cargar para tener IDs
+    private static void habilitarControles(Container contenedor, boolean habilitar) {
+        for (Component componente : contenedor.getComponents()) {
+            if (componente instanceof AbstractButton || componente instanceof JTextComponent
+                    || componente instanceof JComboBox || componente instanceof JList || componente instanceof JTable) {
+                componente.setEnabled(habilitar); // Cada control gestiona sus propios componentes internos
+            } else if (componente instanceof Container) {
+                habilitarControles((Container) componente, habilitar);
+            }
         }
+    }
+
+    private void actualizarComboBoxes() {
+        // Una recarga más reciente reemplaza a la que esté en curso
+        servicio.ejecutar("combos", () -> {
+            List<Medico> medicos = baseDatos.obtenerTodosMedicos(); // Carga de la DB
+
+            // Si no hay médicos, añade algunos de ejemplo y los guarda en la DB
+            if (medicos.isEmpty()) { 
+                Medico m1 = new Medico("Dr. Juan Pérez", "General");
+                Medico m2 = new Medico("Dra. Ana García", "Pediatría");
+                baseDatos.guardarMedico(m1);
+                baseDatos.guardarMedico(m2);
+                medicos = baseDatos.obtenerTodosMedicos(); // Vuelve a cargar para tener IDs
+            }
+            return new Object[]{medicos, baseDatos.obtenerEspecialidades()};
+        }, datos -> {
+            @SuppressWarnings("unchecked") List<Medico> medicos = (List<Medico>) datos[0];
+            @SuppressWarnings("unchecked") List<String> especialidades = (List<String>) datos[1];
+
+            // --- PACIENTES --- (se buscan al escribir en SelectorPaciente; se vacían los resultados anteriores)
+            cbPacientesHistorial.limpiar();
+            cbPacientesCitas.limpiar();
+
+            // --- MÉDICOS ---
+            cbMedicosCitas.removeAllItems();
+            for (Medico m : medicos) {
+                cbMedicosCitas.addItem(m);
+            }
+
+            // --- ESPECIALIDADES (sugerencias de horarios) ---
+            while (cbEspecialidadSugerencias.getItemCount() > 1) {
+                cbEspecialidadSugerencias.removeItemAt(1);
+            }
+            for (String especialidad : especialidades) {
+                cbEspecialidadSugerencias.addItem(especialidad);
+            }
+        });
+    }
 
-        for (Medico m : medicos) {
-            cbMedicosCitas.addItem(m);
+    private void mostrarSugerencias(List<HuecoLibre> huecos) {
+        sugerencias = huecos;
+        modeloSugerencias.clear();
+        for (HuecoLibre hueco : huecos) {
+            modeloSugerencias.addElement(hueco.getInicio().toLocalDate().format(FORMATO_FECHA) + " " +
+                    hueco.getInicio().toLocalTime().format(FORMATO_HORA) + " - " +
+                    hueco.getMedicoNombre() + " (" + hueco.getEspecialidad() + ")");
+        }
+        if (huecos.isEmpty()) {
+            modeloSugerencias.addElement("No hay horarios libres en el próximo año.");
         }
     }
     
     private void actualizarTablaCitas() {
-        DefaultTableModel model = (DefaultTableModel) tblCitas.getModel();
-        model.setRowCount(0); // Limpiar filas existentes
-
-        List<Cita> todasCitas = baseDatos.obtenerTodasCitas(); // Carga de la DB
-        for (Cita cita : todasCitas) {
-            // Asegúrate de que los IDs del paciente y médico existen para evitar NullPointer
-            String nombrePaciente = cita.getPaciente() != null ? cita.getPaciente().getNombre() : "N/D";
-            String nombreMedico = cita.getMedico() != null ? cita.getMedico().getNombre() : "N/D";
-
-            model.addRow(new Object[]{
-                cita.getId(),
-                nombrePaciente,
-                nombreMedico,
-                cita.getFecha(),
-                cita.getHora(),
-                cita.getMotivo(),
-                cita.getEstado()
-            });
+        modeloCitas.refrescar(); // Vuelve a contar y descarta las páginas cargadas
+    }
+
+    // Llamado en el EDT por ServicioAsincrono al empezar y terminar el trabajo en segundo plano
+    private void mostrarOcupado(boolean ocupado) {
+        barraProgreso.setVisible(ocupado);
+        setCursor(ocupado ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+    }
+
+    private void mostrarError(Throwable error) {
+        JOptionPane.showMessageDialog(this, "Error al acceder a la base de datos: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    // Se llama en segundo plano. Si otra ventana cambió la cita entretanto, la DB rechaza la
+    // transición y el error llega a mostrarError
+    private void cambiarEstado(Cita cita, EstadoCita nuevoEstado) {
+        if (!baseDatos.actualizarEstadoCita(cita.getId(), nuevoEstado)) {
+            throw new IllegalStateException("No se pudo cambiar la cita " + cita.getId() + " a " + nuevoEstado + ".");
         }
+        cita.cambiarEstado(nuevoEstado);
     }
 
 
@@ -280,14 +400,22 @@ public class InterfazGrafica extends JFrame {
                 historial.setAntecedentesMedicos(antecedentes);
                 Paciente nuevoPaciente = new Paciente(nombre, dni, edad, historial);
 
-                baseDatos.guardarPaciente(nuevoPaciente); // Guarda en SQLite
-
-                JOptionPane.showMessageDialog(this, "Paciente registrado con éxito. ID: " + nuevoPaciente.getId());
-                txtNombrePaciente.setText("");
-                txtDniPaciente.setText("");
-                txtEdadPaciente.setText("");
-                txtAntecedentesPaciente.setText("");
-                actualizarComboBoxes(); // Refresca las listas
+                btnRegistrarPaciente.setEnabled(false);
+                servicio.ejecutar(null, () -> {
+                    baseDatos.guardarPaciente(nuevoPaciente); // Guarda en SQLite
+                    return nuevoPaciente.getId();
+                }, id -> {
+                    btnRegistrarPaciente.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Paciente registrado con éxito. ID: " + id);
+                    txtNombrePaciente.setText("");
+                    txtDniPaciente.setText("");
+                    txtEdadPaciente.setText("");
+                    txtAntecedentesPaciente.setText("");
+                    actualizarComboBoxes(); // Refresca las listas
+                }, error -> {
+                    btnRegistrarPaciente.setEnabled(true);
+                    mostrarError(error);
+                });
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Edad debe ser un número válido.", "Error de formato", JOptionPane.ERROR_MESSAGE);
             }
@@ -295,7 +423,7 @@ public class InterfazGrafica extends JFrame {
 
         // --- Programar Cita ---
         btnProgramarCita.addActionListener(e -> {
-            Paciente pacienteSeleccionado = (Paciente) cbPacientesCitas.getSelectedItem();
+            Paciente pacienteSeleccionado = cbPacientesCitas.getPacienteSeleccionado();
             Medico medicoSeleccionado = (Medico) cbMedicosCitas.getSelectedItem();
             String fecha = txtFechaCita.getText(); 
             String hora = txtHoraCita.getText();   
@@ -306,64 +434,131 @@ public class InterfazGrafica extends JFrame {
                 return;
             }
             
-            Cita nuevaCita = new Cita(pacienteSeleccionado, medicoSeleccionado, fecha, hora, motivo);
-            baseDatos.guardarCita(nuevaCita); // Guarda en SQLite
-
-            JOptionPane.showMessageDialog(this, "Cita programada con éxito. ID: " + nuevaCita.getId());
-            txtFechaCita.setText("");
-            txtHoraCita.setText("");
-            txtMotivoCita.setText("");
-            actualizarTablaCitas(); // Refresca la tabla de administración
+            LocalDate fechaCita;
+            LocalTime horaCita;
+            try {
+                fechaCita = LocalDate.parse(fecha.trim(), FORMATO_FECHA);
+                horaCita = LocalTime.parse(hora.trim(), FORMATO_HORA);
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(this, "La fecha debe tener el formato DD-MM-AAAA y la hora HH:MM.", "Error de formato", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            
+            Cita nuevaCita = new Cita(pacienteSeleccionado, medicoSeleccionado, fechaCita, horaCita, motivo);
+            btnProgramarCita.setEnabled(false);
+            // Guarda en SQLite; false si el médico ya tiene ocupado ese horario
+            servicio.ejecutar(null, () -> baseDatos.guardarCita(nuevaCita), guardada -> {
+                btnProgramarCita.setEnabled(true);
+                if (!guardada) {
+                    JOptionPane.showMessageDialog(this, "El médico ya tiene una cita que se solapa con ese horario (o no se pudo guardar).", "Horario ocupado", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                JOptionPane.showMessageDialog(this, "Cita programada con éxito. ID: " + nuevaCita.getId());
+                sugerencias = new ArrayList<>(); // Las sugerencias anteriores pueden haber dejado de estar libres
+                modeloSugerencias.clear();
+                txtFechaCita.setText("");
+                txtHoraCita.setText("");
+                txtMotivoCita.setText("");
+                actualizarTablaCitas(); // Refresca la tabla de administración
+            }, error -> {
+                btnProgramarCita.setEnabled(true);
+                mostrarError(error);
+            });
+        });
+
+        // --- Sugerir horarios libres ---
+        btnSugerirHorarios.addActionListener(e -> {
+            String especialidad = cbEspecialidadSugerencias.getSelectedIndex() > 0
+                    ? (String) cbEspecialidadSugerencias.getSelectedItem() : null;
+            // Desde la fecha escrita (si es válida y futura) o desde ahora
+            LocalDateTime desde = LocalDateTime.now();
+            try {
+                LocalDate fecha = LocalDate.parse(txtFechaCita.getText().trim(), FORMATO_FECHA);
+                if (fecha.isAfter(desde.toLocalDate())) {
+                    desde = fecha.atStartOfDay();
+                }
+            } catch (DateTimeParseException ex) {
+                // Sin fecha válida: desde ahora
+            }
+            LocalDateTime inicioBusqueda = desde;
+            servicio.ejecutar("sugerencias", () -> baseDatos.buscarHuecosLibres(especialidad, inicioBusqueda, 10),
+                    this::mostrarSugerencias, this::mostrarError);
+        });
+
+        // Elegir una sugerencia rellena médico, fecha y hora
+        lstSugerencias.addListSelectionListener(e -> {
+            int indice = lstSugerencias.getSelectedIndex();
+            if (e.getValueIsAdjusting() || indice < 0 || indice >= sugerencias.size()) return;
+            HuecoLibre hueco = sugerencias.get(indice);
+            txtFechaCita.setText(hueco.getInicio().toLocalDate().format(FORMATO_FECHA));
+            txtHoraCita.setText(hueco.getInicio().toLocalTime().format(FORMATO_HORA));
+            for (int i = 0; i < cbMedicosCitas.getItemCount(); i++) {
+                if (hueco.getMedicoId().equals(cbMedicosCitas.getItemAt(i).getId())) {
+                    cbMedicosCitas.setSelectedIndex(i);
+                    break;
+                }
+            }
         });
 
         // --- Consultar Historial ---
         btnConsultarHistorial.addActionListener(e -> {
-            Paciente pacienteSeleccionado = (Paciente) cbPacientesHistorial.getSelectedItem();
+            Paciente pacienteSeleccionado = cbPacientesHistorial.getPacienteSeleccionado();
             if (pacienteSeleccionado == null) {
                 txtHistorialPaciente.setText("Seleccione un paciente.");
                 return;
             }
 
-            Historial historial = pacienteSeleccionado.getHistorial();
-            StringBuilder sb = new StringBuilder();
-            sb.append("Historial de: ").append(pacienteSeleccionado.getNombre()).append("\n");
-            sb.append("DNI: ").append(pacienteSeleccionado.getDni()).append("\n");
-            sb.append("Antecedentes Médicos: ").append(historial.getAntecedentesMedicos()).append("\n");
-            sb.append("--- Entradas ---\n");
-            if (historial.getEntradas().isEmpty()) {
-                sb.append("No hay entradas en el historial.\n");
-            } else {
-                for (Historial.HistorialEntry entry : historial.getEntradas()) {
-                    sb.append(entry.getFecha()).append(": ").append(entry.getDescripcion()).append("\n");
+            txtHistorialPaciente.setText("Cargando historial...");
+            // Si se consulta otro paciente antes de terminar, la consulta anterior se descarta
+            servicio.ejecutar("historial", () -> {
+                Historial historial = pacienteSeleccionado.getHistorial();
+                StringBuilder sb = new StringBuilder();
+                sb.append("Historial de: ").append(pacienteSeleccionado.getNombre()).append("\n");
+                sb.append("DNI: ").append(pacienteSeleccionado.getDni()).append("\n");
+                sb.append("Antecedentes Médicos: ").append(historial.getAntecedentesMedicos()).append("\n");
+                sb.append("--- Entradas ---\n");
+                if (historial.getEntradas().isEmpty()) {
+                    sb.append("No hay entradas en el historial.\n");
+                } else {
+                    for (Historial.HistorialEntry entry : historial.getEntradas()) {
+                        sb.append(entry.getFecha()).append(": ").append(entry.getDescripcion()).append("\n");
+                    }
                 }
-            }
-            txtHistorialPaciente.setText(sb.toString());
+                return sb.toString();
+            }, txtHistorialPaciente::setText, error -> {
+                txtHistorialPaciente.setText("No se pudo cargar el historial.");
+                mostrarError(error);
+            });
         });
 
         // --- Marcar Realizada ---
         btnMarcarRealizada.addActionListener(e -> {
             int selectedRow = tblCitas.getSelectedRow();
-            if (selectedRow != -1) {
-                String citaId = (String) tblCitas.getValueAt(selectedRow, 0);
-                
-                // Buscar la cita completa y el paciente asociado
-                Cita cita = baseDatos.obtenerTodasCitas().stream()
-                                     .filter(c -> c.getId().equals(citaId))
-                                     .findFirst().orElse(null);
-                
-                if (cita != null && !cita.getEstado().equals("Realizada")) {
-                    cita.setEstado("Realizada");
-                    baseDatos.guardarCita(cita); // Actualizar estado en la DB
-                    
-                    // Añadir entrada al historial del paciente
-                    cita.getPaciente().getHistorial().addEntrada("Cita realizada con " + cita.getMedico().getNombre() + " por " + cita.getMotivo());
-                    baseDatos.guardarPaciente(cita.getPaciente()); // Guardar paciente para actualizar el historial
-                    
-                    JOptionPane.showMessageDialog(this, "Cita " + citaId + " marcada como Realizada.");
-                    actualizarTablaCitas(); // Refrescar tabla
-                } else if (cita != null && cita.getEstado().equals("Realizada")) {
-                     JOptionPane.showMessageDialog(this, "Esta cita ya está marcada como Realizada.", "Error", JOptionPane.ERROR_MESSAGE);
-                }
+            String citaId = selectedRow != -1 ? (String) tblCitas.getValueAt(selectedRow, 0) : null;
+            if (citaId != null) {
+                servicio.ejecutar(null, () -> {
+                    // Buscar la cita completa y el paciente asociado (por clave primaria)
+                    Cita cita = baseDatos.obtenerCitaPorId(citaId);
+                    if (cita == null) return null;
+
+                    EstadoCita anterior = cita.getEstado();
+                    if (anterior.puedePasarA(EstadoCita.REALIZADA)) {
+                        cambiarEstado(cita, EstadoCita.REALIZADA); // Actualizar estado en la DB
+
+                        // Añadir entrada al historial del paciente
+                        cita.getPaciente().getHistorial().addEntrada("Cita realizada con " + cita.getMedico().getNombre() + " por " + cita.getMotivo());
+                        baseDatos.guardarPaciente(cita.getPaciente()); // Guardar paciente para actualizar el historial
+                    }
+                    return anterior;
+                }, anterior -> {
+                    if (anterior == null) return;
+                    if (anterior.puedePasarA(EstadoCita.REALIZADA)) {
+                        JOptionPane.showMessageDialog(this, "Cita " + citaId + " marcada como Realizada.");
+                        actualizarTablaCitas(); // Refrescar tabla
+                    } else {
+                        JOptionPane.showMessageDialog(this, "La cita está " + anterior + " y no puede marcarse como Realizada.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }, this::mostrarError);
             } else {
                 JOptionPane.showMessageDialog(this, "Seleccione una cita para marcar como Realizada.", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -372,35 +567,87 @@ public class InterfazGrafica extends JFrame {
         // --- Cancelar Cita ---
         btnCancelarCita.addActionListener(e -> {
             int selectedRow = tblCitas.getSelectedRow();
-            if (selectedRow != -1) {
-                String citaId = (String) tblCitas.getValueAt(selectedRow, 0);
-                
-                Cita cita = baseDatos.obtenerTodasCitas().stream()
-                                     .filter(c -> c.getId().equals(citaId))
-                                     .findFirst().orElse(null);
-
-                if (cita != null && !cita.getEstado().equals("Cancelada")) {
-                    cita.setEstado("Cancelada");
-                    baseDatos.guardarCita(cita); // Actualizar estado en la DB
-                    JOptionPane.showMessageDialog(this, "Cita " + citaId + " Cancelada.");
-                    actualizarTablaCitas(); // Refrescar tabla
-                } else if (cita != null && cita.getEstado().equals("Cancelada")) {
-                    JOptionPane.showMessageDialog(this, "Esta cita ya está Cancelada.", "Error", JOptionPane.ERROR_MESSAGE);
-                }
+            String citaId = selectedRow != -1 ? (String) tblCitas.getValueAt(selectedRow, 0) : null;
+            if (citaId != null) {
+                servicio.ejecutar(null, () -> {
+                    Cita cita = baseDatos.obtenerCitaPorId(citaId);
+                    if (cita == null) return null;
+
+                    EstadoCita anterior = cita.getEstado();
+                    if (anterior.puedePasarA(EstadoCita.CANCELADA)) {
+                        cambiarEstado(cita, EstadoCita.CANCELADA); // Actualizar estado en la DB
+                    }
+                    return anterior;
+                }, anterior -> {
+                    if (anterior == null) return;
+                    if (anterior.puedePasarA(EstadoCita.CANCELADA)) {
+                        JOptionPane.showMessageDialog(this, "Cita " + citaId + " Cancelada.");
+                        actualizarTablaCitas(); // Refrescar tabla
+                    } else {
+                        JOptionPane.showMessageDialog(this, "La cita está " + anterior + " y no puede cancelarse.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }, this::mostrarError);
             } else {
                 JOptionPane.showMessageDialog(this, "Seleccione una cita para Cancelar.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         
-        // --- Reporte Pacientes Atendidos ---
-        btnReportePacientes.addActionListener(e -> {
-            txtReportes.setText(reporte.generarReportePacientesAtendidos());
+        // --- Reportes ---
+        // Todos los reportes comparten clave: pedir uno cancela el que se estuviera generando
+        btnReportePacientes.addActionListener(e -> generarReporte(reporte::escribirReportePacientesAtendidos));
+        btnReporteCitasDia.addActionListener(e -> generarReporte(reporte::escribirReporteCitasDelDia));
+        btnReportePorMedico.addActionListener(e -> generarReporte(reporte::escribirReportePorMedico));
+        btnReportePorEspecialidad.addActionListener(e -> generarReporte(reporte::escribirReportePorEspecialidad));
+        btnReportePorEstado.addActionListener(e -> generarReporte(reporte::escribirReportePorEstado));
+
+        btnExportarReporte.addActionListener(e -> exportarReporte());
+
+        btnReporteRangoFechas.addActionListener(e -> {
+            String desde = JOptionPane.showInputDialog(this, "Fecha inicial (DD-MM-AAAA):", LocalDate.now().withDayOfMonth(1).format(FORMATO_FECHA));
+            if (desde == null) return;
+            String hasta = JOptionPane.showInputDialog(this, "Fecha final (DD-MM-AAAA):", LocalDate.now().format(FORMATO_FECHA));
+            if (hasta == null) return;
+            try {
+                LocalDate fechaDesde = LocalDate.parse(desde.trim(), FORMATO_FECHA);
+                LocalDate fechaHasta = LocalDate.parse(hasta.trim(), FORMATO_FECHA);
+                generarReporte((destino, formato) -> reporte.escribirReporteRangoFechas(fechaDesde, fechaHasta, destino, formato));
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(this, "Las fechas deben tener el formato DD-MM-AAAA.", "Error de formato", JOptionPane.ERROR_MESSAGE);
+            }
         });
+    }
 
-        // --- Reporte Citas del Día ---
-        btnReporteCitasDia.addActionListener(e -> {
-            txtReportes.setText(reporte.generarReporteCitasDelDia());
-        });
+    // Muestra solo una vista previa acotada; el reporte completo se obtiene con "Exportar"
+    private void generarReporte(EscritorReporte escritor) {
+        ultimoReporte = escritor;
+        btnExportarReporte.setEnabled(true);
+        txtReportes.setText("Generando reporte...");
+        servicio.ejecutar("reporte", () -> {
+            VistaPreviaReporte vistaPrevia = new VistaPreviaReporte(LIMITE_VISTA_PREVIA);
+            try {
+                escritor.escribir(vistaPrevia, FormatoReporte.TEXTO);
+            } catch (VistaPreviaReporte.LimiteAlcanzado ex) {
+                return vistaPrevia + "\n... (vista previa truncada; use \"Exportar Reporte...\" para obtenerlo completo)\n";
+            }
+            return vistaPrevia.toString();
+        }, txtReportes::setText, this::mostrarError);
+    }
+
+    private void exportarReporte() {
+        JFileChooser selector = new JFileChooser();
+        selector.setSelectedFile(new File("reporte.csv"));
+        if (ultimoReporte == null || selector.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path archivo = selector.getSelectedFile().toPath();
+        // Por extensión: .csv en CSV, cualquier otra en texto
+        FormatoReporte formato = archivo.getFileName().toString().toLowerCase().endsWith(".csv")
+                ? FormatoReporte.CSV : FormatoReporte.TEXTO;
+        EscritorReporte escritor = ultimoReporte;
+        servicio.ejecutar(null, () -> {
+            Reporte.exportar(archivo, formato, escritor);
+            return archivo;
+        }, destino -> JOptionPane.showMessageDialog(this, "Reporte exportado a " + destino), this::mostrarError);
     }
     
     // ====================================================================
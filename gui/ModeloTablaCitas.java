@@ -0,0 +1,186 @@
+package com.citasmedicas.gui;
+
+import com.citasmedicas.model.Cita;
+import com.citasmedicas.persistence.BaseDatos;
+import com.citasmedicas.persistence.FiltroCitas;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Modelo de tabla "virtual" para la pestaña de administración de citas.
+ * Solo mantiene en memoria unas pocas páginas (LRU) de las filas visibles y las pide a
+ * BaseDatos bajo demanda con paginación por clave; al cargar una página trae también la
+ * siguiente (prefetch) para que el desplazamiento hacia abajo no tenga que esperar.
+ * Las consultas se hacen en segundo plano (ServicioAsincrono); mientras llega una página sus
+ * filas se muestran como "Cargando...". Si la consulta falla, las filas muestran el error y la
+ * página se vuelve a pedir pasados unos segundos. Todo el estado se modifica solo en el EDT.
+ */
+public class ModeloTablaCitas extends AbstractTableModel {
+
+    private static final String[] COLUMNAS = {"ID Cita", "Paciente", "Médico", "Fecha", "Hora", "Motivo", "Estado"};
+    private static final int PAGINAS_EN_MEMORIA = 8;
+    private static final int ESPERA_REINTENTO_MS = 3000;
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final BaseDatos baseDatos;
+    private final ServicioAsincrono servicio;
+    private final int tamanoPagina;
+    private FiltroCitas filtro;
+    private int totalFilas;
+    private int generacion; // Cambia en cada refresco: descarta páginas pedidas antes
+
+    // Páginas cargadas (número de página -> filas), desalojando la menos usada
+    private final Map<Integer, List<Cita>> paginas = new LinkedHashMap<Integer, List<Cita>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Cita>> eldest) {
+            if (size() <= PAGINAS_EN_MEMORIA) return false;
+            ultimaDePagina.remove(eldest.getKey()); // Se desaloja junto con la página
+            return true;
+        }
+    };
+    // Última cita de cada página en memoria: clave de arranque (keyset) de la página siguiente
+    private final TreeMap<Integer, Cita> ultimaDePagina = new TreeMap<>();
+    private final Set<Integer> paginasEnCamino = new HashSet<>();
+    private final Set<Integer> paginasConError = new HashSet<>(); // Hasta el reintento
+
+    public ModeloTablaCitas(BaseDatos baseDatos, ServicioAsincrono servicio, int tamanoPagina) {
+        this.baseDatos = baseDatos;
+        this.servicio = servicio;
+        this.tamanoPagina = tamanoPagina;
+    }
+
+    public void setFiltro(FiltroCitas filtro) {
+        this.filtro = filtro;
+        refrescar();
+    }
+
+    // Descarta las páginas en memoria y vuelve a contar las filas
+    public void refrescar() {
+        FiltroCitas filtroActual = filtro;
+        servicio.ejecutar("contar-citas", () -> baseDatos.contarCitas(filtroActual), total -> {
+            generacion++;
+            paginas.clear();
+            ultimaDePagina.clear();
+            paginasEnCamino.clear();
+            paginasConError.clear();
+            totalFilas = total;
+            fireTableDataChanged();
+        });
+    }
+
+    // Devuelve null si la fila todavía no se ha cargado (la carga queda pedida)
+    public Cita getCitaEnFila(int fila) {
+        if (fila < 0 || fila >= totalFilas) return null;
+        List<Cita> pagina = obtenerPagina(fila / tamanoPagina);
+        int indice = fila % tamanoPagina;
+        return pagina != null && indice < pagina.size() ? pagina.get(indice) : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return totalFilas;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNAS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNAS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Cita cita = getCitaEnFila(rowIndex);
+        if (cita == null) {
+            if (columnIndex == 0) return null;
+            return paginasConError.contains(rowIndex / tamanoPagina) ? "Error al cargar" : "Cargando...";
+        }
+        switch (columnIndex) {
+            case 0: return cita.getId();
+            // Asegúrate de que los IDs del paciente y médico existen para evitar NullPointer
+            case 1: return cita.getPaciente() != null ? cita.getPaciente().getNombre() : "N/D";
+            case 2: return cita.getMedico() != null ? cita.getMedico().getNombre() : "N/D";
+            case 3: return cita.getFecha().format(InterfazGrafica.FORMATO_FECHA);
+            case 4: return cita.getHora().format(FORMATO_HORA);
+            case 5: return cita.getMotivo();
+            case 6: return cita.getEstado();
+            default: return null;
+        }
+    }
+
+    private List<Cita> obtenerPagina(int numero) {
+        List<Cita> pagina = paginas.get(numero);
+        if (pagina == null && !paginasConError.contains(numero) && paginasEnCamino.add(numero)) {
+            cargarPagina(numero);
+        }
+        return pagina;
+    }
+
+    private void cargarPagina(int numero) {
+        // Arranca desde la página conocida más cercana por detrás: si es la anterior, la consulta
+        // es un keyset puro; si no, se salta solo la distancia que falta hasta la pedida
+        Map.Entry<Integer, Cita> anterior = ultimaDePagina.lowerEntry(numero);
+        Cita despuesDe = anterior != null ? anterior.getValue() : null;
+        int paginaInicial = anterior != null ? anterior.getKey() + 1 : 0;
+        int saltar = (numero - paginaInicial) * tamanoPagina;
+
+        boolean prefetch = !paginas.containsKey(numero + 1) && paginasEnCamino.add(numero + 1);
+        int limite = prefetch ? tamanoPagina * 2 : tamanoPagina;
+        FiltroCitas filtroActual = filtro;
+        int generacionPedida = generacion;
+
+        servicio.ejecutar(null, () -> baseDatos.obtenerPaginaCitas(filtroActual, despuesDe, saltar, limite), filas -> {
+            if (generacionPedida != generacion) return; // Llegó después de un refresco
+            registrarPagina(numero, filas.subList(0, Math.min(tamanoPagina, filas.size())));
+            if (prefetch) {
+                registrarPagina(numero + 1, filas.subList(Math.min(tamanoPagina, filas.size()), filas.size()));
+            }
+            int primera = numero * tamanoPagina;
+            int ultima = Math.min(totalFilas, primera + limite) - 1;
+            if (ultima >= primera) {
+                fireTableRowsUpdated(primera, ultima);
+            }
+        }, error -> {
+            // No se guarda como página vacía: se marca con error y se reintenta más tarde
+            if (generacionPedida != generacion) return;
+            paginasEnCamino.remove(numero);
+            if (prefetch) paginasEnCamino.remove(numero + 1);
+            System.err.println("Error al cargar la página " + numero + " de citas: " + error.getMessage());
+            paginasConError.add(numero);
+            repintarPagina(numero);
+            Timer reintento = new Timer(ESPERA_REINTENTO_MS, e -> {
+                if (generacionPedida != generacion) return;
+                paginasConError.remove(numero);
+                repintarPagina(numero); // Si la página sigue visible, pintarla la vuelve a pedir
+            });
+            reintento.setRepeats(false);
+            reintento.start();
+        });
+    }
+
+    private void repintarPagina(int numero) {
+        int primera = numero * tamanoPagina;
+        int ultima = Math.min(totalFilas, primera + tamanoPagina) - 1;
+        if (ultima >= primera) {
+            fireTableRowsUpdated(primera, ultima);
+        }
+    }
+
+    private void registrarPagina(int numero, List<Cita> filas) {
+        paginasEnCamino.remove(numero);
+        paginas.put(numero, filas);
+        if (filas.size() == tamanoPagina) {
+            ultimaDePagina.put(numero, filas.get(filas.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.citasmedicas.gui;
+
+import com.citasmedicas.model.Paciente;
+import javax.swing.JComboBox;
+import javax.swing.JTextField;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Selector de pacientes con búsqueda mientras se escribe: en lugar de cargar todos los pacientes,
+ * el combo editable consulta el índice de búsqueda (BaseDatos.buscarPacientes) cuando el usuario
+ * deja de escribir durante ESPERA_MS y muestra los mejores resultados como sugerencias.
+ * Las búsquedas van por ServicioAsincrono con una clave propia: una búsqueda nueva cancela la anterior.
+ */
+public class SelectorPaciente extends JComboBox<Paciente> {
+
+    private static final int ESPERA_MS = 250;
+    private static final int MAX_RESULTADOS = 20;
+
+    private final ServicioAsincrono servicio;
+    private final Function<String, List<Paciente>> busqueda;
+    private final String clave;
+    private final Timer temporizador;
+    private boolean actualizando; // Cambios del propio selector: no deben lanzar otra búsqueda
+
+    public SelectorPaciente(ServicioAsincrono servicio, Function<String, List<Paciente>> busqueda, String clave) {
+        this.servicio = servicio;
+        this.busqueda = busqueda;
+        this.clave = clave;
+        setEditable(true);
+        setToolTipText("Escriba nombre, DNI o texto del historial");
+
+        temporizador = new Timer(ESPERA_MS, e -> buscar());
+        temporizador.setRepeats(false);
+        editor().getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                textoCambiado();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                textoCambiado();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Solo cambios de atributos: no afectan al texto
+            }
+        });
+    }
+
+    // El paciente elegido de la lista, o null si solo hay texto escrito
+    public Paciente getPacienteSeleccionado() {
+        Object seleccionado = getSelectedItem();
+        return seleccionado instanceof Paciente ? (Paciente) seleccionado : null;
+    }
+
+    public void limpiar() {
+        temporizador.stop();
+        servicio.cancelar(clave);
+        actualizando = true;
+        try {
+            removeAllItems();
+            editor().setText("");
+        } finally {
+            actualizando = false;
+        }
+    }
+
+    private JTextField editor() {
+        return (JTextField) getEditor().getEditorComponent();
+    }
+
+    private void textoCambiado() {
+        if (actualizando) return;
+        Paciente seleccionado = getPacienteSeleccionado();
+        if (seleccionado != null && seleccionado.toString().equals(editor().getText())) {
+            return; // El editor muestra el paciente recién elegido de la lista
+        }
+        temporizador.restart(); // Se busca cuando se deja de escribir
+    }
+
+    private void buscar() {
+        String texto = editor().getText().trim();
+        if (texto.isEmpty()) {
+            servicio.cancelar(clave);
+            return;
+        }
+        servicio.ejecutar(clave, () -> busqueda.apply(texto), this::mostrarResultados);
+    }
+
+    private void mostrarResultados(List<Paciente> pacientes) {
+        actualizando = true;
+        try {
+            // Se conserva lo que el usuario está escribiendo (removeAllItems cambiaría el editor)
+            String texto = editor().getText();
+            int cursor = editor().getCaretPosition();
+            removeAllItems();
+            for (int i = 0; i < pacientes.size() && i < MAX_RESULTADOS; i++) {
+                addItem(pacientes.get(i));
+            }
+            setSelectedItem(texto);
+            editor().setText(texto);
+            editor().setCaretPosition(Math.min(cursor, texto.length()));
+        } finally {
+            actualizando = false;
+        }
+        if (isShowing() && getItemCount() > 0) {
+            showPopup();
+        }
+    }
+}
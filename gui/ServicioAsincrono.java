@@ -0,0 +1,140 @@
+package com.citasmedicas.gui;
+
+import javax.swing.SwingUtilities;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Ejecuta fuera del hilo de eventos de Swing (EDT) las llamadas a la base de datos de la GUI
+ * y entrega sus resultados de vuelta en el EDT con SwingUtilities.invokeLater.
+ *
+ * - Usa hilos virtuales si la JVM los ofrece (Java 21+); si no, un pool de hilos daemon.
+ * - Las tareas de lectura pueden llevar una "clave": una tarea nueva con la misma clave cancela
+ *   la anterior y el resultado de la anterior ya no se entrega aunque haya terminado.
+ * - Avisa (en el EDT) cuando pasa de estar libre a tener trabajo pendiente y viceversa,
+ *   para que la ventana muestre un indicador de progreso en lugar de congelarse.
+ */
+public class ServicioAsincrono {
+
+    private final ExecutorService ejecutor;
+    private final Map<String, CompletableFuture<?>> ultimaPorClave = new ConcurrentHashMap<>();
+    private final Consumer<Boolean> indicadorOcupado;
+    private int pendientes; // Solo se toca en el EDT
+
+    public ServicioAsincrono(Consumer<Boolean> indicadorOcupado) {
+        this.ejecutor = crearEjecutor();
+        this.indicadorOcupado = indicadorOcupado;
+    }
+
+    // Ejecuta una tarea sin clave (p. ej. una escritura): nunca la cancela otra tarea
+    public <T> CompletableFuture<T> ejecutar(Callable<T> tarea, Consumer<? super T> alTerminar) {
+        return ejecutar(null, tarea, alTerminar, null);
+    }
+
+    public <T> CompletableFuture<T> ejecutar(String clave, Callable<T> tarea, Consumer<? super T> alTerminar) {
+        return ejecutar(clave, tarea, alTerminar, null);
+    }
+
+    // Debe llamarse desde el EDT. 'alTerminar' y 'alFallar' también se invocan en el EDT;
+    // si 'alFallar' es null el error solo se registra en System.err
+    public <T> CompletableFuture<T> ejecutar(String clave, Callable<T> tarea,
+                                             Consumer<? super T> alTerminar, Consumer<Throwable> alFallar) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        if (clave != null) {
+            CompletableFuture<?> anterior = ultimaPorClave.put(clave, resultado);
+            if (anterior != null) {
+                anterior.cancel(true); // Superada por la nueva petición
+            }
+        }
+
+        cambiarPendientes(+1);
+        Future<?> trabajo = ejecutor.submit(() -> {
+            try {
+                resultado.complete(tarea.call());
+            } catch (Throwable t) {
+                resultado.completeExceptionally(t);
+            }
+        });
+        // CompletableFuture.cancel no interrumpe el hilo; se propaga a la tarea real
+        resultado.whenComplete((valor, error) -> {
+            if (resultado.isCancelled()) {
+                trabajo.cancel(true);
+            }
+        });
+
+        resultado.whenComplete((valor, error) -> SwingUtilities.invokeLater(() -> {
+            cambiarPendientes(-1);
+            if (clave != null && !ultimaPorClave.remove(clave, resultado)) {
+                return; // Otra petición con la misma clave la reemplazó: se descarta
+            }
+            if (error == null) {
+                if (alTerminar != null) alTerminar.accept(valor);
+            } else if (!(error instanceof CancellationException)) {
+                Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (alFallar != null) {
+                    alFallar.accept(causa);
+                } else {
+                    System.err.println("Error en tarea en segundo plano: " + causa.getMessage());
+                }
+            }
+        }));
+        return resultado;
+    }
+
+    // Cancela una petición pendiente (si la hay) sin lanzar otra
+    public void cancelar(String clave) {
+        CompletableFuture<?> anterior = ultimaPorClave.remove(clave);
+        if (anterior != null) {
+            anterior.cancel(true);
+        }
+    }
+
+    // Espera a que terminen las tareas ya enviadas (p. ej. escrituras) antes de cerrar la DB
+    public void cerrar() {
+        ejecutor.shutdown();
+        try {
+            if (!ejecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("Tareas en segundo plano sin terminar al cerrar; se interrumpen.");
+                ejecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            ejecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cambiarPendientes(int delta) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> cambiarPendientes(delta));
+            return;
+        }
+        boolean estabaOcupado = pendientes > 0;
+        pendientes += delta;
+        if (indicadorOcupado != null && estabaOcupado != pendientes > 0) {
+            indicadorOcupado.accept(pendientes > 0);
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() solo existe desde Java 21; se busca por reflexión
+    // para poder seguir compilando y ejecutando en Java 17
+    private static ExecutorService crearEjecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread hilo = new Thread(r, "gui-segundo-plano");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+}
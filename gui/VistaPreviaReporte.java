@@ -0,0 +1,52 @@
+package com.citasmedicas.gui;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+
+/**
+ * Writer acotado para mostrar un reporte en el JTextArea: guarda como mucho 'limite' caracteres
+ * y, al llenarse, corta el reporte lanzando LimiteAlcanzado (el resto se obtiene con "Exportar").
+ * También corta si el hilo fue interrumpido porque otra petición reemplazó a este reporte.
+ */
+class VistaPreviaReporte extends Writer {
+
+    // Señal de que la vista previa ya está completa; no es un error
+    static final class LimiteAlcanzado extends IOException {
+        LimiteAlcanzado() {
+            super("Vista previa completa");
+        }
+    }
+
+    private final StringBuilder texto = new StringBuilder();
+    private final int limite;
+
+    VistaPreviaReporte(int limite) {
+        this.limite = limite;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Reporte cancelado");
+        }
+        int caben = Math.min(len, limite - texto.length());
+        texto.append(cbuf, off, caben);
+        if (caben < len) {
+            throw new LimiteAlcanzado();
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return texto.toString();
+    }
+}
@@ -21,22 +21,16 @@ public class Administrador {
         return baseDatos.obtenerTodasCitas();
     }
     
-    // Ejemplo de método de administración usando la DB (opcional, ya lo hicimos en GUI)
-    public boolean actualizarEstadoCita(String citaId, String nuevoEstado) {
-        // En un sistema real, buscaríamos la cita por ID, la actualizaríamos
-        // y la guardaríamos en la DB.
-        
-        // Aquí simulamos buscando todas y filtrando (menos eficiente, pero funcional)
-        Cita cita = baseDatos.obtenerTodasCitas().stream()
-                             .filter(c -> c.getId().equals(citaId))
-                             .findFirst().orElse(null);
+    // Cambia el estado de una cita: búsqueda por clave primaria y un único UPDATE.
+    // Devuelve false si la cita no existe o la transición no está permitida.
+    public boolean actualizarEstadoCita(String citaId, EstadoCita nuevoEstado) {
+        Cita cita = baseDatos.obtenerCitaPorId(citaId);
 
-        if (cita != null) {
-            cita.setEstado(nuevoEstado);
-            baseDatos.guardarCita(cita);
+        if (cita != null && cita.getEstado().puedePasarA(nuevoEstado) && baseDatos.actualizarEstadoCita(citaId, nuevoEstado)) {
+            cita.cambiarEstado(nuevoEstado);
             
             // Si la cita es 'Realizada', actualiza el historial
-            if ("Realizada".equals(nuevoEstado)) {
+            if (nuevoEstado == EstadoCita.REALIZADA) {
                 cita.getPaciente().getHistorial().addEntrada("Cita completada y marcada por Administrador.");
                 baseDatos.guardarPaciente(cita.getPaciente()); 
             }
@@ -44,4 +38,4 @@ public class Administrador {
         }
         return false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,13 @@
+package com.citasmedicas.model;
+
+/**
+ * Carga diferida de un Historial: la persistencia la implementa y Historial la invoca la primera
+ * vez que se consultan sus antecedentes o sus entradas.
+ * Debe rellenar 'destino' (un historial vacío, sin cargador) con setAntecedentesMedicos y
+ * addEntradaFromDB. Si no puede leer el historial lanza HistorialNoDisponibleException, y el
+ * historial sigue pendiente de carga.
+ */
+@FunctionalInterface
+public interface CargadorHistorial {
+    void cargar(Historial destino);
+}
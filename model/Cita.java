@@ -1,21 +1,29 @@
 package com.citasmedicas.model;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
 public class Cita {
+    public static final int DURACION_POR_DEFECTO = 30; // Minutos
+    public static final int DURACION_MAXIMA = 12 * 60; // Minutos
+
     private String id; // Nuevo: ID único para la base de datos
     private Paciente paciente;
     private Medico medico;
-    private String fecha;
-    private String hora;
+    private LocalDate fecha;
+    private LocalTime hora;
     private String motivo;
-    private String estado; // Programada, Realizada, Cancelada
+    private int duracionMinutos = DURACION_POR_DEFECTO;
+    private EstadoCita estado;
 
-    public Cita(Paciente paciente, Medico medico, String fecha, String hora, String motivo) {
+    public Cita(Paciente paciente, Medico medico, LocalDate fecha, LocalTime hora, String motivo) {
         this.paciente = paciente;
         this.medico = medico;
         this.fecha = fecha;
         this.hora = hora;
         this.motivo = motivo;
-        this.estado = "Programada"; // Estado inicial
+        this.estado = EstadoCita.PROGRAMADA; // Estado inicial
         // El ID se asignará desde BaseDatos al guardar por primera vez
     }
 
@@ -44,22 +52,43 @@ public class Cita {
         this.medico = medico;
     }
 
-    public String getFecha() {
+    public LocalDate getFecha() {
         return fecha;
     }
 
-    public void setFecha(String fecha) {
+    public void setFecha(LocalDate fecha) {
         this.fecha = fecha;
     }
 
-    public String getHora() {
+    public LocalTime getHora() {
         return hora;
     }
 
-    public void setHora(String hora) {
+    public void setHora(LocalTime hora) {
         this.hora = hora;
     }
 
+    // Fecha y hora de inicio juntas (es lo que se guarda e indexa en la DB)
+    public LocalDateTime getInicio() {
+        return LocalDateTime.of(fecha, hora);
+    }
+
+    // Fin de la cita (exclusivo): dos citas del mismo médico no pueden solaparse
+    public LocalDateTime getFin() {
+        return getInicio().plusMinutes(duracionMinutos);
+    }
+
+    public int getDuracionMinutos() {
+        return duracionMinutos;
+    }
+
+    public void setDuracionMinutos(int duracionMinutos) {
+        if (duracionMinutos <= 0 || duracionMinutos > DURACION_MAXIMA) {
+            throw new IllegalArgumentException("Duración de cita no válida: " + duracionMinutos + " minutos");
+        }
+        this.duracionMinutos = duracionMinutos;
+    }
+
     public String getMotivo() {
         return motivo;
     }
@@ -68,11 +97,21 @@ public class Cita {
         this.motivo = motivo;
     }
 
-    public String getEstado() {
+    public EstadoCita getEstado() {
         return estado;
     }
 
-    public void setEstado(String estado) {
+    // Cambio de estado de negocio: lanza IllegalStateException si la transición no está permitida
+    public void cambiarEstado(EstadoCita nuevo) {
+        if (!estado.puedePasarA(nuevo)) {
+            throw new IllegalStateException("La cita " + id + " está " + estado + " y no puede pasar a " + nuevo);
+        }
+        this.estado = nuevo;
+    }
+
+    // Solo para reconstruir la cita a partir de su fila en la DB: no valida la transición.
+    // Para cambiar el estado de una cita usar cambiarEstado (guardarCita rechaza las transiciones no permitidas).
+    public void setEstadoDesdeDB(EstadoCita estado) {
         this.estado = estado;
     }
     
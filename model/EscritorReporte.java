@@ -0,0 +1,12 @@
+package com.citasmedicas.model;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Un reporte que se escribe en streaming sobre un Writer (ver los métodos escribir... de Reporte).
+ */
+@FunctionalInterface
+public interface EscritorReporte {
+    void escribir(Writer destino, FormatoReporte formato) throws IOException;
+}
@@ -0,0 +1,46 @@
+package com.citasmedicas.model;
+
+/**
+ * Estados de una cita y sus transiciones permitidas:
+ * Programada -> Realizada | Cancelada. Realizada y Cancelada son finales.
+ * En la DB se guarda el código entero (columna Citas.estado).
+ */
+public enum EstadoCita {
+    PROGRAMADA(0, "Programada"),
+    REALIZADA(1, "Realizada"),
+    CANCELADA(2, "Cancelada");
+
+    private final int codigo;
+    private final String nombre;
+
+    EstadoCita(int codigo, String nombre) {
+        this.codigo = codigo;
+        this.nombre = nombre;
+    }
+
+    public int getCodigo() {
+        return codigo;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public boolean puedePasarA(EstadoCita nuevo) {
+        return this == PROGRAMADA && nuevo != PROGRAMADA;
+    }
+
+    public static EstadoCita desdeCodigo(int codigo) {
+        for (EstadoCita estado : values()) {
+            if (estado.codigo == codigo) {
+                return estado;
+            }
+        }
+        throw new IllegalArgumentException("Código de estado de cita desconocido: " + codigo);
+    }
+
+    @Override
+    public String toString() {
+        return nombre;
+    }
+}
@@ -0,0 +1,9 @@
+package com.citasmedicas.model;
+
+/**
+ * Formatos de salida de los reportes en streaming.
+ */
+public enum FormatoReporte {
+    TEXTO, // Texto legible, como el que se muestra en la pestaña de reportes
+    CSV    // Una fila por línea con cabecera, para abrir en una hoja de cálculo
+}
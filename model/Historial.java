@@ -3,45 +3,88 @@ package com.citasmedicas.model;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class Historial {
     private String pacienteId; // Nuevo: ID del paciente al que pertenece este historial
     private String antecedentesMedicos;
     private List<HistorialEntry> entradas;
+    private CargadorHistorial cargador; // Pendiente de cargar desde la DB mientras no sea null
 
     public Historial(String pacienteId) {
         this.pacienteId = pacienteId;
         this.antecedentesMedicos = "";
         this.entradas = new ArrayList<>();
     }
+
+    // Historial de un paciente ya guardado: antecedentes y entradas se cargan al primer acceso
+    public Historial(String pacienteId, CargadorHistorial cargador) {
+        this(pacienteId);
+        this.cargador = cargador;
+    }
     
     // Nuevo: Setter para el ID del paciente
     public void setPacienteId(String pacienteId) {
         this.pacienteId = pacienteId;
     }
 
+    public String getPacienteId() {
+        return pacienteId;
+    }
+
+    // false mientras los antecedentes y las entradas guardadas no se hayan leído de la DB
+    public synchronized boolean isCargado() {
+        return cargador == null;
+    }
+
     public String getAntecedentesMedicos() {
-        return antecedentesMedicos;
+        asegurarCargado();
+        synchronized (this) {
+            return antecedentesMedicos;
+        }
     }
 
     public void setAntecedentesMedicos(String antecedentesMedicos) {
-        this.antecedentesMedicos = antecedentesMedicos;
+        asegurarCargado(); // Si no, la carga posterior pisaría el valor nuevo
+        synchronized (this) {
+            this.antecedentesMedicos = antecedentesMedicos;
+        }
     }
 
     public List<HistorialEntry> getEntradas() {
-        return entradas;
+        asegurarCargado();
+        synchronized (this) {
+            return entradas;
+        }
     }
     
-    // Método para añadir una nueva entrada
-    public void addEntrada(String descripcion) {
+    // Entradas añadidas que todavía no se han guardado en la DB (sin ID asignado).
+    // No fuerza la carga: las entradas nuevas siempre están en memoria.
+    public synchronized List<HistorialEntry> getEntradasNuevas() {
+        List<HistorialEntry> nuevas = new ArrayList<>();
+        for (HistorialEntry entry : entradas) {
+            if (entry.getId() == 0) {
+                nuevas.add(entry);
+            }
+        }
+        return nuevas;
+    }
+    
+    // Método para añadir una nueva entrada (no necesita cargar las anteriores)
+    public synchronized void addEntrada(String descripcion) {
+        addEntrada(LocalDate.now(), descripcion);
+    }
+
+    // Entrada nueva con la fecha de la consulta (p. ej. al cargar historiales anteriores)
+    public synchronized void addEntrada(LocalDate fecha, String descripcion) {
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        String fechaActual = LocalDate.now().format(dtf);
-        entradas.add(new HistorialEntry(fechaActual, descripcion));
+        entradas.add(new HistorialEntry(fecha.format(dtf), descripcion));
     }
 
     // Nuevo: Método para añadir una entrada existente (cargada de la DB)
-    public void addEntradaFromDB(HistorialEntry entry) {
+    public synchronized void addEntradaFromDB(HistorialEntry entry) {
         // Esto es importante para evitar duplicados si ya existe un entry.id en la lista
         // o para asignar el ID correcto si se cargó de la DB
         if (!entradas.contains(entry)) { // Asumiendo que HistorialEntry tiene equals/hashCode basado en ID
@@ -50,6 +93,35 @@ public class Historial {
     }
 
 
+    // La carga se hace fuera del monitor sobre un historial aparte (puede esperar por una conexión
+    // sin bloquear a quien use este objeto) y solo se aplica si terminó bien: si el cargador lanza
+    // HistorialNoDisponibleException, el historial sigue pendiente y no se guardan antecedentes vacíos.
+    // Las entradas guardadas van antes que las añadidas en memoria antes de la carga; una de estas
+    // que ya se guardó (con ID) viene también en la carga y no se repite.
+    private void asegurarCargado() {
+        CargadorHistorial pendiente;
+        synchronized (this) {
+            pendiente = cargador;
+        }
+        if (pendiente == null) return;
+        Historial leido = new Historial(pacienteId);
+        pendiente.cargar(leido);
+        synchronized (this) {
+            if (cargador != pendiente) return; // Otro hilo terminó la carga antes
+            cargador = null;
+            antecedentesMedicos = leido.antecedentesMedicos;
+            List<HistorialEntry> enMemoria = entradas;
+            Set<HistorialEntry> guardadas = new HashSet<>(leido.entradas); // equals/hashCode por ID
+            entradas = leido.entradas;
+            for (HistorialEntry entry : enMemoria) {
+                if (!guardadas.contains(entry)) { // Las de ID 0 nunca coinciden
+                    entradas.add(entry);
+                }
+            }
+        }
+    }
+
+
     // Clase interna para representar una entrada del historial
     public static class HistorialEntry {
         private int id; // Nuevo: ID autoincremental de la base de datos
@@ -0,0 +1,12 @@
+package com.citasmedicas.model;
+
+/**
+ * El historial guardado de un paciente no se pudo leer (ver CargadorHistorial).
+ * El historial sigue pendiente de carga y se vuelve a intentar en el siguiente acceso.
+ */
+public class HistorialNoDisponibleException extends RuntimeException {
+
+    public HistorialNoDisponibleException(String mensaje, Throwable causa) {
+        super(mensaje, causa);
+    }
+}
@@ -1,12 +1,31 @@
 package com.citasmedicas.model;
 
 import com.citasmedicas.persistence.BaseDatos;
+import com.citasmedicas.persistence.DefinicionReporte;
+import com.citasmedicas.persistence.FiltroCitas;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.stream.Collectors; // Necesario para el reporte de Pacientes Atendidos
 
+/**
+ * Reportes de citas. Cada reporte se escribe en streaming sobre un Writer a partir de un cursor
+ * de la base de datos (la memoria usada no depende del tamaño del reporte); los métodos
+ * generar... que devuelven un String se mantienen para los reportes pequeños.
+ */
 public class Reporte {
+    private static final String SEPARADOR = "---------------------------------------------------\n";
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd-MM-yyyy"); // Como en la GUI
+
     private BaseDatos baseDatos;
 
     public Reporte(BaseDatos baseDatos) {
@@ -14,32 +33,33 @@ public class Reporte {
     }
 
     public String generarReportePacientesAtendidos() {
-        // 1. Obtiene todas las citas marcadas como 'Realizada'
-        List<Cita> citasRealizadas = baseDatos.obtenerTodasCitas().stream()
-                .filter(c -> "Realizada".equals(c.getEstado()))
-                .collect(Collectors.toList());
-
-        // 2. Cuenta pacientes únicos
-        long pacientesAtendidos = citasRealizadas.stream()
-                .map(Cita::getPaciente)
-                .distinct()
-                .count();
-
-        StringBuilder reporte = new StringBuilder("--- Reporte de Pacientes Atendidos ---\n");
-        reporte.append("Total de citas realizadas: ").append(citasRealizadas.size()).append("\n");
-        reporte.append("Total de pacientes únicos atendidos: ").append(pacientesAtendidos).append("\n");
-        reporte.append("---------------------------------------------------\n");
-
-        if (citasRealizadas.isEmpty()) {
-            reporte.append("No hay citas marcadas como 'Realizada' todavía.\n");
+        return generarTexto(this::escribirReportePacientesAtendidos);
+    }
+
+    public void escribirReportePacientesAtendidos(Writer destino, FormatoReporte formato) throws IOException {
+        if (formato == FormatoReporte.CSV) {
+            destino.write("paciente_id,nombre,citas_realizadas\n");
+            recorrer(() -> baseDatos.recorrerRealizadasPorPaciente((clave, nombre, realizadas) ->
+                    escribirCsv(destino, clave, nombre, Integer.toString(realizadas))));
+            return;
+        }
+
+        // 1. Totales sumados en SQLite sobre el agregado de citas realizadas por paciente
+        int[] totales = baseDatos.obtenerTotalesRealizadas();
+
+        destino.write("--- Reporte de Pacientes Atendidos ---\n");
+        destino.write("Total de citas realizadas: " + totales[0] + "\n");
+        destino.write("Total de pacientes únicos atendidos: " + totales[1] + "\n");
+        destino.write(SEPARADOR);
+
+        if (totales[1] == 0) {
+            destino.write("No hay citas marcadas como 'Realizada' todavía.\n");
         } else {
-             reporte.append("Lista de pacientes con citas realizadas:\n");
-             citasRealizadas.stream()
-                     .map(Cita::getPaciente)
-                     .distinct()
-                     .forEach(p -> reporte.append(" - ").append(p.getNombre()).append(" (ID: ").append(p.getId()).append(")\n"));
+            // 2. Lista de pacientes leída fila a fila del cursor
+            destino.write("Lista de pacientes con citas realizadas:\n");
+            recorrer(() -> baseDatos.recorrerRealizadasPorPaciente((clave, nombre, realizadas) ->
+                    escribir(destino, " - " + nombre + " (ID: " + clave + ", citas: " + realizadas + ")\n")));
         }
-        return reporte.toString();
     }
 
     /**
@@ -47,42 +67,226 @@ public class Reporte {
      * Incluye su estado actualizado (Programada, Realizada o Cancelada).
      */
     public String generarReporteCitasDelDia() {
-        // Usamos el formato 'yyyy-MM-dd' para asegurar la coincidencia con la DB
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        String fechaActual = LocalDate.now().format(dtf);
-        
-        // Esta línea es la clave: obtenerCitasPorFecha(fechaActual) solo trae citas programadas para HOY
-        List<Cita> citasHoy = baseDatos.obtenerCitasPorFecha(fechaActual); 
-        
-        StringBuilder reporte = new StringBuilder("--- Reporte de Citas Programadas para Hoy (" + fechaActual + ") ---\n");
-        reporte.append("Total de citas programadas para hoy: ").append(citasHoy.size()).append("\n");
-        reporte.append("---------------------------------------------------\n");
-
-        if (citasHoy.isEmpty()) {
-            reporte.append("No hay citas programadas para hoy.\n");
+        return generarReporteCitasDelDia(LocalDate.now());
+    }
+
+    // El mismo reporte para otro día (p. ej. en los benchmarks, sobre una base con fechas fijas)
+    public String generarReporteCitasDelDia(LocalDate dia) {
+        return generarTexto((destino, formato) -> escribirReporteCitasDelDia(dia, destino, formato));
+    }
+
+    public void escribirReporteCitasDelDia(Writer destino, FormatoReporte formato) throws IOException {
+        escribirReporteCitasDelDia(LocalDate.now(), destino, formato);
+    }
+
+    public void escribirReporteCitasDelDia(LocalDate hoy, Writer destino, FormatoReporte formato) throws IOException {
+        String fechaActual = hoy.format(FORMATO_FECHA);
+
+        // Este filtro es la clave: solo trae citas programadas para HOY (rango indexado sobre 'inicio')
+        FiltroCitas filtroHoy = new FiltroCitas();
+        filtroHoy.setFechaDesde(hoy);
+        filtroHoy.setFechaHasta(hoy);
+
+        if (formato == FormatoReporte.CSV) {
+            destino.write("id,paciente,medico,fecha,hora,motivo,estado\n");
+            recorrer(() -> baseDatos.recorrerCitas(filtroHoy, (id, paciente, medico, fecha, hora, motivo, estado) ->
+                    escribirCsv(destino, id, paciente, medico, fecha, hora, motivo, estado)));
+            return;
+        }
+
+        int totalHoy = baseDatos.contarCitas(filtroHoy);
+        destino.write("--- Reporte de Citas Programadas para Hoy (" + fechaActual + ") ---\n");
+        destino.write("Total de citas programadas para hoy: " + totalHoy + "\n");
+
+        // Resumen por estado calculado en SQLite
+        recorrer(() -> baseDatos.ejecutarReporte(new DefinicionReporte(DefinicionReporte.Dimension.ESTADO, filtroHoy),
+                (clave, etiqueta, total, realizadas, canceladas, programadas, pacientes) ->
+                        escribir(destino, "  " + etiqueta + ": " + total + "\n")));
+        destino.write(SEPARADOR);
+
+        if (totalHoy == 0) {
+            destino.write("No hay citas programadas para hoy.\n");
+            return;
+        }
+        recorrer(() -> baseDatos.recorrerCitas(filtroHoy, (id, paciente, medico, fecha, hora, motivo, estado) -> {
+            String estadoDisplay = "Programada";
+            if (EstadoCita.REALIZADA.getNombre().equals(estado)) {
+                estadoDisplay = "¡REALIZADA!"; // Mejora visual
+            } else if (EstadoCita.CANCELADA.getNombre().equals(estado)) {
+                estadoDisplay = "CANCELADA"; // Mejora visual
+            }
+
+            // Manejo de posibles nulos (aunque no debería pasar si la DB está bien)
+            String nombrePaciente = paciente != null ? paciente : "Paciente Desconocido";
+            String nombreMedico = medico != null ? medico : "Médico Desconocido";
+
+            escribir(destino, "Cita ID: " + id + "\n" +
+                    "  Paciente: " + nombrePaciente + "\n" +
+                    "  Médico: " + nombreMedico + "\n" +
+                    "  Hora: " + hora + "\n" +
+                    "  Motivo: " + motivo + "\n" +
+                    "  Estado: " + estadoDisplay + "\n" +
+                    SEPARADOR);
+        }));
+    }
+
+    // --- Reportes agregados (GROUP BY en SQLite, sin cargar las citas) ---
+
+    public String generarReportePorMedico() {
+        return generarTexto(this::escribirReportePorMedico);
+    }
+
+    public void escribirReportePorMedico(Writer destino, FormatoReporte formato) throws IOException {
+        escribirReporteAgrupado("--- Reporte de Citas por Médico ---",
+                new DefinicionReporte(DefinicionReporte.Dimension.MEDICO, null), destino, formato);
+    }
+
+    public String generarReportePorEspecialidad() {
+        return generarTexto(this::escribirReportePorEspecialidad);
+    }
+
+    public void escribirReportePorEspecialidad(Writer destino, FormatoReporte formato) throws IOException {
+        escribirReporteAgrupado("--- Reporte de Citas por Especialidad ---",
+                new DefinicionReporte(DefinicionReporte.Dimension.ESPECIALIDAD, null), destino, formato);
+    }
+
+    public String generarReportePorEstado() {
+        return generarTexto(this::escribirReportePorEstado);
+    }
+
+    public void escribirReportePorEstado(Writer destino, FormatoReporte formato) throws IOException {
+        escribirReporteAgrupado("--- Reporte de Citas por Estado ---",
+                new DefinicionReporte(DefinicionReporte.Dimension.ESTADO, null), destino, formato);
+    }
+
+    // Citas de cada día entre 'desde' y 'hasta' (ambos incluidos)
+    public String generarReporteRangoFechas(LocalDate desde, LocalDate hasta) {
+        return generarTexto((destino, formato) -> escribirReporteRangoFechas(desde, hasta, destino, formato));
+    }
+
+    public void escribirReporteRangoFechas(LocalDate desde, LocalDate hasta, Writer destino, FormatoReporte formato) throws IOException {
+        FiltroCitas filtro = new FiltroCitas();
+        filtro.setFechaDesde(desde);
+        filtro.setFechaHasta(hasta);
+        escribirReporteAgrupado("--- Reporte de Citas del " + desde.format(FORMATO_FECHA) + " al " + hasta.format(FORMATO_FECHA) + " ---",
+                new DefinicionReporte(DefinicionReporte.Dimension.FECHA, filtro), destino, formato);
+    }
+
+    private void escribirReporteAgrupado(String titulo, DefinicionReporte definicion, Writer destino, FormatoReporte formato) throws IOException {
+        if (formato == FormatoReporte.CSV) {
+            destino.write("clave,etiqueta,total,realizadas,canceladas,programadas,pacientes\n");
+            recorrer(() -> baseDatos.ejecutarReporte(definicion, (clave, etiqueta, total, realizadas, canceladas, programadas, pacientes) ->
+                    escribirCsv(destino, clave, etiqueta, Integer.toString(total), Integer.toString(realizadas),
+                            Integer.toString(canceladas), Integer.toString(programadas), Integer.toString(pacientes))));
+            return;
+        }
+
+        destino.write(titulo + "\n");
+        int[] totales = new int[4]; // total, realizadas, canceladas, programadas
+        recorrer(() -> baseDatos.ejecutarReporte(definicion, (clave, etiqueta, total, realizadas, canceladas, programadas, pacientes) -> {
+            StringBuilder linea = new StringBuilder(etiqueta != null ? etiqueta : "Desconocido");
+            if (clave != null && !clave.equals(etiqueta)) {
+                linea.append(" (ID: ").append(clave).append(")");
+            }
+            linea.append(": ").append(total).append(" citas")
+                    .append(" | Realizadas: ").append(realizadas)
+                    .append(" | Canceladas: ").append(canceladas)
+                    .append(" | Programadas: ").append(programadas)
+                    .append(" | Pacientes: ").append(pacientes).append("\n");
+            escribir(destino, linea);
+            totales[0] += total;
+            totales[1] += realizadas;
+            totales[2] += canceladas;
+            totales[3] += programadas;
+        }));
+        destino.write(SEPARADOR);
+        if (totales[0] == 0) {
+            destino.write("No hay citas para este reporte.\n");
         } else {
-            citasHoy.forEach(cita -> {
-                String estadoDisplay = "Programada";
-                if ("Realizada".equals(cita.getEstado())) {
-                    estadoDisplay = "¡REALIZADA!"; // Mejora visual
-                } else if ("Cancelada".equals(cita.getEstado())) {
-                    estadoDisplay = "CANCELADA"; // Mejora visual
-                }
+            destino.write("Total: " + totales[0] + " citas" +
+                    " | Realizadas: " + totales[1] +
+                    " | Canceladas: " + totales[2] +
+                    " | Programadas: " + totales[3] + "\n");
+        }
+    }
 
-                reporte.append("Cita ID: ").append(cita.getId()).append("\n");
-                
-                // Manejo de posibles nulos (aunque no debería pasar si la DB está bien)
-                String nombrePaciente = cita.getPaciente() != null ? cita.getPaciente().getNombre() : "Paciente Desconocido";
-                String nombreMedico = cita.getMedico() != null ? cita.getMedico().getNombre() : "Médico Desconocido";
-                
-                reporte.append("  Paciente: ").append(nombrePaciente).append("\n");
-                reporte.append("  Médico: ").append(nombreMedico).append("\n");
-                reporte.append("  Hora: ").append(cita.getHora()).append("\n");
-                reporte.append("  Motivo: ").append(cita.getMotivo()).append("\n");
-                reporte.append("  Estado: ").append(estadoDisplay).append("\n"); 
-                reporte.append("---------------------------------------------------\n");
-            });
+    // --- Exportación ---
+
+    // Escribe el reporte en un archivo (UTF-8) a través de un FileChannel, sin pasar por memoria.
+    // Si el reporte no se completa, se borra el archivo en lugar de dejarlo a medias.
+    public static void exportar(Path archivo, FormatoReporte formato, EscritorReporte reporte) throws IOException {
+        try {
+            try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 Writer destino = new BufferedWriter(Channels.newWriter(canal, StandardCharsets.UTF_8), 64 * 1024)) {
+                reporte.escribir(destino, formato);
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(archivo);
+            } catch (IOException ex) {
+                System.err.println("No se pudo borrar el reporte incompleto " + archivo + ": " + ex.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    private static String generarTexto(EscritorReporte reporte) {
+        StringWriter texto = new StringWriter();
+        try {
+            reporte.escribir(texto, FormatoReporte.TEXTO);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter no la lanza: solo si falla la consulta
+        }
+        return texto.toString();
+    }
+
+    // Los receptores de BaseDatos no pueden lanzar IOException: se envuelve dentro del recorrido
+    // (lo que además corta el cursor) y se vuelve a lanzar aquí. Si la consulta falla (el recorrido
+    // devuelve false) también se lanza IOException: el reporte quedaría incompleto.
+    @FunctionalInterface
+    private interface Recorrido {
+        boolean ejecutar();
+    }
+
+    private static void recorrer(Recorrido recorrido) throws IOException {
+        boolean completo;
+        try {
+            completo = recorrido.ejecutar();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!completo) {
+            throw new IOException("No se pudo leer el reporte de la base de datos.");
+        }
+    }
+
+    private static void escribir(Writer destino, CharSequence texto) {
+        try {
+            destino.append(texto);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Una línea CSV (RFC 4180): se entrecomillan los valores con comas, comillas o saltos de línea
+    private static void escribirCsv(Writer destino, String... valores) {
+        try {
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) destino.write(',');
+                String valor = valores[i];
+                if (valor == null) continue;
+                if (valor.indexOf(',') >= 0 || valor.indexOf('"') >= 0 || valor.indexOf('\n') >= 0 || valor.indexOf('\r') >= 0) {
+                    destino.write('"');
+                    destino.write(valor.replace("\"", "\"\""));
+                    destino.write('"');
+                } else {
+                    destino.write(valor);
+                }
+            }
+            destino.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return reporte.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package com.citasmedicas.persistence;
+
+import com.citasmedicas.model.EstadoCita;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Agregados materializados de citas realizadas: por paciente, por médico y por día.
+ * Se mantienen con deltas (+1/-1) en la MISMA transacción que cada cambio de estado de una cita,
+ * así los reportes leen filas ya contadas en vez de recorrer toda la tabla Citas.
+ * Solo se guardan contadores positivos: una fila que llega a 0 se borra.
+ */
+final class AgregadosCitas {
+
+    private static final int REALIZADA = EstadoCita.REALIZADA.getCodigo();
+
+    // Tabla, columna clave y columna de Citas de la que sale la clave
+    private static final String[][] TABLAS = {
+            {"RealizadasPorPaciente", "paciente_id", "paciente_id"},
+            {"RealizadasPorMedico", "medico_id", "medico_id"},
+            {"RealizadasPorDia", "dia", "inicio / " + FechasCitas.SEGUNDOS_POR_DIA} // Número de día (ver FechasCitas)
+    };
+
+    private AgregadosCitas() {
+    }
+
+    // Estado de la cita tal como está guardada ahora mismo (null si todavía no existe).
+    // Debe leerse en la transacción del escritor, antes de modificar la fila.
+    // Devuelve {paciente_id, medico_id, día (Long), código de estado (Integer)}
+    static Object[] leerAnterior(CacheSentencias sentencias, String citaId) throws SQLException {
+        PreparedStatement pstmt = sentencias.preparar("SELECT paciente_id, medico_id, " + TABLAS[2][2] + ", estado FROM Citas WHERE id = ?");
+        pstmt.setString(1, citaId);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next()) return null;
+            return new Object[]{rs.getString(1), rs.getString(2), rs.getLong(3), rs.getInt(4)};
+        }
+    }
+
+    // Aplica el delta de pasar de 'anterior' (fila leída con leerAnterior, o null) a la nueva fila
+    static void registrarCambio(CacheSentencias sentencias, Object[] anterior,
+                                String pacienteId, String medicoId, long dia, EstadoCita estado) throws SQLException {
+        boolean antes = anterior != null && (Integer) anterior[3] == REALIZADA;
+        boolean despues = estado == EstadoCita.REALIZADA;
+        if (antes && despues && anterior[0].equals(pacienteId) && anterior[1].equals(medicoId) && (Long) anterior[2] == dia) {
+            return; // Sigue realizada con las mismas claves: nada que cambiar
+        }
+        if (antes) {
+            sumar(sentencias, -1, anterior[0], anterior[1], anterior[2]);
+        }
+        if (despues) {
+            sumar(sentencias, +1, pacienteId, medicoId, dia);
+        }
+    }
+
+    private static void sumar(CacheSentencias sentencias, int delta, Object... claves) throws SQLException {
+        for (int i = 0; i < TABLAS.length; i++) {
+            String tabla = TABLAS[i][0];
+            String columna = TABLAS[i][1];
+            PreparedStatement pstmt = sentencias.preparar(
+                    "INSERT INTO " + tabla + " (" + columna + ", realizadas) VALUES (?, ?) " +
+                            "ON CONFLICT(" + columna + ") DO UPDATE SET realizadas = realizadas + excluded.realizadas");
+            pstmt.setObject(1, claves[i]);
+            pstmt.setInt(2, delta);
+            pstmt.executeUpdate();
+            if (delta < 0) {
+                PreparedStatement limpiar = sentencias.preparar("DELETE FROM " + tabla + " WHERE " + columna + " = ? AND realizadas <= 0");
+                limpiar.setObject(1, claves[i]);
+                limpiar.executeUpdate();
+            }
+        }
+    }
+
+    // Recalcula los agregados desde la tabla Citas. Devuelve cuántas filas guardadas no coincidían
+    // con el recálculo (0 si el mantenimiento incremental estaba al día).
+    static int reconstruir(Connection conexion) throws SQLException {
+        int diferencias = 0;
+        try (Statement stmt = conexion.createStatement()) {
+            for (String[] tabla : TABLAS) {
+                String recalculo = "SELECT " + tabla[2] + ", COUNT(*) FROM Citas WHERE estado = " + REALIZADA + " GROUP BY " + tabla[2];
+                String guardado = "SELECT " + tabla[1] + ", realizadas FROM " + tabla[0];
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT (SELECT COUNT(*) FROM (" + guardado + " EXCEPT " + recalculo + ")) + " +
+                                "(SELECT COUNT(*) FROM (" + recalculo + " EXCEPT " + guardado + "))")) {
+                    diferencias += rs.next() ? rs.getInt(1) : 0;
+                }
+                stmt.executeUpdate("DELETE FROM " + tabla[0]);
+                stmt.executeUpdate("INSERT INTO " + tabla[0] + " (" + tabla[1] + ", realizadas) " + recalculo);
+            }
+        }
+        return diferencias;
+    }
+}
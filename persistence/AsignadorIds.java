@@ -0,0 +1,142 @@
+package com.citasmedicas.persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de IDs hi-lo para un tipo de entidad.
+ * Reserva de forma durable bloques de IDs en la tabla IdCounters (dentro de una transacción,
+ * así que es seguro entre varios procesos que comparten el archivo) y los reparte desde memoria
+ * sin locks. Si la aplicación se cae, los IDs no usados del bloque se pierden, pero nunca se repiten.
+ */
+class AsignadorIds {
+
+    static final int TAMANO_BLOQUE_POR_DEFECTO = 1000;
+
+    // Rango [siguiente, limite] reservado en la DB
+    private static final class Bloque {
+        final AtomicLong siguiente;
+        final long limite;
+
+        Bloque(long desde, long hasta) {
+            this.siguiente = new AtomicLong(desde);
+            this.limite = hasta;
+        }
+    }
+
+    private final PoolConexiones pool;
+    private final String nombre;
+    private final int tamanoBloque;
+    private volatile Bloque bloque = new Bloque(1, 0); // Vacío: la primera llamada reserva
+
+    AsignadorIds(PoolConexiones pool, String nombre, int tamanoBloque) {
+        if (tamanoBloque <= 0) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser positivo: " + tamanoBloque);
+        }
+        this.pool = pool;
+        this.nombre = nombre;
+        this.tamanoBloque = tamanoBloque;
+    }
+
+    long siguiente() {
+        while (true) {
+            Bloque actual = bloque;
+            long id = actual.siguiente.getAndIncrement();
+            if (id <= actual.limite) {
+                return id;
+            }
+            // Bloque agotado: solo un hilo reserva el siguiente, el resto reintenta con el nuevo
+            synchronized (this) {
+                if (bloque == actual) {
+                    long hasta = reservar(tamanoBloque);
+                    bloque = new Bloque(hasta - tamanoBloque + 1, hasta);
+                }
+            }
+        }
+    }
+
+    // Para quien ya tiene el escritor con una transacción abierta (p. ej. un lote de importación):
+    // devuelve el primer ID sin reservar. Los IDs se usan en orden desde él y, antes de confirmar,
+    // se reservan los usados con avanzarEnTransaccion; así el contador avanza exactamente lo usado
+    // y, si la transacción se deshace, también vuelve atrás. Los bloques en memoria de siguiente()
+    // quedan siempre por debajo del contador, así que no se solapan.
+    long primeroLibre(Connection conexion) throws SQLException {
+        comprobarTransaccion(conexion);
+        try (PreparedStatement insertar = conexion.prepareStatement(
+                "INSERT OR IGNORE INTO IdCounters (name, value) VALUES (?, 0)")) {
+            insertar.setString(1, nombre);
+            insertar.executeUpdate();
+        }
+        try (PreparedStatement leer = conexion.prepareStatement("SELECT value FROM IdCounters WHERE name = ?")) {
+            leer.setString(1, nombre);
+            try (ResultSet rs = leer.executeQuery()) {
+                rs.next();
+                return rs.getLong(1) + 1;
+            }
+        }
+    }
+
+    // Reserva, en la transacción abierta, los 'cantidad' IDs usados desde primeroLibre
+    void avanzarEnTransaccion(Connection conexion, int cantidad) throws SQLException {
+        comprobarTransaccion(conexion);
+        if (cantidad == 0) return;
+        try (PreparedStatement avanzar = conexion.prepareStatement(
+                "UPDATE IdCounters SET value = value + ? WHERE name = ?")) {
+            avanzar.setInt(1, cantidad);
+            avanzar.setString(2, nombre);
+            avanzar.executeUpdate();
+        }
+    }
+
+    private static void comprobarTransaccion(Connection conexion) throws SQLException {
+        if (conexion.getAutoCommit()) {
+            throw new IllegalStateException("Se necesita una transacción abierta en el escritor");
+        }
+    }
+
+    // Avanza el contador durable en 'cantidad' y devuelve el último ID reservado
+    private long reservar(int cantidad) {
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            Connection conexion = escritor.getConexion();
+            if (!conexion.getAutoCommit()) {
+                // Si se reservara dentro de otra transacción y ésta se deshiciera, el bloque
+                // quedaría en memoria sin estar reservado en la DB y se repetirían IDs
+                throw new IllegalStateException("No se pueden reservar IDs dentro de una transacción abierta");
+            }
+            conexion.setAutoCommit(false);
+            try {
+                try (PreparedStatement insertar = conexion.prepareStatement(
+                        "INSERT OR IGNORE INTO IdCounters (name, value) VALUES (?, 0)")) {
+                    insertar.setString(1, nombre);
+                    insertar.executeUpdate();
+                }
+                try (PreparedStatement avanzar = conexion.prepareStatement(
+                        "UPDATE IdCounters SET value = value + ? WHERE name = ?")) {
+                    avanzar.setInt(1, cantidad);
+                    avanzar.setString(2, nombre);
+                    avanzar.executeUpdate();
+                }
+                long hasta;
+                try (PreparedStatement leer = conexion.prepareStatement("SELECT value FROM IdCounters WHERE name = ?")) {
+                    leer.setString(1, nombre);
+                    try (ResultSet rs = leer.executeQuery()) {
+                        rs.next();
+                        hasta = rs.getLong(1);
+                    }
+                }
+                conexion.commit();
+                return hasta;
+            } catch (SQLException e) {
+                conexion.rollback();
+                throw e;
+            } finally {
+                conexion.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("No se pudo reservar un bloque de IDs para '" + nombre + "': " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,213 +1,434 @@
 package com.citasmedicas.persistence;
 
 import com.citasmedicas.model.*; // Importa todas las clases del modelo
+import com.citasmedicas.persistence.MetricasBaseDatos.Operacion;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*; // Importa las clases JDBC
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public class BaseDatos {
 
-    private Connection connection; // Objeto de conexión a la base de datos
-    private final String URL = "jdbc:sqlite:citas_medicas.db"; // Ruta al archivo de la base de datos SQLite
+    // Conexiones a la base de datos: N lectores concurrentes y un escritor serializado.
+    // desconectar() lo anula en cualquier momento: cada método lo lee una sola vez en una variable
+    // local (las escrituras reciben ese mismo pool) y las conexiones de un pool cerrado lanzan SQLException.
+    private volatile PoolConexiones pool;
+    public static final String ARCHIVO_POR_DEFECTO = "citas_medicas.db";
+    private final String URL; // Ruta al archivo de la base de datos SQLite (jdbc:sqlite:<archivo>)
+    private final int numLectores; // Conexiones de lectura del pool
+    private volatile ColaEscritura colaEscritura; // Solo en modo de escritura diferida (ver habilitarEscrituraDiferida)
+    private long[] configuracionDiferida; // Capacidad, lote y espera, para rehabilitarla tras restaurarRespaldo
+    private volatile CompletableFuture<Long> respaldoEnCurso; // Ver respaldarEnLinea
 
-    // Generadores de IDs únicos para cada tipo de entidad
-    private AtomicInteger pacienteIdCounter = new AtomicInteger(0);
-    private AtomicInteger medicoIdCounter = new AtomicInteger(0);
-    private AtomicInteger citaIdCounter = new AtomicInteger(0);
-    private AtomicInteger historialIdCounter = new AtomicInteger(0);
+    // Generadores de IDs únicos para cada tipo de entidad (bloques hi-lo reservados en IdCounters)
+    private volatile AsignadorIds pacienteIds;
+    private volatile AsignadorIds medicoIds;
+    private volatile AsignadorIds citaIds;
+
+    // Mapas de identidad: una única instancia por ID mientras siga en la caché
+    public static final int CAPACIDAD_CACHE_POR_DEFECTO = 10_000;
+    private final CacheEntidades<Paciente> cachePacientes;
+    private final CacheEntidades<Medico> cacheMedicos;
+
+    // Horarios ocupados por médico, para rechazar citas solapadas sin consultar la DB
+    private volatile IndiceAgenda indiceAgenda;
+    private volatile BuscadorHuecos buscadorHuecos; // Huecos libres por especialidad, sobre la ocupación del índice
+
+    // Latencias, filas y errores por operación, espera por conexiones y cachés (publicadas por JMX)
+    private final MetricasBaseDatos metricas = new MetricasBaseDatos(this);
 
     public BaseDatos() {
+        this(CAPACIDAD_CACHE_POR_DEFECTO);
+    }
+
+    public BaseDatos(int capacidadCache) {
+        this(capacidadCache, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BaseDatos(int capacidadCache, int numLectores) {
+        this(Path.of(ARCHIVO_POR_DEFECTO), capacidadCache, numLectores);
+    }
+
+    // Base de datos en otro archivo (p. ej. las bases sintéticas de los benchmarks)
+    public BaseDatos(Path archivo) {
+        this(archivo, CAPACIDAD_CACHE_POR_DEFECTO, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BaseDatos(Path archivo, int capacidadCache, int numLectores) {
+        this.URL = "jdbc:sqlite:" + archivo;
+        this.numLectores = numLectores;
+        cachePacientes = new CacheEntidades<>(capacidadCache);
+        cacheMedicos = new CacheEntidades<>(capacidadCache);
         conectar(); // Conectar al inicio
         inicializarEsquema(); // Crear tablas si no existen
-        cargarContadoresId(); // Cargar los últimos IDs de la DB
+        cargarIndiceAgenda(); // Citas no canceladas desde hoy y médicos por especialidad
     }
 
     // --- Métodos de Conexión ---
-    public boolean conectar() {
+    public synchronized boolean conectar() {
+        if (pool != null) return true; // Ya conectado
         try {
             // Cargar el driver JDBC de SQLite (ya no es estrictamente necesario con JDBC 4.0+, pero es buena práctica)
             // Class.forName("org.sqlite.JDBC"); 
             
-            connection = DriverManager.getConnection(URL);
-            System.out.println("Conexión a SQLite establecida en: " + URL);
+            pool = new PoolConexiones(URL, numLectores, metricas);
+            pacienteIds = new AsignadorIds(pool, "paciente", AsignadorIds.TAMANO_BLOQUE_POR_DEFECTO);
+            medicoIds = new AsignadorIds(pool, "medico", AsignadorIds.TAMANO_BLOQUE_POR_DEFECTO);
+            citaIds = new AsignadorIds(pool, "cita", AsignadorIds.TAMANO_BLOQUE_POR_DEFECTO);
+            System.out.println("Conexión a SQLite establecida en: " + URL + " (WAL, " + numLectores + " lectores)");
+            metricas.registrarJmx(archivoDb().toString());
             return true;
         } catch (SQLException e) {
             System.err.println("Error al conectar a la base de datos SQLite: " + e.getMessage());
-            connection = null; // Asegurarse de que la conexión es nula si falla
+            pool = null; // Asegurarse de que el pool es nulo si falla
             return false;
         }
     }
 
-    public void desconectar() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                System.out.println("Desconexión de SQLite realizada.");
-            }
-        } catch (SQLException e) {
-            System.err.println("Error al desconectar de la base de datos SQLite: " + e.getMessage());
+    public synchronized void desconectar() {
+        CompletableFuture<Long> respaldo = respaldoEnCurso;
+        if (respaldo != null) {
+            // Al cerrar, SQLite vuelca el WAL al archivo que se está copiando: se espera al respaldo
+            respaldo.exceptionally(e -> -1L).join();
+        }
+        if (colaEscritura != null) {
+            colaEscritura.cerrar(); // Confirma las escrituras pendientes antes de cerrar las conexiones
+            colaEscritura = null;
+        }
+        if (pool != null) {
+            pool.cerrar();
+            pool = null;
+            metricas.retirarJmx();
+            System.out.println("Desconexión de SQLite realizada.");
         }
     }
 
     // --- Métodos de Inicialización y Gestión de ID ---
 
-    // Crea las tablas si no existen
+    // Crea o actualiza el esquema aplicando las migraciones pendientes (ver MigracionesEsquema)
     private void inicializarEsquema() {
-        if (connection == null) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) {
             System.err.println("No hay conexión a la base de datos para inicializar el esquema.");
             return;
         }
 
-        // Definición de tablas
-        String createPacientesTable = "CREATE TABLE IF NOT EXISTS Pacientes (" +
-                "id TEXT PRIMARY KEY," +
-                "nombre TEXT NOT NULL," +
-                "dni TEXT NOT NULL UNIQUE," +
-                "edad INTEGER," +
-                "antecedentes TEXT" +
-                ");";
-
-        String createMedicosTable = "CREATE TABLE IF NOT EXISTS Medicos (" +
-                "id TEXT PRIMARY KEY," +
-                "nombre TEXT NOT NULL," +
-                "especialidad TEXT NOT NULL" +
-                ");";
-
-        String createCitasTable = "CREATE TABLE IF NOT EXISTS Citas (" +
-                "id TEXT PRIMARY KEY," +
-                "paciente_id TEXT NOT NULL," +
-                "medico_id TEXT NOT NULL," +
-                "fecha TEXT NOT NULL," + // Guardamos como TEXT en formato YYYY-MM-DD
-                "hora TEXT NOT NULL," + // Guardamos como TEXT en formato HH:MM
-                "motivo TEXT," +
-                "estado TEXT NOT NULL," + // Programada, Realizada, Cancelada
-                "FOREIGN KEY (paciente_id) REFERENCES Pacientes(id)," +
-                "FOREIGN KEY (medico_id) REFERENCES Medicos(id)" +
-                ");";
-
-        String createHistorialEntradasTable = "CREATE TABLE IF NOT EXISTS HistorialEntradas (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT," + // ID autoincremental para las entradas del historial
-                "paciente_id TEXT NOT NULL," +
-                "fecha TEXT NOT NULL," +
-                "descripcion TEXT," +
-                "FOREIGN KEY (paciente_id) REFERENCES Pacientes(id)" +
-                ");";
-
-        // Tabla para almacenar los contadores de ID
-        String createIdCountersTable = "CREATE TABLE IF NOT EXISTS IdCounters (" +
-                "name TEXT PRIMARY KEY," +
-                "value INTEGER NOT NULL" +
-                ");";
-
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(createPacientesTable);
-            stmt.execute(createMedicosTable);
-            stmt.execute(createCitasTable);
-            stmt.execute(createHistorialEntradasTable);
-            stmt.execute(createIdCountersTable);
-            System.out.println("Esquema de la base de datos inicializado/verificado.");
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            int version = MigracionesEsquema.aplicar(escritor.getConexion());
+            System.out.println("Esquema de la base de datos inicializado/verificado (v" + version + ").");
         } catch (SQLException e) {
             System.err.println("Error al inicializar el esquema de la base de datos: " + e.getMessage());
         }
     }
     
-    // Carga los contadores de ID al iniciar la aplicación
-    private void cargarContadoresId() {
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT name, value FROM IdCounters")) {
+    // Carga en memoria las citas no canceladas que terminan a partir de hoy (ver IndiceAgenda)
+    // y los médicos agrupados por especialidad (ver BuscadorHuecos)
+    private void cargarIndiceAgenda() {
+        PoolConexiones pool = this.pool;
+        long horizonte = FechasCitas.inicioDelDia(LocalDate.now());
+        MapaOcupacion ocupacion = new MapaOcupacion();
+        IndiceAgenda indice = new IndiceAgenda(horizonte, ocupacion);
+        BuscadorHuecos buscador = new BuscadorHuecos(ocupacion);
+        indiceAgenda = indice;
+        buscadorHuecos = buscador;
+        if (pool == null) return;
+
+        try (PoolConexiones.Prestamo lector = pool.tomarLector();
+             ResultSet rs = pool.sentencias(lector.getConexion()).preparar("SELECT id, nombre, especialidad FROM Medicos").executeQuery()) {
             while (rs.next()) {
-                String name = rs.getString("name");
-                int value = rs.getInt("value");
-                switch (name) {
-                    case "paciente": pacienteIdCounter = new AtomicInteger(value); break;
-                    case "medico": medicoIdCounter = new AtomicInteger(value); break;
-                    case "cita": citaIdCounter = new AtomicInteger(value); break;
-                    case "historial": historialIdCounter = new AtomicInteger(value); break;
-                }
+                buscador.registrarMedico(rs.getString("id"), rs.getString("nombre"), rs.getString("especialidad"));
             }
         } catch (SQLException e) {
-            System.err.println("Error al cargar contadores de ID: " + e.getMessage());
+            System.err.println("Error al cargar los médicos por especialidad: " + e.getMessage());
         }
-    }
 
-    // Guarda los contadores de ID al cerrar la aplicación o cuando sea necesario
-    public void guardarContadoresId() {
-        try (PreparedStatement ps = connection.prepareStatement(
-                "REPLACE INTO IdCounters (name, value) VALUES (?, ?)")) {
-            ps.setString(1, "paciente"); ps.setInt(2, pacienteIdCounter.get()); ps.addBatch();
-            ps.setString(1, "medico"); ps.setInt(2, medicoIdCounter.get()); ps.addBatch();
-            ps.setString(1, "cita"); ps.setInt(2, citaIdCounter.get()); ps.addBatch();
-            ps.setString(1, "historial"); ps.setInt(2, historialIdCounter.get()); ps.addBatch();
-            ps.executeBatch();
-            System.out.println("Contadores de ID guardados.");
+        String sql = "SELECT id, medico_id, inicio, duracion FROM Citas WHERE inicio >= ? AND estado <> " + EstadoCita.CANCELADA.getCodigo();
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
+            pstmt.setLong(1, horizonte - Cita.DURACION_MAXIMA * 60L); // Las que empiezan antes ya han terminado
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long inicio = rs.getLong("inicio");
+                    long fin = inicio + rs.getLong("duracion") * 60;
+                    if (fin > horizonte) {
+                        indice.cargar(rs.getString("id"), rs.getString("medico_id"), inicio, fin);
+                    }
+                }
+            }
+            System.out.println("Agenda de médicos cargada: " + indice.getTamano() + " cita(s).");
         } catch (SQLException e) {
-            System.err.println("Error al guardar contadores de ID: " + e.getMessage());
+            System.err.println("Error al cargar la agenda de médicos: " + e.getMessage());
         }
     }
 
     // Genera un nuevo ID para un tipo de entidad
-    private String generarNuevoId(String prefix, AtomicInteger counter) {
-        int newId = counter.incrementAndGet();
+    private String generarNuevoId(String prefix, AsignadorIds asignador) {
+        long newId = asignador.siguiente();
         return prefix + newId;
     }
 
 
+    // --- Escritura diferida (write-behind) ---
+
+    // Activa el modo de escritura diferida: los guardar*Diferido() se encolan y se confirman en lotes
+    // de hasta 'tamanoLote' escrituras o cada 'esperaMaximaMs' milisegundos, lo que ocurra antes.
+    public synchronized void habilitarEscrituraDiferida(int capacidadCola, int tamanoLote, long esperaMaximaMs) {
+        if (pool == null) { System.err.println("No hay conexión."); return; }
+        if (colaEscritura != null) return; // Ya habilitada
+        colaEscritura = new ColaEscritura(pool, capacidadCola, tamanoLote, esperaMaximaMs);
+        configuracionDiferida = new long[]{capacidadCola, tamanoLote, esperaMaximaMs};
+        System.out.println("Escritura diferida habilitada (lote " + tamanoLote + ", espera " + esperaMaximaMs + " ms).");
+    }
+
+    public int getEscriturasPendientes() {
+        ColaEscritura cola = colaEscritura;
+        return cola != null ? cola.getPendientes() : 0;
+    }
+
+    // Ejecuta la operación en la cola diferida si está habilitada, o directamente en caso contrario.
+    // La operación lee el estado de la entidad en el momento de confirmarse, no al encolarse.
+    private CompletableFuture<Void> encolarEscritura(PoolConexiones pool, ColaEscritura.Operacion operacion) {
+        if (pool == null) return CompletableFuture.failedFuture(new SQLException("No hay conexión."));
+        ColaEscritura cola = colaEscritura;
+        if (cola != null) {
+            return cola.encolar(operacion);
+        }
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            operacion.ejecutar(escritor.getConexion());
+            return CompletableFuture.completedFuture(null);
+        } catch (SQLException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // El ID se asigna al encolar, así el llamador lo conoce antes de la confirmación
+    public CompletableFuture<Void> guardarPacienteDiferido(Paciente paciente) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) return CompletableFuture.failedFuture(new SQLException("No hay conexión."));
+        if (paciente.getId() == null || paciente.getId().isEmpty()) {
+            paciente.setId(generarNuevoId("P", pacienteIds));
+        }
+        String id = paciente.getId();
+        cachePacientes.invalidar(id);
+        List<Historial.HistorialEntry> escritas = new ArrayList<>();
+        return encolarEscritura(pool, c -> escritas.addAll(escribirPaciente(pool, c, paciente)))
+                .whenComplete((r, e) -> {
+                    if (e != null) descartarIds(escritas); // El lote no llegó a confirmarse
+                    cachePacientes.invalidar(id);
+                });
+    }
+
+    public CompletableFuture<Void> guardarMedicoDiferido(Medico medico) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) return CompletableFuture.failedFuture(new SQLException("No hay conexión."));
+        if (medico.getId() == null || medico.getId().isEmpty()) {
+            medico.setId(generarNuevoId("M", medicoIds));
+        }
+        String id = medico.getId();
+        cacheMedicos.invalidar(id);
+        return encolarEscritura(pool, c -> escribirMedico(pool, c, medico))
+                .whenComplete((r, e) -> {
+                    cacheMedicos.invalidar(id);
+                    if (e == null) buscadorHuecos.registrarMedico(id, medico.getNombre(), medico.getEspecialidad());
+                });
+    }
+
+    // El hueco en la agenda del médico se reserva al encolar: si está ocupado el futuro falla con
+    // CitaSolapadaException sin llegar a encolarse, y si la escritura falla se libera
+    public CompletableFuture<Void> guardarCitaDiferida(Cita cita) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) return CompletableFuture.failedFuture(new SQLException("No hay conexión."));
+        if (cita.getId() == null || cita.getId().isEmpty()) {
+            cita.setId(generarNuevoId("C", citaIds));
+        }
+        String id = cita.getId();
+        IndiceAgenda.Reserva anterior;
+        try {
+            anterior = reservarHueco(cita);
+        } catch (CitaSolapadaException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return encolarEscritura(pool, c -> escribirCita(pool, c, cita))
+                .whenComplete((r, e) -> {
+                    if (e != null) indiceAgenda.restaurar(id, anterior);
+                });
+    }
+
+
     // --- Métodos CRUD genéricos (Ajustados para clases específicas) ---
 
     // Guardar/Actualizar Paciente
     public void guardarPaciente(Paciente paciente) {
-        if (connection == null) { System.err.println("No hay conexión."); return; }
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return; }
         
         // Si el paciente no tiene ID, es nuevo, generamos uno
         if (paciente.getId() == null || paciente.getId().isEmpty()) {
-            paciente.setId(generarNuevoId("P", pacienteIdCounter));
+            paciente.setId(generarNuevoId("P", pacienteIds));
         }
+        cachePacientes.invalidar(paciente.getId());
 
-        String sql = "REPLACE INTO Pacientes (id, nombre, dni, edad, antecedentes) VALUES (?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, paciente.getId());
-            pstmt.setString(2, paciente.getNombre());
-            pstmt.setString(3, paciente.getDni());
-            pstmt.setInt(4, paciente.getEdad());
-            pstmt.setString(5, paciente.getHistorial().getAntecedentesMedicos()); // Guarda antecedentes
-            pstmt.executeUpdate();
-            System.out.println("Paciente guardado/actualizado: " + paciente.getNombre());
-            
-            // También guardamos/actualizamos sus entradas de historial si las tiene
-            for (Historial.HistorialEntry entry : paciente.getHistorial().getEntradas()) {
-                guardarHistorialEntry(paciente.getId(), entry);
-            }
-
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            int filas = 1 + escribirPaciente(pool, escritor.getConexion(), paciente).size();
+            metricas.registrar(Operacion.GUARDAR_PACIENTE, inicio, 0, filas);
         } catch (SQLException e) {
+            metricas.registrarError(Operacion.GUARDAR_PACIENTE, inicio);
             System.err.println("Error al guardar paciente: " + e.getMessage());
+        } finally {
+            // Otra vez tras liberar el escritor: una lectura concurrente que falló en la caché
+            // antes de la confirmación pudo registrar la fila anterior (como en guardarPacienteDiferido)
+            cachePacientes.invalidar(paciente.getId());
+        }
+    }
+
+    // SQL de guardarPaciente, compartido con la escritura diferida.
+    // Si el historial aún no se cargó, los antecedentes guardados no han cambiado y no se tocan
+    // (así guardar una entrada nueva no obliga a leer el historial completo).
+    // Se actualiza la fila existente en lugar de reemplazarla para que conserve su rowid, que es
+    // también el de su fila en el índice de búsqueda. Devuelve las entradas de historial insertadas.
+    // Si la transacción falla, esas entradas vuelven a quedar sin ID para guardarse la próxima vez;
+    // si participa en un lote de la cola diferida, eso lo hace guardarPacienteDiferido al fallar el lote.
+    private List<Historial.HistorialEntry> escribirPaciente(PoolConexiones pool, Connection escritor, Paciente paciente) throws SQLException {
+        Historial historial = paciente.getHistorial();
+        List<Historial.HistorialEntry> nuevas = historial.getEntradasNuevas();
+        try {
+            enTransaccion(escritor, c -> {
+                PreparedStatement pstmt;
+                if (historial.isCargado()) {
+                    pstmt = pool.sentencias(c).preparar("INSERT INTO Pacientes (id, nombre, dni, edad, antecedentes) VALUES (?, ?, ?, ?, ?) " +
+                            "ON CONFLICT(id) DO UPDATE SET nombre = excluded.nombre, dni = excluded.dni, " +
+                            "edad = excluded.edad, antecedentes = excluded.antecedentes");
+                    pstmt.setString(5, historial.getAntecedentesMedicos()); // Guarda antecedentes
+                } else {
+                    pstmt = pool.sentencias(c).preparar("UPDATE Pacientes SET nombre = ?2, dni = ?3, edad = ?4 WHERE id = ?1");
+                }
+                pstmt.setString(1, paciente.getId());
+                pstmt.setString(2, paciente.getNombre());
+                pstmt.setString(3, paciente.getDni());
+                pstmt.setInt(4, paciente.getEdad());
+                pstmt.executeUpdate();
+
+                // También guardamos sus entradas de historial nuevas, si las tiene
+                StringBuilder textoNuevo = new StringBuilder();
+                for (Historial.HistorialEntry entry : nuevas) {
+                    textoNuevo.append(' ').append(entry.getDescripcion());
+                }
+                guardarEntradasNuevas(pool, c, paciente.getId(), nuevas);
+                indexarPaciente(pool.sentencias(c), paciente.getId(), paciente.getNombre(), paciente.getDni(), textoNuevo.toString());
+            });
+        } catch (SQLException | RuntimeException e) {
+            descartarIds(nuevas); // El rollback quitó sus filas
+            throw e;
+        }
+        return nuevas;
+    }
+
+    // Las entradas vuelven a contar como nuevas (ver Historial.getEntradasNuevas)
+    private static void descartarIds(List<Historial.HistorialEntry> entradas) {
+        for (Historial.HistorialEntry entry : entradas) {
+            entry.setId(0);
+        }
+    }
+
+    // Mantiene la fila del paciente en BusquedaPacientes (misma transacción que el guardado):
+    // actualiza nombre y DNI y añade al historial el texto de las entradas nuevas
+    static void indexarPaciente(CacheSentencias sentencias, String id, String nombre, String dni, String historialNuevo) throws SQLException {
+        PreparedStatement actualizar = sentencias.preparar(
+                "UPDATE BusquedaPacientes SET nombre = ?, dni = ?, historial = COALESCE(historial, '') || ? " +
+                        "WHERE rowid = (SELECT rowid FROM Pacientes WHERE id = ?)");
+        actualizar.setString(1, nombre);
+        actualizar.setString(2, dni);
+        actualizar.setString(3, historialNuevo);
+        actualizar.setString(4, id);
+        if (actualizar.executeUpdate() > 0) return;
+
+        PreparedStatement insertar = sentencias.preparar(
+                "INSERT INTO BusquedaPacientes (rowid, nombre, dni, historial) SELECT rowid, ?, ?, ? FROM Pacientes WHERE id = ?");
+        insertar.setString(1, nombre);
+        insertar.setString(2, dni);
+        insertar.setString(3, historialNuevo);
+        insertar.setString(4, id);
+        insertar.executeUpdate();
+    }
+
+    // Los 'limite' pacientes que mejor coinciden con el texto, buscando cada palabra como prefijo
+    // en el nombre, el DNI y el historial (el nombre pesa más que el DNI y éste más que el historial).
+    // Se resuelve con el índice FTS5 sin recorrer Pacientes.
+    public List<Paciente> buscarPacientes(String texto, int limite) {
+        PoolConexiones pool = this.pool;
+        List<Paciente> pacientes = new ArrayList<>();
+        if (pool == null) { System.err.println("No hay conexión."); return pacientes; }
+        String consulta = consultaPrefijos(texto);
+        if (consulta.isEmpty()) return pacientes;
+
+        String sql = "SELECT p.id, p.nombre, p.dni, p.edad FROM BusquedaPacientes b JOIN Pacientes p ON p.rowid = b.rowid " +
+                "WHERE BusquedaPacientes MATCH ? ORDER BY bm25(BusquedaPacientes, 10.0, 5.0, 1.0) LIMIT ?";
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
+            pstmt.setString(1, consulta);
+            pstmt.setInt(2, limite);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String id = rs.getString("id");
+                    Paciente paciente = cachePacientes.obtener(id);
+                    if (paciente == null) {
+                        paciente = cachePacientes.registrar(id, nuevoPaciente(id, rs.getString("nombre"), rs.getString("dni"), rs.getInt("edad")));
+                    }
+                    pacientes.add(paciente);
+                }
+            }
+            metricas.registrar(Operacion.BUSCAR_PACIENTES, inicio, pacientes.size(), 0);
+        } catch (SQLException e) {
+            metricas.registrarError(Operacion.BUSCAR_PACIENTES, inicio);
+            System.err.println("Error al buscar pacientes: " + e.getMessage());
         }
+        return pacientes;
     }
 
-    // Obtener todos los pacientes
+    // "ana pér" -> "ana"* AND "pér"*: cada palabra entre comillas (sin operadores FTS) y como prefijo
+    private static String consultaPrefijos(String texto) {
+        StringBuilder consulta = new StringBuilder();
+        if (texto == null) return "";
+        for (String palabra : texto.trim().split("\\s+")) {
+            String limpia = palabra.replace("\"", "");
+            if (limpia.codePoints().noneMatch(Character::isLetterOrDigit)) continue; // Sin nada que buscar
+            if (consulta.length() > 0) consulta.append(" AND ");
+            consulta.append('"').append(limpia).append("\"*");
+        }
+        return consulta.toString();
+    }
+
+    // Obtener todos los pacientes (sin historial: se carga al consultarlo, ver nuevoPaciente)
     public List<Paciente> obtenerTodosPacientes() {
+        PoolConexiones pool = this.pool;
         List<Paciente> pacientes = new ArrayList<>();
-        if (connection == null) { System.err.println("No hay conexión."); return pacientes; }
-        String sql = "SELECT id, nombre, dni, edad, antecedentes FROM Pacientes";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        if (pool == null) { System.err.println("No hay conexión."); return pacientes; }
+        String sql = "SELECT id, nombre, dni, edad FROM Pacientes";
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo lector = pool.tomarLector();
+             ResultSet rs = pool.sentencias(lector.getConexion()).preparar(sql).executeQuery()) {
             while (rs.next()) {
                 String id = rs.getString("id");
-                String nombre = rs.getString("nombre");
-                String dni = rs.getString("dni");
-                int edad = rs.getInt("edad");
-                String antecedentes = rs.getString("antecedentes");
-
-                Historial historial = new Historial(id); // Creamos un historial vacío
-                historial.setAntecedentesMedicos(antecedentes);
-                Paciente paciente = new Paciente(nombre, dni, edad, historial);
-                paciente.setId(id);
-                pacientes.add(paciente);
-                
-                // Cargamos las entradas del historial para este paciente
-                cargarHistorialEntradas(paciente);
+                Paciente enCache = cachePacientes.obtener(id);
+                if (enCache != null) {
+                    pacientes.add(enCache);
+                    continue;
+                }
+                Paciente paciente = nuevoPaciente(id, rs.getString("nombre"), rs.getString("dni"), rs.getInt("edad"));
+                pacientes.add(cachePacientes.registrar(id, paciente));
             }
+            metricas.registrar(Operacion.OBTENER_TODOS_PACIENTES, inicio, pacientes.size(), 0);
         } catch (SQLException e) {
+            metricas.registrarError(Operacion.OBTENER_TODOS_PACIENTES, inicio);
             System.err.println("Error al obtener pacientes: " + e.getMessage());
         }
         return pacientes;
@@ -215,25 +436,26 @@ public class BaseDatos {
     
     // Obtener un paciente por ID
     public Paciente obtenerPacientePorId(String id) {
-        if (connection == null) { System.err.println("No hay conexión."); return null; }
-        String sql = "SELECT id, nombre, dni, edad, antecedentes FROM Pacientes WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return null; }
+        Paciente enCache = cachePacientes.obtener(id);
+        if (enCache != null) return enCache; // Los aciertos se cuentan en la caché; solo se mide la consulta
+        long inicio = metricas.inicio();
+        String sql = "SELECT id, nombre, dni, edad FROM Pacientes WHERE id = ?";
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
             pstmt.setString(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                String nombre = rs.getString("nombre");
-                String dni = rs.getString("dni");
-                int edad = rs.getInt("edad");
-                String antecedentes = rs.getString("antecedentes");
-                
-                Historial historial = new Historial(id);
-                historial.setAntecedentesMedicos(antecedentes);
-                Paciente paciente = new Paciente(nombre, dni, edad, historial);
-                paciente.setId(id);
-                cargarHistorialEntradas(paciente); // Cargar entradas específicas
-                return paciente;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    metricas.registrar(Operacion.OBTENER_PACIENTE, inicio, 0, 0);
+                    return null;
+                }
+                Paciente paciente = nuevoPaciente(id, rs.getString("nombre"), rs.getString("dni"), rs.getInt("edad"));
+                metricas.registrar(Operacion.OBTENER_PACIENTE, inicio, 1, 0);
+                return cachePacientes.registrar(id, paciente);
             }
         } catch (SQLException e) {
+            metricas.registrarError(Operacion.OBTENER_PACIENTE, inicio);
             System.err.println("Error al obtener paciente por ID: " + e.getMessage());
         }
         return null;
@@ -242,38 +464,59 @@ public class BaseDatos {
 
     // Guardar/Actualizar Medico
     public void guardarMedico(Medico medico) {
-        if (connection == null) { System.err.println("No hay conexión."); return; }
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return; }
         if (medico.getId() == null || medico.getId().isEmpty()) {
-            medico.setId(generarNuevoId("M", medicoIdCounter));
+            medico.setId(generarNuevoId("M", medicoIds));
         }
-        String sql = "REPLACE INTO Medicos (id, nombre, especialidad) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, medico.getId());
-            pstmt.setString(2, medico.getNombre());
-            pstmt.setString(3, medico.getEspecialidad());
-            pstmt.executeUpdate();
-            System.out.println("Médico guardado/actualizado: " + medico.getNombre());
+        cacheMedicos.invalidar(medico.getId());
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            escribirMedico(pool, escritor.getConexion(), medico);
+            metricas.registrar(Operacion.GUARDAR_MEDICO, inicio, 0, 1);
+            buscadorHuecos.registrarMedico(medico.getId(), medico.getNombre(), medico.getEspecialidad());
         } catch (SQLException e) {
+            metricas.registrarError(Operacion.GUARDAR_MEDICO, inicio);
             System.err.println("Error al guardar médico: " + e.getMessage());
+        } finally {
+            cacheMedicos.invalidar(medico.getId()); // Tras liberar el escritor, como en guardarPaciente
         }
     }
 
+    private void escribirMedico(PoolConexiones pool, Connection escritor, Medico medico) throws SQLException {
+        String sql = "REPLACE INTO Medicos (id, nombre, especialidad) VALUES (?, ?, ?)";
+        PreparedStatement pstmt = pool.sentencias(escritor).preparar(sql);
+        pstmt.setString(1, medico.getId());
+        pstmt.setString(2, medico.getNombre());
+        pstmt.setString(3, medico.getEspecialidad());
+        pstmt.executeUpdate();
+    }
+
     // Obtener todos los médicos
     public List<Medico> obtenerTodosMedicos() {
+        PoolConexiones pool = this.pool;
         List<Medico> medicos = new ArrayList<>();
-        if (connection == null) { System.err.println("No hay conexión."); return medicos; }
+        if (pool == null) { System.err.println("No hay conexión."); return medicos; }
         String sql = "SELECT id, nombre, especialidad FROM Medicos";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo lector = pool.tomarLector();
+             ResultSet rs = pool.sentencias(lector.getConexion()).preparar(sql).executeQuery()) {
             while (rs.next()) {
                 String id = rs.getString("id");
+                Medico enCache = cacheMedicos.obtener(id);
+                if (enCache != null) {
+                    medicos.add(enCache);
+                    continue;
+                }
                 String nombre = rs.getString("nombre");
                 String especialidad = rs.getString("especialidad");
                 Medico medico = new Medico(nombre, especialidad);
                 medico.setId(id);
-                medicos.add(medico);
+                medicos.add(cacheMedicos.registrar(id, medico));
             }
+            metricas.registrar(Operacion.OBTENER_TODOS_MEDICOS, inicio, medicos.size(), 0);
         } catch (SQLException e) {
+            metricas.registrarError(Operacion.OBTENER_TODOS_MEDICOS, inicio);
             System.err.println("Error al obtener médicos: " + e.getMessage());
         }
         return medicos;
@@ -281,165 +524,799 @@ public class BaseDatos {
     
     // Obtener un médico por ID
     public Medico obtenerMedicoPorId(String id) {
-        if (connection == null) { System.err.println("No hay conexión."); return null; }
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return null; }
+        Medico enCache = cacheMedicos.obtener(id);
+        if (enCache != null) return enCache; // Los aciertos se cuentan en la caché; solo se mide la consulta
+        long inicio = metricas.inicio();
         String sql = "SELECT id, nombre, especialidad FROM Medicos WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
             pstmt.setString(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                String nombre = rs.getString("nombre");
-                String especialidad = rs.getString("especialidad");
-                Medico medico = new Medico(nombre, especialidad);
-                medico.setId(id);
-                return medico;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    String nombre = rs.getString("nombre");
+                    String especialidad = rs.getString("especialidad");
+                    Medico medico = new Medico(nombre, especialidad);
+                    medico.setId(id);
+                    metricas.registrar(Operacion.OBTENER_MEDICO, inicio, 1, 0);
+                    return cacheMedicos.registrar(id, medico);
+                }
             }
+            metricas.registrar(Operacion.OBTENER_MEDICO, inicio, 0, 0);
         } catch (SQLException e) {
+            metricas.registrarError(Operacion.OBTENER_MEDICO, inicio);
             System.err.println("Error al obtener médico por ID: " + e.getMessage());
         }
         return null;
     }
 
 
-    // Guardar/Actualizar Cita
-    public void guardarCita(Cita cita) {
-        if (connection == null) { System.err.println("No hay conexión."); return; }
+    // Guardar/Actualizar Cita. Devuelve false si no se guardó, en particular si el médico ya
+    // tiene otra cita que se solapa con [inicio, fin) (ver IndiceAgenda)
+    public boolean guardarCita(Cita cita) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return false; }
         if (cita.getId() == null || cita.getId().isEmpty()) {
-            cita.setId(generarNuevoId("C", citaIdCounter));
+            cita.setId(generarNuevoId("C", citaIds));
+        }
+        IndiceAgenda.Reserva anterior = null;
+        boolean reservada = false;
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            anterior = reservarHueco(cita);
+            reservada = true;
+            escribirCita(pool, escritor.getConexion(), cita);
+            metricas.registrar(Operacion.GUARDAR_CITA, inicio, 0, 1);
+            return true;
+        } catch (CitaSolapadaException | TransicionNoPermitidaException e) {
+            metricas.registrarError(Operacion.GUARDAR_CITA, inicio);
+            System.err.println("Cita no guardada: " + e.getMessage());
+        } catch (SQLException e) {
+            metricas.registrarError(Operacion.GUARDAR_CITA, inicio);
+            System.err.println("Error al guardar cita: " + e.getMessage());
         }
-        String sql = "REPLACE INTO Citas (id, paciente_id, medico_id, fecha, hora, motivo, estado) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        if (reservada) {
+            indiceAgenda.restaurar(cita.getId(), anterior);
+        }
+        return false;
+    }
+
+    // Reserva en el índice el hueco de la cita (o lo libera si está cancelada) y devuelve la
+    // reserva que tenía antes, para poder deshacerla si la escritura falla
+    private IndiceAgenda.Reserva reservarHueco(Cita cita) throws CitaSolapadaException {
+        if (cita.getEstado() == EstadoCita.CANCELADA) {
+            return indiceAgenda.liberar(cita.getId());
+        }
+        return indiceAgenda.reservar(cita.getId(), cita.getMedico().getId(),
+                FechasCitas.aEpoch(cita.getInicio()), FechasCitas.aEpoch(cita.getFin()));
+    }
+
+    // La fila y los agregados de citas realizadas se actualizan en la misma transacción.
+    // Si la cita ya existe, su estado solo puede cambiar según EstadoCita.puedePasarA.
+    private void escribirCita(PoolConexiones pool, Connection escritor, Cita cita) throws SQLException {
+        String sql = "REPLACE INTO Citas (id, paciente_id, medico_id, inicio, motivo, estado, duracion) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        long inicio = FechasCitas.aEpoch(cita.getInicio());
+        long fin = FechasCitas.aEpoch(cita.getFin());
+        enTransaccion(escritor, c -> {
+            CacheSentencias sentencias = pool.sentencias(c);
+            // Las citas que terminan antes del horizonte no están en IndiceAgenda: una cita que
+            // empieza antes se comprueba aquí, con el escritor ya serializando las escrituras
+            if (inicio < indiceAgenda.getHorizonte() && cita.getEstado() != EstadoCita.CANCELADA) {
+                comprobarSolapeEnDB(sentencias, cita, inicio, fin);
+            }
+            Object[] anterior = AgregadosCitas.leerAnterior(sentencias, cita.getId());
+            if (anterior != null) {
+                EstadoCita estadoAnterior = EstadoCita.desdeCodigo((Integer) anterior[3]);
+                if (estadoAnterior != cita.getEstado() && !estadoAnterior.puedePasarA(cita.getEstado())) {
+                    throw new TransicionNoPermitidaException("La cita " + cita.getId() + " está " + estadoAnterior +
+                            " y no puede pasar a " + cita.getEstado());
+                }
+            }
+
+            PreparedStatement pstmt = sentencias.preparar(sql);
             pstmt.setString(1, cita.getId());
             pstmt.setString(2, cita.getPaciente().getId());
             pstmt.setString(3, cita.getMedico().getId());
-            pstmt.setString(4, cita.getFecha());
-            pstmt.setString(5, cita.getHora());
-            pstmt.setString(6, cita.getMotivo());
-            pstmt.setString(7, cita.getEstado());
+            pstmt.setLong(4, inicio);
+            pstmt.setString(5, cita.getMotivo());
+            pstmt.setInt(6, cita.getEstado().getCodigo());
+            pstmt.setInt(7, cita.getDuracionMinutos());
             pstmt.executeUpdate();
-            System.out.println("Cita guardada/actualizada: " + cita.getId());
+
+            AgregadosCitas.registrarCambio(sentencias, anterior, cita.getPaciente().getId(), cita.getMedico().getId(),
+                    inicio / FechasCitas.SEGUNDOS_POR_DIA, cita.getEstado());
+        });
+    }
+
+    private static void comprobarSolapeEnDB(CacheSentencias sentencias, Cita cita, long inicio, long fin) throws SQLException {
+        PreparedStatement pstmt = sentencias.preparar(
+                "SELECT id FROM Citas WHERE medico_id = ? AND inicio < ? AND inicio + duracion * 60 > ? " +
+                        "AND estado <> " + EstadoCita.CANCELADA.getCodigo() + " AND id <> ? LIMIT 1");
+        pstmt.setString(1, cita.getMedico().getId());
+        pstmt.setLong(2, fin);
+        pstmt.setLong(3, inicio);
+        pstmt.setString(4, cita.getId());
+        try (ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                throw new CitaSolapadaException("El médico " + cita.getMedico().getId() + " ya tiene la cita "
+                        + rs.getString(1) + " en ese horario.");
+            }
+        }
+    }
+
+    // --- Huecos libres ---
+
+    // Los 'cantidad' primeros huecos libres (de MapaOcupacion.DURACION_HUECO, en horario de
+    // atención) de los médicos de la especialidad a partir de 'desde'; especialidad null = cualquiera.
+    // Se resuelve en memoria con la ocupación que mantiene IndiceAgenda, sin consultar la DB.
+    public List<HuecoLibre> buscarHuecosLibres(String especialidad, LocalDateTime desde, int cantidad) {
+        long inicio = Math.max(FechasCitas.aEpoch(desde), indiceAgenda.getHorizonte()); // Antes no hay ocupación cargada
+        return buscadorHuecos.buscar(especialidad, inicio, cantidad);
+    }
+
+    public List<String> obtenerEspecialidades() {
+        return buscadorHuecos.especialidades();
+    }
+
+    // Obtener una cita por ID (búsqueda por clave primaria)
+    public Cita obtenerCitaPorId(String id) {
+        List<Cita> citas = cargarCitas(Operacion.OBTENER_CITA, " WHERE c.id = ?", "obtener cita por ID", id);
+        return citas.isEmpty() ? null : citas.get(0);
+    }
+
+    // Actualiza solo el estado de una cita con un único UPDATE por clave primaria (junto con
+    // los agregados de citas realizadas, en la misma transacción). Devuelve true si la cita
+    // existía y la transición desde su estado guardado está permitida (ver EstadoCita).
+    public boolean actualizarEstadoCita(String id, EstadoCita estado) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return false; }
+        String sql = "UPDATE Citas SET estado = ? WHERE id = ?";
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            boolean[] resultado = new boolean[1];
+            enTransaccion(escritor.getConexion(), c -> {
+                CacheSentencias sentencias = pool.sentencias(c);
+                Object[] anterior = AgregadosCitas.leerAnterior(sentencias, id);
+                if (anterior == null) return;
+                EstadoCita estadoAnterior = EstadoCita.desdeCodigo((Integer) anterior[3]);
+                if (!estadoAnterior.puedePasarA(estado)) {
+                    System.err.println("Transición no permitida para la cita " + id + ": " + estadoAnterior + " -> " + estado);
+                    return;
+                }
+
+                PreparedStatement pstmt = sentencias.preparar(sql);
+                pstmt.setInt(1, estado.getCodigo());
+                pstmt.setString(2, id);
+                pstmt.executeUpdate();
+                AgregadosCitas.registrarCambio(sentencias, anterior, (String) anterior[0], (String) anterior[1],
+                        (Long) anterior[2], estado);
+                resultado[0] = true;
+            });
+            boolean actualizada = resultado[0];
+            metricas.registrar(Operacion.ACTUALIZAR_ESTADO_CITA, inicio, 1, actualizada ? 1 : 0);
+            if (actualizada && estado == EstadoCita.CANCELADA) {
+                indiceAgenda.liberar(id); // El hueco vuelve a estar libre
+            }
+            return actualizada;
         } catch (SQLException e) {
-            System.err.println("Error al guardar cita: " + e.getMessage());
+            metricas.registrarError(Operacion.ACTUALIZAR_ESTADO_CITA, inicio);
+            System.err.println("Error al actualizar estado de cita: " + e.getMessage());
         }
+        return false;
+    }
+
+    // --- Agregados de citas realizadas ---
+
+    private static final String SQL_REALIZADAS_POR_PACIENTE = "SELECT a.paciente_id, p.nombre, a.realizadas FROM RealizadasPorPaciente a " +
+            "LEFT JOIN Pacientes p ON p.id = a.paciente_id ORDER BY a.realizadas DESC, a.paciente_id";
+
+    // Pacientes con al menos una cita realizada, de más a menos citas
+    public List<ConteoRealizadas> obtenerRealizadasPorPaciente() {
+        return cargarAgregado(SQL_REALIZADAS_POR_PACIENTE);
+    }
+
+    // Igual que obtenerRealizadasPorPaciente, pero entregando las filas según se leen del cursor
+    public boolean recorrerRealizadasPorPaciente(ReceptorConteoRealizadas receptor) {
+        return recorrerAgregado(SQL_REALIZADAS_POR_PACIENTE, receptor);
+    }
+
+    public List<ConteoRealizadas> obtenerRealizadasPorMedico() {
+        return cargarAgregado("SELECT a.medico_id, m.nombre, a.realizadas FROM RealizadasPorMedico a " +
+                "LEFT JOIN Medicos m ON m.id = a.medico_id ORDER BY a.realizadas DESC, a.medico_id");
+    }
+
+    public List<ConteoRealizadas> obtenerRealizadasPorDia() {
+        return cargarAgregado("SELECT date(dia * 86400, 'unixepoch'), NULL, realizadas FROM RealizadasPorDia ORDER BY dia");
+    }
+
+    // {citas realizadas, pacientes atendidos}, sumados dentro de SQLite
+    public int[] obtenerTotalesRealizadas() {
+        PoolConexiones pool = this.pool;
+        int[] totales = new int[2];
+        if (pool == null) { System.err.println("No hay conexión."); return totales; }
+        String sql = "SELECT COALESCE(SUM(realizadas), 0), COUNT(*) FROM RealizadasPorPaciente";
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo lector = pool.tomarLector();
+             ResultSet rs = pool.sentencias(lector.getConexion()).preparar(sql).executeQuery()) {
+            if (rs.next()) {
+                totales[0] = rs.getInt(1);
+                totales[1] = rs.getInt(2);
+            }
+            metricas.registrar(Operacion.LEER_AGREGADOS, inicio, 1, 0);
+        } catch (SQLException e) {
+            metricas.registrarError(Operacion.LEER_AGREGADOS, inicio);
+            System.err.println("Error al leer agregados de citas: " + e.getMessage());
+        }
+        return totales;
+    }
+
+    private List<ConteoRealizadas> cargarAgregado(String sql) {
+        List<ConteoRealizadas> filas = new ArrayList<>();
+        recorrerAgregado(sql, (clave, nombre, realizadas) -> filas.add(new ConteoRealizadas(clave, nombre, realizadas)));
+        return filas;
+    }
+
+    private boolean recorrerAgregado(String sql, ReceptorConteoRealizadas receptor) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return false; }
+        long inicio = metricas.inicio();
+        int filas = 0;
+        try (PoolConexiones.Prestamo lector = pool.tomarLector();
+             ResultSet rs = pool.sentencias(lector.getConexion()).preparar(sql).executeQuery()) {
+            while (rs.next()) {
+                receptor.fila(rs.getString(1), rs.getString(2), rs.getInt(3));
+                filas++;
+            }
+            metricas.registrar(Operacion.LEER_AGREGADOS, inicio, filas, 0);
+            return true;
+        } catch (SQLException e) {
+            metricas.registrarError(Operacion.LEER_AGREGADOS, inicio);
+            System.err.println("Error al leer agregados de citas: " + e.getMessage());
+        }
+        return false;
+    }
+
+    // Recorre con un cursor de solo avance las citas del filtro, ordenadas por (inicio, id),
+    // sin construir objetos Cita: solo los valores que necesita un listado (fecha AAAA-MM-DD, hora HH:MM)
+    public boolean recorrerCitas(FiltroCitas filtro, ReceptorFilasCita receptor) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return false; }
+        StringBuilder where = new StringBuilder();
+        List<Object> parametros = new ArrayList<>();
+        if (filtro != null) {
+            filtro.aplicar(where, parametros);
+        }
+        String sql = "SELECT c.id, p.nombre, m.nombre, date(c.inicio, 'unixepoch'), strftime('%H:%M', c.inicio, 'unixepoch'), " +
+                "c.motivo, " + DefinicionReporte.NOMBRE_ESTADO + " FROM Citas c " +
+                "LEFT JOIN Pacientes p ON p.id = c.paciente_id LEFT JOIN Medicos m ON m.id = c.medico_id" +
+                where + " ORDER BY c.inicio, c.id";
+        long inicio = metricas.inicio();
+        int filas = 0;
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    receptor.fila(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                            rs.getString(5), rs.getString(6), rs.getString(7));
+                    filas++;
+                }
+            }
+            metricas.registrar(Operacion.RECORRER_CITAS, inicio, filas, 0);
+            return true;
+        } catch (SQLException e) {
+            metricas.registrarError(Operacion.RECORRER_CITAS, inicio);
+            System.err.println("Error al recorrer citas: " + e.getMessage());
+        }
+        return false;
+    }
+
+    // --- Motor de reportes ---
+
+    // Ejecuta el reporte dentro de SQLite (GROUP BY) y entrega cada fila agregada al receptor,
+    // en el orden de la clave de agrupación. Devuelve false si la consulta falló.
+    public boolean ejecutarReporte(DefinicionReporte definicion, ReceptorFilasReporte receptor) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return false; }
+        List<Object> parametros = new ArrayList<>();
+        String sql = definicion.compilar(parametros);
+        long inicio = metricas.inicio();
+        int filas = 0;
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    receptor.fila(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getInt(4),
+                            rs.getInt(5), rs.getInt(6), rs.getInt(7));
+                    filas++;
+                }
+            }
+            metricas.registrar(Operacion.EJECUTAR_REPORTE, inicio, filas, 0);
+            return true;
+        } catch (SQLException e) {
+            metricas.registrarError(Operacion.EJECUTAR_REPORTE, inicio);
+            System.err.println("Error al ejecutar reporte: " + e.getMessage());
+        }
+        return false;
+    }
+
+    // Recalcula desde cero los agregados de citas realizadas (p. ej. para verificar el
+    // mantenimiento incremental). Devuelve cuántas filas no coincidían, o -1 si falló.
+    public int reconstruirAgregados() {
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return -1; }
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            int[] diferencias = new int[1];
+            enTransaccion(escritor.getConexion(), c -> diferencias[0] = AgregadosCitas.reconstruir(c));
+            System.out.println("Agregados de citas reconstruidos (" + diferencias[0] + " diferencias).");
+            return diferencias[0];
+        } catch (SQLException e) {
+            System.err.println("Error al reconstruir agregados: " + e.getMessage());
+        }
+        return -1;
+    }
+
+    // --- Respaldo en caliente ---
+
+    // Ruta del archivo de la base de datos (la de URL, sin el prefijo jdbc:sqlite:)
+    private Path archivoDb() {
+        return Path.of(URL.substring("jdbc:sqlite:".length()));
+    }
+
+    // Copia la base de datos en 'directorio' en un hilo de fondo, sin bloquear a los guardar*()
+    // salvo un instante al empezar y al terminar (ver RespaldoEnLinea). La primera vez hace una copia
+    // completa y después incrementos con solo las páginas cambiadas. 'bytesPorSegundo' limita la
+    // lectura del disco (<= 0: sin límite). El futuro devuelve las páginas escritas en el respaldo.
+    public synchronized CompletableFuture<Long> respaldarEnLinea(Path directorio, long bytesPorSegundo) {
+        if (pool == null) return CompletableFuture.failedFuture(new SQLException("No hay conexión."));
+        if (respaldoEnCurso != null && !respaldoEnCurso.isDone()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Ya hay un respaldo en curso"));
+        }
+        RespaldoEnLinea respaldo = new RespaldoEnLinea(pool, archivoDb(), bytesPorSegundo);
+        CompletableFuture<Long> resultado = new CompletableFuture<>();
+        Thread hilo = new Thread(() -> {
+            try {
+                long inicio = System.nanoTime();
+                long paginas = respaldo.respaldar(directorio);
+                System.out.println("Respaldo en " + directorio + ": " + paginas + " página(s) en "
+                        + (System.nanoTime() - inicio) / 1_000_000 + " ms.");
+                resultado.complete(paginas);
+            } catch (IOException | SQLException | RuntimeException e) {
+                System.err.println("Error en el respaldo: " + e.getMessage());
+                resultado.completeExceptionally(e);
+            }
+        }, "respaldo-citas");
+        hilo.setDaemon(true);
+        respaldoEnCurso = resultado;
+        hilo.start();
+        return resultado;
+    }
+
+    // Sustituye la base de datos por el respaldo de 'directorio' hasta el incremento 'hasta'
+    // (0 = solo la copia completa, negativo = el último). Se desconecta, restaura y verifica en un
+    // archivo aparte (ver RespaldoEnLinea.restaurar) y vuelve a conectar. Si la verificación falla
+    // la base de datos actual no se toca.
+    public synchronized boolean restaurarRespaldo(Path directorio, int hasta) {
+        long[] diferida = colaEscritura != null ? configuracionDiferida : null;
+        desconectar();
+        boolean restaurada = false;
+        try {
+            RespaldoEnLinea.restaurar(directorio, hasta, archivoDb());
+            System.out.println("Base de datos restaurada desde " + directorio + ".");
+            restaurada = true;
+        } catch (IOException | SQLException e) {
+            System.err.println("Error al restaurar el respaldo: " + e.getMessage());
+        }
+        cachePacientes.limpiar();
+        cacheMedicos.limpiar();
+        if (conectar()) {
+            inicializarEsquema(); // Un respaldo de una versión anterior se migra al abrirlo
+            cargarIndiceAgenda();
+            if (diferida != null) { // Se vuelve a habilitar con la misma configuración
+                habilitarEscrituraDiferida((int) diferida[0], (int) diferida[1], diferida[2]);
+            }
+        }
+        return restaurada;
+    }
+
+    // --- Importación masiva ---
+
+    // Importa pacientes, médicos y citas desde CSV (cualquiera puede ser null), en ese orden para
+    // que las citas puedan referirse a los IDs de los otros dos archivos (ver ImportadorCsv).
+    // Al terminar recalcula los agregados y vuelve a cargar la agenda de los médicos.
+    // Devuelve un resultado por archivo pedido. Si uno falla, su resultado lleva el error (los
+    // lotes ya confirmados se quedan) y los siguientes no se importan: su resultado lleva el motivo.
+    public List<ResultadoImportacion> importarCsv(Path pacientes, Path medicos, Path citas, ProgresoImportacion progreso) {
+        PoolConexiones pool = this.pool;
+        List<ResultadoImportacion> resultados = new ArrayList<>();
+        if (pool == null) { System.err.println("No hay conexión."); return resultados; }
+        ImportadorCsv importador = new ImportadorCsv(pool, progreso);
+        String fallo = null;
+        try {
+            importador.iniciar();
+        } catch (SQLException e) {
+            fallo = "No se pudo iniciar la importación: " + e.getMessage();
+        }
+        fallo = importarArchivo(resultados, fallo, pacientes, archivo -> importador.importarPacientes(archivo, pacienteIds));
+        fallo = importarArchivo(resultados, fallo, medicos, archivo -> importador.importarMedicos(archivo, medicoIds));
+        importarArchivo(resultados, fallo, citas, archivo -> importador.importarCitas(archivo, citaIds));
+        for (ResultadoImportacion resultado : resultados) {
+            if (resultado.getError() != null) {
+                System.err.println("Importación: " + resultado);
+            } else {
+                System.out.println("Importación: " + resultado);
+            }
+        }
+        if (citas != null) {
+            reconstruirAgregados();
+        }
+        cargarIndiceAgenda(); // Citas y médicos nuevos
+        return resultados;
+    }
+
+    // Importa 'archivo' (si no es null) salvo que ya haya un fallo, y devuelve el fallo que
+    // impide importar los siguientes archivos (null si no hay)
+    private static String importarArchivo(List<ResultadoImportacion> resultados, String fallo, Path archivo,
+                                          Function<Path, ResultadoImportacion> importar) {
+        if (archivo == null) {
+            return fallo;
+        }
+        if (fallo != null) {
+            resultados.add(new ResultadoImportacion(archivo.getFileName().toString(), 0, 0, 0, null, fallo));
+            return fallo;
+        }
+        ResultadoImportacion resultado = importar.apply(archivo);
+        resultados.add(resultado);
+        return resultado.getError() != null ? "No importado: falló la importación de " + resultado.getArchivo() : null;
+    }
+
+    // Página de citas ordenadas por (inicio, id) con paginación por clave (keyset):
+    // devuelve hasta 'limite' citas posteriores a 'despuesDe' (null = desde el principio),
+    // saltándose antes 'saltar' filas. Con saltar = 0 el coste no depende de la posición de la
+    // página; 'saltar' solo se usa para llegar a páginas lejanas sin conocer su clave inicial.
+    // Lanza SQLException si la consulta falla, para no confundir el error con una página vacía.
+    public List<Cita> obtenerPaginaCitas(FiltroCitas filtro, Cita despuesDe, int saltar, int limite) throws SQLException {
+        List<Object> parametros = new ArrayList<>();
+        StringBuilder where = condicionesCitas(filtro, parametros);
+        if (despuesDe != null) {
+            FiltroCitas.agregar(where, parametros, "(c.inicio, c.id) > (?, ?)", FechasCitas.aEpoch(despuesDe.getInicio()));
+            parametros.add(despuesDe.getId());
+        }
+        where.append(" ORDER BY c.inicio, c.id LIMIT ? OFFSET ?");
+        parametros.add(limite);
+        parametros.add(saltar);
+        return consultarCitas(Operacion.OBTENER_PAGINA_CITAS, where.toString(), parametros.toArray());
+    }
+
+    public List<Cita> obtenerPaginaCitas(FiltroCitas filtro, Cita despuesDe, int limite) throws SQLException {
+        return obtenerPaginaCitas(filtro, despuesDe, 0, limite);
+    }
+
+    // Número de citas que cumplen el filtro (para dimensionar la tabla sin cargar las filas).
+    // Cuenta con los mismos JOIN y condiciones que obtenerPaginaCitas: una cita cuyo paciente o
+    // médico no existe no aparece en las páginas y tampoco se cuenta
+    public int contarCitas(FiltroCitas filtro) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return 0; }
+        List<Object> parametros = new ArrayList<>();
+        String sql = "SELECT COUNT(*)" + FROM_CITAS + condicionesCitas(filtro, parametros);
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
+            for (int i = 0; i < parametros.size(); i++) {
+                pstmt.setObject(i + 1, parametros.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int total = rs.next() ? rs.getInt(1) : 0;
+                metricas.registrar(Operacion.CONTAR_CITAS, inicio, 1, 0);
+                return total;
+            }
+        } catch (SQLException e) {
+            metricas.registrarError(Operacion.CONTAR_CITAS, inicio);
+            System.err.println("Error al contar citas: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    // WHERE del filtro (vacío si es null), con sus parámetros añadidos a 'parametros'
+    private static StringBuilder condicionesCitas(FiltroCitas filtro, List<Object> parametros) {
+        StringBuilder where = new StringBuilder();
+        if (filtro != null) {
+            filtro.aplicar(where, parametros);
+        }
+        return where;
     }
 
     // Obtener todas las citas
     public List<Cita> obtenerTodasCitas() {
+        return cargarCitas(Operacion.OBTENER_TODAS_CITAS, "", "obtener citas");
+    }
+    
+    // FROM de las consultas de citas (cargarCitas y contarCitas): solo las citas con paciente y médico existentes
+    private static final String FROM_CITAS = " FROM Citas c " +
+            "JOIN Pacientes p ON p.id = c.paciente_id " +
+            "JOIN Medicos m ON m.id = c.medico_id";
+
+    // Carga masiva de citas: una sola consulta con JOIN para Citas, Pacientes y Medicos.
+    // Cada Paciente/Medico se instancia una sola vez aunque aparezca en varias citas, las
+    // instancias que ya están en el mapa de identidad se reutilizan tal cual, y el historial
+    // de los pacientes no se lee hasta que alguien lo consulta.
+    // Si la consulta falla se registra el error y se devuelve una lista vacía.
+    private List<Cita> cargarCitas(Operacion operacion, String filtro, String contexto, Object... parametros) {
+        try {
+            return consultarCitas(operacion, filtro, parametros);
+        } catch (SQLException e) {
+            System.err.println("Error al " + contexto + ": " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    // La consulta de cargarCitas, sin ocultar el error
+    private List<Cita> consultarCitas(Operacion operacion, String filtro, Object... parametros) throws SQLException {
+        PoolConexiones pool = this.pool;
+        if (pool == null) throw new SQLException("No hay conexión.");
+
         List<Cita> citas = new ArrayList<>();
-        if (connection == null) { System.err.println("No hay conexión."); return citas; }
-        String sql = "SELECT id, paciente_id, medico_id, fecha, hora, motivo, estado FROM Citas";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                String id = rs.getString("id");
-                String pacienteId = rs.getString("paciente_id");
-                String medicoId = rs.getString("medico_id");
-                String fecha = rs.getString("fecha");
-                String hora = rs.getString("hora");
-                String motivo = rs.getString("motivo");
-                String estado = rs.getString("estado");
-
-                // Necesitamos cargar los objetos Paciente y Medico completos
-                Paciente paciente = obtenerPacientePorId(pacienteId);
-                Medico medico = obtenerMedicoPorId(medicoId);
-
-                if (paciente != null && medico != null) {
-                    Cita cita = new Cita(paciente, medico, fecha, hora, motivo);
-                    cita.setId(id);
-                    cita.setEstado(estado);
+
+        Map<String, Paciente> pacientes = new HashMap<>();
+        Map<String, Medico> medicos = new HashMap<>();
+
+        String sql = "SELECT c.id, c.inicio, c.duracion, c.motivo, c.estado, " +
+                "p.id AS p_id, p.nombre AS p_nombre, p.dni AS p_dni, p.edad AS p_edad, " +
+                "m.id AS m_id, m.nombre AS m_nombre, m.especialidad AS m_especialidad" + FROM_CITAS + filtro;
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
+            for (int i = 0; i < parametros.length; i++) {
+                pstmt.setObject(i + 1, parametros[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String pacienteId = rs.getString("p_id");
+                    Paciente paciente = pacientes.get(pacienteId);
+                    if (paciente == null) {
+                        paciente = cachePacientes.obtener(pacienteId);
+                        if (paciente == null) {
+                            paciente = nuevoPaciente(pacienteId, rs.getString("p_nombre"), rs.getString("p_dni"), rs.getInt("p_edad"));
+                            paciente = cachePacientes.registrar(pacienteId, paciente);
+                        }
+                        pacientes.put(pacienteId, paciente);
+                    }
+
+                    String medicoId = rs.getString("m_id");
+                    Medico medico = medicos.get(medicoId);
+                    if (medico == null) {
+                        medico = cacheMedicos.obtener(medicoId);
+                        if (medico == null) {
+                            medico = new Medico(rs.getString("m_nombre"), rs.getString("m_especialidad"));
+                            medico.setId(medicoId);
+                            medico = cacheMedicos.registrar(medicoId, medico);
+                        }
+                        medicos.put(medicoId, medico);
+                    }
+
+                    LocalDateTime fechaHora = FechasCitas.desdeEpoch(rs.getLong("inicio"));
+                    Cita cita = new Cita(paciente, medico, fechaHora.toLocalDate(), fechaHora.toLocalTime(), rs.getString("motivo"));
+                    cita.setId(rs.getString("id"));
+                    cita.setDuracionMinutos(rs.getInt("duracion"));
+                    cita.setEstadoDesdeDB(EstadoCita.desdeCodigo(rs.getInt("estado")));
                     citas.add(cita);
                 }
             }
+            metricas.registrar(operacion, inicio, citas.size(), 0);
         } catch (SQLException e) {
-            System.err.println("Error al obtener citas: " + e.getMessage());
+            metricas.registrarError(operacion, inicio);
+            throw e;
         }
         return citas;
     }
-    
-    // Guardar entrada de historial (usada internamente por guardarPaciente)
-    private void guardarHistorialEntry(String pacienteId, Historial.HistorialEntry entry) {
-        if (connection == null) { System.err.println("No hay conexión."); return; }
-        // Si la entrada no tiene un ID de DB (SQLite AUTOINCREMENT lo asigna), insertamos
-        // Si ya tiene un ID, es una entrada existente y no la modificamos (Historial es append-only)
-        if (entry.getId() == 0) { // Asumimos 0 si es nueva
-            String sql = "INSERT INTO HistorialEntradas (paciente_id, fecha, descripcion) VALUES (?, ?, ?)";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                pstmt.setString(1, pacienteId);
-                pstmt.setString(2, entry.getFecha());
-                pstmt.setString(3, entry.getDescripcion());
-                pstmt.executeUpdate();
-                ResultSet generatedKeys = pstmt.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    entry.setId(generatedKeys.getInt(1)); // Asignar el ID generado por la DB a la entrada
+
+    // Guarda las entradas nuevas del historial (usada internamente por guardarPaciente).
+    // Las entradas con ID ya existen en la DB y no se modifican (Historial es append-only);
+    // las nuevas se insertan en un único batch JDBC y reciben el ID generado por AUTOINCREMENT
+    // (ya antes de confirmar, para que otra escritura del mismo lote no las repita; si la
+    // transacción se deshace, escribirPaciente o guardarPacienteDiferido los vuelven a 0).
+    private static void guardarEntradasNuevas(PoolConexiones pool, Connection escritor, String pacienteId, List<Historial.HistorialEntry> nuevas) throws SQLException {
+        if (nuevas.isEmpty()) return; // Sin entradas nuevas no se ejecuta ningún SQL de historial
+        String sql = "INSERT INTO HistorialEntradas (paciente_id, fecha, descripcion) VALUES (?, ?, ?)";
+        PreparedStatement pstmt = pool.sentencias(escritor).preparar(sql);
+        for (Historial.HistorialEntry entry : nuevas) {
+            pstmt.setString(1, pacienteId);
+            pstmt.setString(2, entry.getFecha());
+            pstmt.setString(3, entry.getDescripcion());
+            pstmt.addBatch();
+        }
+        pstmt.executeBatch();
+        // Con un único escritor y dentro de la misma transacción, AUTOINCREMENT asigna IDs
+        // consecutivos: el último es last_insert_rowid() y los anteriores van hacia atrás
+        try (ResultSet rs = pool.sentencias(escritor).preparar("SELECT last_insert_rowid()").executeQuery()) {
+            if (rs.next()) {
+                int id = rs.getInt(1) - nuevas.size() + 1;
+                for (Historial.HistorialEntry entry : nuevas) {
+                    entry.setId(id++); // Asignar el ID generado por la DB a la entrada
                 }
-                System.out.println("Entrada de historial guardada para paciente " + pacienteId);
-            } catch (SQLException e) {
-                System.err.println("Error al guardar entrada de historial: " + e.getMessage());
             }
         }
     }
+
+    // Ejecuta la operación en una transacción; si ya hay una abierta (p. ej. un lote de la
+    // cola diferida) se limita a participar en ella
+    private static void enTransaccion(Connection escritor, ColaEscritura.Operacion operacion) throws SQLException {
+        if (!escritor.getAutoCommit()) {
+            operacion.ejecutar(escritor);
+            return;
+        }
+        escritor.setAutoCommit(false);
+        try {
+            operacion.ejecutar(escritor);
+            escritor.commit();
+        } catch (SQLException | RuntimeException e) {
+            escritor.rollback();
+            throw e;
+        } finally {
+            escritor.setAutoCommit(true);
+        }
+    }
     
-    // Cargar entradas de historial para un paciente
-    private void cargarHistorialEntradas(Paciente paciente) {
-        if (connection == null) { System.err.println("No hay conexión."); return; }
-        String sql = "SELECT id, fecha, descripcion FROM HistorialEntradas WHERE paciente_id = ? ORDER BY fecha ASC";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, paciente.getId());
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                int entryId = rs.getInt("id");
-                String fecha = rs.getString("fecha");
-                String descripcion = rs.getString("descripcion");
-                Historial.HistorialEntry entry = new Historial.HistorialEntry(fecha, descripcion);
-                entry.setId(entryId); // Establecer el ID de la DB
-                paciente.getHistorial().addEntradaFromDB(entry); // Método especial para añadir desde DB
+    // Paciente leído de la DB con su historial pendiente de carga
+    private Paciente nuevoPaciente(String id, String nombre, String dni, int edad) {
+        Paciente paciente = new Paciente(nombre, dni, edad, new Historial(id, this::cargarHistorial));
+        paciente.setId(id);
+        return paciente;
+    }
+
+    // Cargador del historial: antecedentes y entradas, solo cuando se consultan por primera vez.
+    // Si falla lanza HistorialNoDisponibleException y el historial queda pendiente de carga.
+    private void cargarHistorial(Historial historial) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) throw new HistorialNoDisponibleException("No hay conexión.", null);
+        long inicio = metricas.inicio();
+        int filas = 0;
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement antecedentes = pool.sentencias(lector.getConexion()).preparar("SELECT antecedentes FROM Pacientes WHERE id = ?");
+            antecedentes.setString(1, historial.getPacienteId());
+            try (ResultSet rs = antecedentes.executeQuery()) {
+                if (rs.next()) {
+                    historial.setAntecedentesMedicos(rs.getString("antecedentes"));
+                    filas++;
+                }
             }
+
+            String sql = "SELECT id, fecha, descripcion FROM HistorialEntradas WHERE paciente_id = ? ORDER BY fecha ASC, id ASC";
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
+            pstmt.setString(1, historial.getPacienteId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int entryId = rs.getInt("id");
+                    String fecha = rs.getString("fecha");
+                    String descripcion = rs.getString("descripcion");
+                    Historial.HistorialEntry entry = new Historial.HistorialEntry(fecha, descripcion);
+                    entry.setId(entryId); // Establecer el ID de la DB
+                    historial.addEntradaFromDB(entry); // Método especial para añadir desde DB
+                    filas++;
+                }
+            }
+            metricas.registrar(Operacion.CARGAR_HISTORIAL, inicio, filas, 0);
         } catch (SQLException e) {
-            System.err.println("Error al cargar entradas de historial para paciente " + paciente.getId() + ": " + e.getMessage());
+            metricas.registrarError(Operacion.CARGAR_HISTORIAL, inicio);
+            System.err.println("Error al cargar historial para paciente " + historial.getPacienteId() + ": " + e.getMessage());
+            throw new HistorialNoDisponibleException("No se pudo cargar el historial del paciente " + historial.getPacienteId(), e);
         }
     }
     
     // Nuevo: Para el reporte de citas por día
-     public List<Cita> obtenerCitasPorFecha(String fecha) {
-         List<Cita> citas = new ArrayList<>();
-         if (connection == null) {
-             System.err.println("No hay conexión.");
-             return citas;
-         }
-         String sql = "SELECT id, paciente_id, medico_id, fecha, hora, motivo, estado FROM Citas WHERE fecha = ?";
-         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-             pstmt.setString(1, fecha);
-             ResultSet rs = pstmt.executeQuery();
-             while (rs.next()) {
-                 String id = rs.getString("id");
-                 String pacienteId = rs.getString("paciente_id");
-                 String medicoId = rs.getString("medico_id");
-                 String hora = rs.getString("hora");
-                 String motivo = rs.getString("motivo");
-                 String estado = rs.getString("estado");
-
-                 Paciente paciente = obtenerPacientePorId(pacienteId);
-                 Medico medico = obtenerMedicoPorId(medicoId);
-
-                 if (paciente != null && medico != null) {
-                     Cita cita = new Cita(paciente, medico, fecha, hora, motivo);
-                     cita.setId(id);
-                     cita.setEstado(estado);
-                     citas.add(cita);
-                 }
-             }
-         } catch (SQLException e) {
-             System.err.println("Error al obtener citas por fecha: " + e.getMessage());
-         }
-         return citas;
-     }
+    public List<Cita> obtenerCitasPorFecha(LocalDate fecha) {
+        return obtenerCitasEntre(fecha, fecha);
+    }
+
+    // Citas con inicio en [desde, hasta), ordenadas; un rango sobre idx_citas_inicio
+    public List<Cita> obtenerCitasEntre(LocalDateTime desde, LocalDateTime hasta) {
+        return cargarCitas(Operacion.OBTENER_CITAS_RANGO, " WHERE c.inicio >= ? AND c.inicio < ? ORDER BY c.inicio, c.id", "obtener citas por rango",
+                FechasCitas.aEpoch(desde), FechasCitas.aEpoch(hasta));
+    }
+
+    // Citas de los días 'desde' a 'hasta', ambos incluidos
+    public List<Cita> obtenerCitasEntre(LocalDate desde, LocalDate hasta) {
+        return obtenerCitasEntre(desde.atStartOfDay(), hasta.plusDays(1).atStartOfDay());
+    }
+
+    // Citas todavía programadas en [desde, hasta), p. ej. lo que queda de la agenda de hoy.
+    // El código de estado va literal en el SQL para que SQLite use el índice parcial idx_citas_programadas
+    public List<Cita> obtenerCitasPendientesEntre(LocalDateTime desde, LocalDateTime hasta) {
+        return cargarCitas(Operacion.OBTENER_CITAS_RANGO, " WHERE c.estado = " + EstadoCita.PROGRAMADA.getCodigo() +
+                        " AND c.inicio >= ? AND c.inicio < ? ORDER BY c.inicio, c.id", "obtener citas pendientes",
+                FechasCitas.aEpoch(desde), FechasCitas.aEpoch(hasta));
+    }
+
+    public int contarCitasPendientesEntre(LocalDateTime desde, LocalDateTime hasta) {
+        PoolConexiones pool = this.pool;
+        if (pool == null) { System.err.println("No hay conexión."); return 0; }
+        String sql = "SELECT COUNT(*) FROM Citas WHERE estado = " + EstadoCita.PROGRAMADA.getCodigo() +
+                " AND inicio >= ? AND inicio < ?";
+        long inicio = metricas.inicio();
+        try (PoolConexiones.Prestamo lector = pool.tomarLector()) {
+            PreparedStatement pstmt = pool.sentencias(lector.getConexion()).preparar(sql);
+            pstmt.setLong(1, FechasCitas.aEpoch(desde));
+            pstmt.setLong(2, FechasCitas.aEpoch(hasta));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int total = rs.next() ? rs.getInt(1) : 0;
+                metricas.registrar(Operacion.CONTAR_CITAS, inicio, 1, 0);
+                return total;
+            }
+        } catch (SQLException e) {
+            metricas.registrarError(Operacion.CONTAR_CITAS, inicio);
+            System.err.println("Error al contar citas pendientes: " + e.getMessage());
+        }
+        return 0;
+    }
+
+
+    // --- Métricas ---
+
+    // Métricas por operación, de conexiones y de cachés; también publicadas por JMX al conectar
+    public MetricasBaseDatos getMetricas() {
+        return metricas;
+    }
+
+    // --- Estadísticas de los mapas de identidad ---
+
+    public CacheEntidades<Paciente> getCachePacientes() {
+        return cachePacientes;
+    }
+
+    public CacheEntidades<Medico> getCacheMedicos() {
+        return cacheMedicos;
+    }
+
+    // Reutilizaciones por sentencia SQL (sumadas en todas las conexiones del pool),
+    // para confirmar que las rutas calientes ya no vuelven a preparar sus sentencias
+    public Map<String, Long> obtenerReutilizacionesSentencias() {
+        PoolConexiones pool = this.pool;
+        if (pool == null) return new HashMap<>();
+        return pool.getReutilizacionesSentencias();
+    }
+
+    public Map<String, Long> obtenerPreparacionesSentencias() {
+        PoolConexiones pool = this.pool;
+        if (pool == null) return new HashMap<>();
+        return pool.getPreparacionesSentencias();
+    }
 
 
     // --- Método main para pruebas iniciales de DB ---
     public static void main(String[] args) {
         BaseDatos db = new BaseDatos();
         db.conectar();
+        if (args.length > 0 && args[0].equals("reconstruir-agregados")) {
+            db.reconstruirAgregados();
+        }
+        // respaldar <directorio> / restaurar <directorio> [incremento]
+        if (args.length == 2 && args[0].equals("respaldar")) {
+            db.respaldarEnLinea(Path.of(args[1]), 0).exceptionally(e -> -1L).join();
+        }
+        if (args.length >= 2 && args[0].equals("restaurar")) {
+            db.restaurarRespaldo(Path.of(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : -1);
+        }
+        // importar <pacientes.csv> <medicos.csv> <citas.csv> ('-' para saltar un archivo)
+        if (args.length == 4 && args[0].equals("importar")) {
+            long inicio = System.nanoTime();
+            db.importarCsv(archivoImportacion(args[1]), archivoImportacion(args[2]), archivoImportacion(args[3]),
+                    (archivo, leidas, importadas, rechazadas) ->
+                            System.out.println(archivo + ": " + leidas + " filas (" + rechazadas + " rechazadas)"));
+            System.out.println("Importación terminada en " + (System.nanoTime() - inicio) / 1_000_000 + " ms.");
+        }
         // Aquí podrías agregar lógica para añadir datos de prueba y ver si se guardan
         // db.guardarPaciente(new Paciente("Test", "123", 30, new Historial("PTest")));
         db.desconectar();
     }
-}
\ No newline at end of file
+
+    private static Path archivoImportacion(String argumento) {
+        return argumento.equals("-") ? null : Path.of(argumento);
+    }
+}
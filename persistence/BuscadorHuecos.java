@@ -0,0 +1,98 @@
+package com.citasmedicas.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Busca los primeros huecos libres de los médicos de una especialidad a partir de un instante.
+ * Recorre los días en orden y, en cada día, lee un int de MapaOcupacion por médico: no consulta
+ * la DB ni recorre citas. Los médicos se indexan por especialidad al arrancar y al guardarlos.
+ */
+final class BuscadorHuecos {
+
+    static final int DIAS_MAXIMOS = 366; // Hasta dónde se busca como mucho
+
+    // Datos del médico que necesita la búsqueda
+    private static final class Ficha {
+        final String id;
+        final String nombre;
+        final String especialidad;
+
+        Ficha(String id, String nombre, String especialidad) {
+            this.id = id;
+            this.nombre = nombre;
+            this.especialidad = especialidad;
+        }
+    }
+
+    private final MapaOcupacion ocupacion;
+    private final Map<String, Ficha> medicos = new ConcurrentHashMap<>();
+    // Especialidad -> médicos por ID (orden estable para desempatar huecos a la misma hora)
+    private final Map<String, Map<String, Ficha>> porEspecialidad = new ConcurrentSkipListMap<>();
+
+    BuscadorHuecos(MapaOcupacion ocupacion) {
+        this.ocupacion = ocupacion;
+    }
+
+    // Alta o cambio de un médico (nombre o especialidad)
+    void registrarMedico(String id, String nombre, String especialidad) {
+        Ficha ficha = new Ficha(id, nombre, especialidad);
+        Ficha anterior = medicos.put(id, ficha);
+        if (anterior != null) {
+            Map<String, Ficha> grupo = porEspecialidad.get(anterior.especialidad);
+            if (grupo != null) grupo.remove(id);
+        }
+        porEspecialidad.computeIfAbsent(especialidad, k -> new ConcurrentSkipListMap<>()).put(id, ficha);
+    }
+
+    List<String> especialidades() {
+        List<String> lista = new ArrayList<>();
+        porEspecialidad.forEach((especialidad, grupo) -> {
+            if (!grupo.isEmpty()) lista.add(especialidad);
+        });
+        return lista;
+    }
+
+    // Los 'cantidad' primeros huecos que empiezan en 'desde' o después (segundos, ver FechasCitas),
+    // ordenados por hora y, a la misma hora, por ID de médico. especialidad null = todos los médicos.
+    List<HuecoLibre> buscar(String especialidad, long desde, int cantidad) {
+        List<HuecoLibre> huecos = new ArrayList<>(cantidad);
+        Iterable<Ficha> candidatos = especialidad != null
+                ? porEspecialidad.getOrDefault(especialidad, Map.of()).values()
+                : medicos.values();
+        List<Ficha> grupo = new ArrayList<>();
+        candidatos.forEach(grupo::add);
+        if (grupo.isEmpty() || cantidad <= 0) return huecos;
+
+        int[] libres = new int[grupo.size()];
+        long primerDia = Math.floorDiv(desde, FechasCitas.SEGUNDOS_POR_DIA);
+        for (long dia = primerDia; dia < primerDia + DIAS_MAXIMOS; dia++) {
+            // Huecos que ya empezaron antes de 'desde' (solo afecta al primer día)
+            int pasados = 0;
+            for (int h = 0; h < MapaOcupacion.HUECOS_POR_DIA && MapaOcupacion.inicioHueco(dia, h) < desde; h++) {
+                pasados |= 1 << h;
+            }
+            int algunoLibre = 0;
+            for (int i = 0; i < grupo.size(); i++) {
+                libres[i] = ~(ocupacion.ocupados(grupo.get(i).id, dia) | pasados) & MapaOcupacion.DIA_COMPLETO;
+                algunoLibre |= libres[i];
+            }
+            // Hueco a hueco, en orden, los médicos que lo tienen libre
+            while (algunoLibre != 0) {
+                int hueco = Integer.numberOfTrailingZeros(algunoLibre);
+                algunoLibre &= algunoLibre - 1;
+                for (int i = 0; i < grupo.size(); i++) {
+                    if ((libres[i] & (1 << hueco)) == 0) continue;
+                    Ficha ficha = grupo.get(i);
+                    huecos.add(new HuecoLibre(ficha.id, ficha.nombre, ficha.especialidad,
+                            FechasCitas.desdeEpoch(MapaOcupacion.inicioHueco(dia, hueco))));
+                    if (huecos.size() == cantidad) return huecos;
+                }
+            }
+        }
+        return huecos;
+    }
+}
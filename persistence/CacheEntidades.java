@@ -0,0 +1,94 @@
+package com.citasmedicas.persistence;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mapa de identidad acotado (LRU) para entidades cargadas desde la base de datos.
+ * Garantiza que, mientras una entidad siga en la caché, todas las consultas devuelvan
+ * la misma instancia. Cuenta aciertos y fallos para poder dimensionarla en producción.
+ */
+public class CacheEntidades<T> {
+
+    private final int capacidad;
+    private final Map<String, T> entradas;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+
+    public CacheEntidades(int capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad de la caché debe ser positiva: " + capacidad);
+        }
+        this.capacidad = capacidad;
+        // accessOrder = true: el orden de iteración va del menos al más recientemente usado
+        this.entradas = new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                if (size() > CacheEntidades.this.capacidad) {
+                    desalojos.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Devuelve la instancia en caché o null (cuenta acierto/fallo)
+    public synchronized T obtener(String id) {
+        T entidad = entradas.get(id);
+        if (entidad != null) {
+            aciertos.incrementAndGet();
+        } else {
+            fallos.incrementAndGet();
+        }
+        return entidad;
+    }
+
+    // Registra una instancia; si ya había otra para el mismo ID se conserva la existente
+    // para no romper la identidad, y se devuelve la que queda en la caché
+    public synchronized T registrar(String id, T entidad) {
+        T existente = entradas.get(id);
+        if (existente != null) {
+            return existente;
+        }
+        entradas.put(id, entidad);
+        return entidad;
+    }
+
+    public synchronized void invalidar(String id) {
+        entradas.remove(id);
+    }
+
+    public synchronized void limpiar() {
+        entradas.clear();
+    }
+
+    public synchronized int getTamano() {
+        return entradas.size();
+    }
+
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    public long getFallos() {
+        return fallos.get();
+    }
+
+    public long getDesalojos() {
+        return desalojos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Tamaño: " + getTamano() + "/" + capacidad + ", Aciertos: " + getAciertos() +
+                ", Fallos: " + getFallos() + ", Desalojos: " + getDesalojos();
+    }
+}
@@ -0,0 +1,90 @@
+package com.citasmedicas.persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché acotada (LRU) de PreparedStatement para UNA conexión, indexada por el texto SQL.
+ * Evita que SQLite vuelva a analizar y planificar las mismas sentencias en cada llamada.
+ * Solo la usa el hilo que tiene prestada la conexión, así que el mapa no necesita sincronización;
+ * los contadores sí son seguros para leerse desde otros hilos.
+ *
+ * Las sentencias devueltas NO deben cerrarse: pertenecen a la caché. Sí deben cerrarse sus ResultSet.
+ */
+class CacheSentencias {
+
+    private final Connection conexion;
+    private final int capacidad;
+    private final Map<String, PreparedStatement> sentencias;
+
+    // Por SQL: cuántas veces se preparó y cuántas se reutilizó desde la caché
+    private final Map<String, LongAdder> preparaciones = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> reutilizaciones = new ConcurrentHashMap<>();
+
+    CacheSentencias(Connection conexion, int capacidad) {
+        this.conexion = conexion;
+        this.capacidad = capacidad;
+        this.sentencias = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > CacheSentencias.this.capacidad) {
+                    cerrarSilenciosamente(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    PreparedStatement preparar(String sql) throws SQLException {
+        PreparedStatement pstmt = sentencias.get(sql);
+        if (pstmt != null) {
+            try {
+                pstmt.clearParameters();
+                contar(reutilizaciones, sql);
+                return pstmt;
+            } catch (SQLException e) {
+                // El driver la finaliza si falló al ejecutarse (p. ej. por un cambio de esquema):
+                // se descarta y se prepara de nuevo
+                sentencias.remove(sql);
+                cerrarSilenciosamente(pstmt);
+            }
+        }
+        pstmt = conexion.prepareStatement(sql);
+        sentencias.put(sql, pstmt);
+        contar(preparaciones, sql);
+        return pstmt;
+    }
+
+    Map<String, LongAdder> getPreparaciones() {
+        return preparaciones;
+    }
+
+    Map<String, LongAdder> getReutilizaciones() {
+        return reutilizaciones;
+    }
+
+    void cerrar() {
+        for (PreparedStatement pstmt : sentencias.values()) {
+            cerrarSilenciosamente(pstmt);
+        }
+        sentencias.clear();
+    }
+
+    private static void contar(Map<String, LongAdder> contadores, String sql) {
+        contadores.computeIfAbsent(sql, k -> new LongAdder()).increment();
+    }
+
+    private static void cerrarSilenciosamente(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar sentencia en caché: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.citasmedicas.persistence;
+
+import java.sql.SQLException;
+
+/**
+ * El médico ya tiene otra cita (no cancelada) que se solapa con el horario pedido.
+ * Es una SQLException para poder lanzarse desde las escrituras diferidas (ver ColaEscritura).
+ */
+public class CitaSolapadaException extends SQLException {
+
+    public CitaSolapadaException(String mensaje) {
+        super(mensaje);
+    }
+}
@@ -0,0 +1,167 @@
+package com.citasmedicas.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cola de escritura diferida (write-behind) con confirmación agrupada (group commit).
+ * Las escrituras se encolan en una cola acotada y un hilo de fondo las confirma en lotes,
+ * en una sola transacción, cuando se alcanza el tamaño de lote o el tiempo máximo de espera.
+ * Cada llamador recibe un CompletableFuture que se completa cuando su escritura ya está confirmada.
+ * Si la cola está llena, encolar() bloquea al llamador hasta que haya sitio (contrapresión).
+ */
+class ColaEscritura {
+
+    @FunctionalInterface
+    interface Operacion {
+        void ejecutar(Connection escritor) throws SQLException;
+    }
+
+    private static final class Tarea {
+        final Operacion operacion;
+        final CompletableFuture<Void> futuro = new CompletableFuture<>();
+
+        Tarea(Operacion operacion) {
+            this.operacion = operacion;
+        }
+    }
+
+    private final PoolConexiones pool;
+    private final BlockingQueue<Tarea> cola;
+    private final int tamanoLote;
+    private final long esperaMaximaNanos;
+    private final Thread hiloConfirmador;
+    private volatile boolean cerrada = false;
+
+    ColaEscritura(PoolConexiones pool, int capacidad, int tamanoLote, long esperaMaximaMs) {
+        if (capacidad <= 0 || tamanoLote <= 0 || esperaMaximaMs < 0) {
+            throw new IllegalArgumentException("Parámetros de la cola de escritura no válidos");
+        }
+        this.pool = pool;
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.tamanoLote = tamanoLote;
+        this.esperaMaximaNanos = TimeUnit.MILLISECONDS.toNanos(esperaMaximaMs);
+        this.hiloConfirmador = new Thread(this::bucleConfirmacion, "cola-escritura-citas");
+        this.hiloConfirmador.setDaemon(true);
+        this.hiloConfirmador.start();
+    }
+
+    // Encola una escritura; bloquea mientras la cola esté llena. Si cerrar() empezó mientras tanto,
+    // nadie garantiza que la tarea se confirme: se saca de la cola y se rechaza. Si ya no está, la
+    // tomó el hilo de fondo o el vaciado de cerrar(), y ellos completan el futuro.
+    CompletableFuture<Void> encolar(Operacion operacion) {
+        if (cerrada) {
+            return CompletableFuture.failedFuture(new IllegalStateException("La cola de escritura está cerrada"));
+        }
+        Tarea tarea = new Tarea(operacion);
+        try {
+            cola.put(tarea);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        if (cerrada && cola.remove(tarea)) {
+            tarea.futuro.completeExceptionally(new IllegalStateException("La cola de escritura está cerrada"));
+        }
+        return tarea.futuro;
+    }
+
+    int getPendientes() {
+        return cola.size();
+    }
+
+    // Deja de aceptar escrituras, confirma todas las pendientes y detiene el hilo de fondo
+    void cerrar() {
+        cerrada = true;
+        try {
+            hiloConfirmador.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Escrituras que llegaron justo durante el cierre: se rechazan en vez de quedar colgadas.
+        // Vaciar la cola también libera a los encolar() bloqueados en put(), que al ver la cola
+        // cerrada retiran y rechazan su propia tarea
+        Tarea rezagada;
+        while ((rezagada = cola.poll()) != null) {
+            rezagada.futuro.completeExceptionally(new IllegalStateException("La cola de escritura está cerrada"));
+        }
+    }
+
+    private void bucleConfirmacion() {
+        List<Tarea> lote = new ArrayList<>(tamanoLote);
+        while (true) {
+            try {
+                Tarea primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    if (cerrada && cola.isEmpty()) return;
+                    continue;
+                }
+                lote.add(primera);
+
+                // Se acumulan más escrituras hasta llenar el lote o agotar la espera máxima
+                long limite = System.nanoTime() + esperaMaximaNanos;
+                while (lote.size() < tamanoLote) {
+                    long restante = limite - System.nanoTime();
+                    Tarea siguiente = restante > 0 && !cerrada
+                            ? cola.poll(restante, TimeUnit.NANOSECONDS)
+                            : cola.poll();
+                    if (siguiente == null) break;
+                    lote.add(siguiente);
+                }
+            } catch (InterruptedException e) {
+                // Solo se interrumpe al apagar la JVM: se confirma lo que haya y se sale
+                cerrada = true;
+            }
+
+            if (!lote.isEmpty()) {
+                confirmarLote(lote);
+                lote.clear();
+            }
+        }
+    }
+
+    // Ejecuta el lote en una transacción. Cada operación va en su propio savepoint para que
+    // un fallo individual no arrastre al resto del lote.
+    private void confirmarLote(List<Tarea> lote) {
+        List<Tarea> aplicadas = new ArrayList<>(lote.size());
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            Connection conexion = escritor.getConexion();
+            conexion.setAutoCommit(false);
+            try {
+                for (Tarea tarea : lote) {
+                    Savepoint savepoint = conexion.setSavepoint();
+                    try {
+                        tarea.operacion.ejecutar(conexion);
+                        conexion.releaseSavepoint(savepoint);
+                        aplicadas.add(tarea);
+                    } catch (SQLException | RuntimeException e) {
+                        conexion.rollback(savepoint);
+                        tarea.futuro.completeExceptionally(e);
+                    }
+                }
+                conexion.commit();
+            } catch (SQLException e) {
+                conexion.rollback();
+                throw e;
+            } finally {
+                conexion.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al confirmar lote de escrituras: " + e.getMessage());
+            for (Tarea tarea : aplicadas) {
+                tarea.futuro.completeExceptionally(e);
+            }
+            return;
+        }
+        for (Tarea tarea : aplicadas) {
+            tarea.futuro.complete(null);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.citasmedicas.persistence;
+
+/**
+ * Una fila de los agregados de citas realizadas: la clave agrupada (ID de paciente o médico,
+ * o la fecha), un nombre para mostrar (null para los días) y el número de citas realizadas.
+ */
+public class ConteoRealizadas {
+    private final String clave;
+    private final String nombre;
+    private final int realizadas;
+
+    public ConteoRealizadas(String clave, String nombre, int realizadas) {
+        this.clave = clave;
+        this.nombre = nombre;
+        this.realizadas = realizadas;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public int getRealizadas() {
+        return realizadas;
+    }
+}
@@ -0,0 +1,87 @@
+package com.citasmedicas.persistence;
+
+import com.citasmedicas.model.EstadoCita;
+import java.util.List;
+
+/**
+ * Definición declarativa de un reporte de citas: por qué dimensión agrupar y qué citas incluir.
+ * BaseDatos la compila a una única consulta GROUP BY que SQLite resuelve (con los índices de
+ * cobertura) devolviendo solo las filas agregadas, nunca las citas individuales.
+ */
+public class DefinicionReporte {
+
+    // Nombre del estado a partir del código guardado en c.estado (ver EstadoCita)
+    static final String NOMBRE_ESTADO = nombreEstado();
+
+    // Expresión de agrupación, de la clave mostrada, de la etiqueta y JOIN que necesita (o null)
+    public enum Dimension {
+        TOTAL(null, null, null, null),
+        PACIENTE("c.paciente_id", "c.paciente_id", "MAX(p.nombre)", "LEFT JOIN Pacientes p ON p.id = c.paciente_id"),
+        MEDICO("c.medico_id", "c.medico_id", "MAX(m.nombre)", "LEFT JOIN Medicos m ON m.id = c.medico_id"),
+        ESPECIALIDAD("m.especialidad", "m.especialidad", "m.especialidad", "JOIN Medicos m ON m.id = c.medico_id"),
+        ESTADO("c.estado", NOMBRE_ESTADO, NOMBRE_ESTADO, null),
+        // Por número de día (recorre idx_citas_inicio en orden); la clave es la fecha AAAA-MM-DD
+        FECHA("c.inicio / 86400", "date(MIN(c.inicio), 'unixepoch')", "date(MIN(c.inicio), 'unixepoch')", null);
+
+        private final String grupo;
+        private final String clave;
+        private final String etiqueta;
+        private final String join;
+
+        Dimension(String grupo, String clave, String etiqueta, String join) {
+            this.grupo = grupo;
+            this.clave = clave;
+            this.etiqueta = etiqueta;
+            this.join = join;
+        }
+    }
+
+    private final Dimension agrupacion;
+    private final FiltroCitas filtro; // null = todas las citas
+
+    public DefinicionReporte(Dimension agrupacion, FiltroCitas filtro) {
+        this.agrupacion = agrupacion;
+        this.filtro = filtro;
+    }
+
+    public Dimension getAgrupacion() {
+        return agrupacion;
+    }
+
+    public FiltroCitas getFiltro() {
+        return filtro;
+    }
+
+    // Columnas: clave, etiqueta, total, realizadas, canceladas, programadas, pacientes distintos
+    String compilar(List<Object> parametros) {
+        StringBuilder where = new StringBuilder();
+        if (filtro != null) {
+            filtro.aplicar(where, parametros);
+        }
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(agrupacion.clave != null ? agrupacion.clave : "NULL").append(", ")
+                .append(agrupacion.etiqueta != null ? agrupacion.etiqueta : "NULL").append(", ")
+                .append("COUNT(*), ")
+                .append("SUM(c.estado = ").append(EstadoCita.REALIZADA.getCodigo()).append("), ")
+                .append("SUM(c.estado = ").append(EstadoCita.CANCELADA.getCodigo()).append("), ")
+                .append("SUM(c.estado = ").append(EstadoCita.PROGRAMADA.getCodigo()).append("), ")
+                .append("COUNT(DISTINCT c.paciente_id) ")
+                .append("FROM Citas c");
+        if (agrupacion.join != null) {
+            sql.append(' ').append(agrupacion.join);
+        }
+        sql.append(where);
+        if (agrupacion.grupo != null) {
+            sql.append(" GROUP BY ").append(agrupacion.grupo).append(" ORDER BY ").append(agrupacion.grupo);
+        }
+        return sql.toString();
+    }
+
+    private static String nombreEstado() {
+        StringBuilder sql = new StringBuilder("CASE c.estado");
+        for (EstadoCita estado : EstadoCita.values()) {
+            sql.append(" WHEN ").append(estado.getCodigo()).append(" THEN '").append(estado.getNombre()).append('\'');
+        }
+        return sql.append(" END").toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.citasmedicas.persistence;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Conversión entre la fecha/hora de una cita y la columna Citas.inicio.
+ * 'inicio' guarda la hora LOCAL de la cita como segundos desde 1970-01-01T00:00 (se usa el
+ * desfase UTC solo como convención, sin zona horaria: una cita a las 09:00 sigue a las 09:00
+ * aunque cambie el horario de verano). Así el día es inicio / 86400 y las funciones date()/strftime()
+ * de SQLite con 'unixepoch' devuelven directamente la fecha y la hora de la cita.
+ */
+final class FechasCitas {
+
+    static final long SEGUNDOS_POR_DIA = 86_400;
+
+    // Formatos que se han usado para Citas.fecha/hora en versiones anteriores (ver migración v7)
+    private static final List<DateTimeFormatter> FORMATOS_FECHA = List.of(
+            DateTimeFormatter.ofPattern("uuuu-M-d"),
+            DateTimeFormatter.ofPattern("d-M-uuuu"),
+            DateTimeFormatter.ofPattern("d/M/uuuu"));
+    private static final List<DateTimeFormatter> FORMATOS_HORA = List.of(
+            DateTimeFormatter.ofPattern("H:mm"),
+            DateTimeFormatter.ofPattern("H:mm:ss"),
+            DateTimeFormatter.ofPattern("H.mm"));
+
+    private FechasCitas() {
+    }
+
+    static long aEpoch(LocalDateTime fechaHora) {
+        return fechaHora.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    static long aEpoch(LocalDate fecha, LocalTime hora) {
+        return aEpoch(LocalDateTime.of(fecha, hora));
+    }
+
+    // Primer segundo del día (para rangos por fecha: [inicioDelDia(desde), inicioDelDia(hasta + 1)) )
+    static long inicioDelDia(LocalDate fecha) {
+        return fecha.toEpochDay() * SEGUNDOS_POR_DIA;
+    }
+
+    static LocalDateTime desdeEpoch(long inicio) {
+        return LocalDateTime.ofEpochSecond(inicio, 0, ZoneOffset.UTC);
+    }
+
+    // Texto libre antiguo -> fecha, o null si no tiene ninguno de los formatos conocidos
+    static LocalDate parsearFecha(String texto) {
+        if (texto == null) return null;
+        for (DateTimeFormatter formato : FORMATOS_FECHA) {
+            try {
+                return LocalDate.parse(texto.trim(), formato);
+            } catch (DateTimeParseException e) {
+                // Probar el siguiente formato
+            }
+        }
+        return null;
+    }
+
+    static LocalTime parsearHora(String texto) {
+        if (texto == null) return null;
+        for (DateTimeFormatter formato : FORMATOS_HORA) {
+            try {
+                return LocalTime.parse(texto.trim(), formato);
+            } catch (DateTimeParseException e) {
+                // Probar el siguiente formato
+            }
+        }
+        return null;
+    }
+}
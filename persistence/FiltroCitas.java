@@ -0,0 +1,91 @@
+package com.citasmedicas.persistence;
+
+import com.citasmedicas.model.EstadoCita;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Criterios opcionales para consultar citas de forma paginada.
+ * Un campo en null significa "sin filtrar por ese criterio".
+ */
+public class FiltroCitas {
+    private EstadoCita estado;
+    private String pacienteId;
+    private String medicoId;
+    private String especialidad; // Del médico
+    private LocalDate fechaDesde; // Inclusive
+    private LocalDate fechaHasta; // Inclusive
+
+    public EstadoCita getEstado() {
+        return estado;
+    }
+
+    public void setEstado(EstadoCita estado) {
+        this.estado = estado;
+    }
+
+    public String getPacienteId() {
+        return pacienteId;
+    }
+
+    public void setPacienteId(String pacienteId) {
+        this.pacienteId = pacienteId;
+    }
+
+    public String getMedicoId() {
+        return medicoId;
+    }
+
+    public void setMedicoId(String medicoId) {
+        this.medicoId = medicoId;
+    }
+
+    public String getEspecialidad() {
+        return especialidad;
+    }
+
+    public void setEspecialidad(String especialidad) {
+        this.especialidad = especialidad;
+    }
+
+    public LocalDate getFechaDesde() {
+        return fechaDesde;
+    }
+
+    public void setFechaDesde(LocalDate fechaDesde) {
+        this.fechaDesde = fechaDesde;
+    }
+
+    public LocalDate getFechaHasta() {
+        return fechaHasta;
+    }
+
+    public void setFechaHasta(LocalDate fechaHasta) {
+        this.fechaHasta = fechaHasta;
+    }
+
+    // Añade las condiciones (sobre la tabla Citas con alias 'c') y sus parámetros
+    void aplicar(StringBuilder where, List<Object> parametros) {
+        if (estado != null) {
+            // Código literal en el SQL (no parámetro): así SQLite puede usar el índice parcial
+            // idx_citas_programadas, que solo aplica a consultas con 'estado = 0'
+            where.append(where.length() == 0 ? " WHERE " : " AND ").append("c.estado = ").append(estado.getCodigo());
+        }
+        agregar(where, parametros, "c.paciente_id = ?", pacienteId);
+        agregar(where, parametros, "c.medico_id = ?", medicoId);
+        agregar(where, parametros, "c.medico_id IN (SELECT id FROM Medicos WHERE especialidad = ?)", especialidad);
+        // Rango de días como rango de 'inicio' (se resuelve con idx_citas_inicio)
+        if (fechaDesde != null) {
+            agregar(where, parametros, "c.inicio >= ?", FechasCitas.inicioDelDia(fechaDesde));
+        }
+        if (fechaHasta != null) {
+            agregar(where, parametros, "c.inicio < ?", FechasCitas.inicioDelDia(fechaHasta.plusDays(1)));
+        }
+    }
+
+    static void agregar(StringBuilder where, List<Object> parametros, String condicion, Object valor) {
+        if (valor == null) return;
+        where.append(where.length() == 0 ? " WHERE " : " AND ").append(condicion);
+        parametros.add(valor);
+    }
+}
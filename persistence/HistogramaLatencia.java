@@ -0,0 +1,87 @@
+package com.citasmedicas.persistence;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias en cubetas de potencias de 2 (la cubeta i cuenta los valores de
+ * [2^i, 2^(i+1)) nanosegundos). Registrar es un índice con numberOfLeadingZeros y tres sumas en
+ * LongAdder/LongAccumulator, sin bloqueos ni objetos nuevos; los percentiles son aproximados
+ * (el límite superior de la cubeta), suficiente para ver en qué orden de magnitud está cada operación.
+ */
+final class HistogramaLatencia {
+
+    private static final int CUBETAS = 64;
+
+    private final LongAdder[] cubetas = new LongAdder[CUBETAS];
+    private final LongAdder sumaNanos = new LongAdder();
+    private final LongAccumulator maximoNanos = new LongAccumulator(Math::max, 0);
+
+    HistogramaLatencia() {
+        for (int i = 0; i < CUBETAS; i++) {
+            cubetas[i] = new LongAdder();
+        }
+    }
+
+    void registrar(long nanos) {
+        if (nanos < 0) nanos = 0; // nanoTime no retrocede, pero por si acaso
+        cubetas[63 - Long.numberOfLeadingZeros(nanos | 1)].increment();
+        sumaNanos.add(nanos);
+        maximoNanos.accumulate(nanos);
+    }
+
+    long getCuenta() {
+        long cuenta = 0;
+        for (LongAdder cubeta : cubetas) {
+            cuenta += cubeta.sum();
+        }
+        return cuenta;
+    }
+
+    double getMediaNanos() {
+        long cuenta = getCuenta();
+        return cuenta == 0 ? 0 : sumaNanos.sum() / (double) cuenta;
+    }
+
+    long getMaximoNanos() {
+        return maximoNanos.get();
+    }
+
+    // Valor (nanosegundos) por debajo del cual queda el 'percentil' % de las muestras, redondeado
+    // hacia arriba al límite de su cubeta
+    long getPercentilNanos(double percentil) {
+        long[] conteos = getCubetas();
+        long cuenta = 0;
+        for (long conteo : conteos) {
+            cuenta += conteo;
+        }
+        if (cuenta == 0) return 0;
+        long objetivo = (long) Math.ceil(cuenta * percentil / 100.0);
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += conteos[i];
+            if (acumulado >= objetivo) {
+                long limite = i == CUBETAS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                return Math.min(limite, getMaximoNanos());
+            }
+        }
+        return getMaximoNanos();
+    }
+
+    // Conteo por cubeta: el elemento i corresponde a [2^i, 2^(i+1)) ns
+    long[] getCubetas() {
+        long[] conteos = new long[CUBETAS];
+        for (int i = 0; i < CUBETAS; i++) {
+            conteos[i] = cubetas[i].sum();
+        }
+        return conteos;
+    }
+
+    void reiniciar() {
+        for (LongAdder cubeta : cubetas) {
+            cubeta.reset();
+        }
+        sumaNanos.reset();
+        maximoNanos.reset();
+    }
+}
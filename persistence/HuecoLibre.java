@@ -0,0 +1,36 @@
+package com.citasmedicas.persistence;
+
+import java.time.LocalDateTime;
+
+/**
+ * Un hueco libre de la agenda de un médico (ver BaseDatos.buscarHuecosLibres).
+ */
+public class HuecoLibre {
+    private final String medicoId;
+    private final String medicoNombre;
+    private final String especialidad;
+    private final LocalDateTime inicio;
+
+    public HuecoLibre(String medicoId, String medicoNombre, String especialidad, LocalDateTime inicio) {
+        this.medicoId = medicoId;
+        this.medicoNombre = medicoNombre;
+        this.especialidad = especialidad;
+        this.inicio = inicio;
+    }
+
+    public String getMedicoId() {
+        return medicoId;
+    }
+
+    public String getMedicoNombre() {
+        return medicoNombre;
+    }
+
+    public String getEspecialidad() {
+        return especialidad;
+    }
+
+    public LocalDateTime getInicio() {
+        return inicio;
+    }
+}
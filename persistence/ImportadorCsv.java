@@ -0,0 +1,339 @@
+package com.citasmedicas.persistence;
+
+import com.citasmedicas.model.Cita;
+import com.citasmedicas.model.EstadoCita;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Importación masiva de Pacientes, Medicos y Citas desde CSV (con cabecera, UTF-8).
+ *
+ * - Lee cada archivo en streaming con LectorCsv: la memoria no depende del número de filas.
+ * - Inserta en transacciones de TAMANO_LOTE filas, tomando el escritor solo durante cada lote
+ *   (las escrituras de la aplicación se intercalan entre lotes) y sin mensajes por fila.
+ * - Los IDs de cada lote se reservan en su misma transacción (AsignadorIds.primeroLibre y
+ *   avanzarEnTransaccion), solo los de las filas importadas. Los IDs del archivo se tratan como
+ *   claves externas: se guarda su equivalencia con el ID asignado en una tabla temporal para
+ *   resolver las referencias de las citas.
+ * - Valida cada fila (campos obligatorios, DNI único, paciente y médico existentes, fecha y hora,
+ *   citas que se solapan en la agenda del médico) y escribe las rechazadas, con la línea y el
+ *   motivo, en '<archivo>.rechazados.csv'.
+ * - Si un lote falla se deshace y la importación del archivo termina: el resultado lleva el error
+ *   y cuenta como importadas solo las filas de los lotes confirmados.
+ */
+final class ImportadorCsv {
+
+    static final int TAMANO_LOTE = 10_000;
+
+    // Valida e inserta una fila con el ID ya asignado; devuelve null si la importó o el motivo del rechazo
+    @FunctionalInterface
+    private interface ProcesadorFila {
+        String procesar(CacheSentencias sentencias, Fila fila, String id) throws SQLException;
+    }
+
+    // Valores de una fila accesibles por nombre de columna
+    private static final class Fila {
+        final Map<String, Integer> columnas;
+        String[] valores;
+
+        Fila(Map<String, Integer> columnas) {
+            this.columnas = columnas;
+        }
+
+        // Valor recortado, o "" si la columna no existe o la fila es más corta
+        String get(String columna) {
+            Integer i = columnas.get(columna);
+            return i != null && i < valores.length ? valores[i].trim() : "";
+        }
+    }
+
+    private static final String SQL_MAPA = "CREATE TEMP TABLE IF NOT EXISTS MapaImportacion (" +
+            "tipo TEXT NOT NULL, externo TEXT NOT NULL, id TEXT NOT NULL, PRIMARY KEY (tipo, externo)) WITHOUT ROWID";
+    private static final String SQL_BUSCAR_MAPA = "SELECT id FROM temp.MapaImportacion WHERE tipo = ? AND externo = ?";
+    private static final String SQL_GUARDAR_MAPA = "INSERT INTO temp.MapaImportacion (tipo, externo, id) VALUES (?, ?, ?)";
+
+    private final PoolConexiones pool;
+    private final ProgresoImportacion progreso;
+
+    ImportadorCsv(PoolConexiones pool, ProgresoImportacion progreso) {
+        this.pool = pool;
+        this.progreso = progreso;
+    }
+
+    // Empieza una importación nueva: se olvidan las equivalencias de IDs de importaciones anteriores
+    void iniciar() throws SQLException {
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+            pool.sentencias(escritor.getConexion()).preparar(SQL_MAPA).execute();
+            try (PreparedStatement limpiar = escritor.getConexion().prepareStatement("DELETE FROM temp.MapaImportacion")) {
+                limpiar.executeUpdate();
+            }
+        }
+    }
+
+    // Columnas: id, nombre, dni, edad, antecedentes
+    ResultadoImportacion importarPacientes(Path archivo, AsignadorIds ids) {
+        return importar(archivo, new String[]{"nombre", "dni"}, ids, "P", (sentencias, fila, id) -> {
+            String externo = fila.get("id");
+            if (!externo.isEmpty() && buscarMapa(sentencias, "P", externo) != null) {
+                return "ID de paciente repetido en el archivo";
+            }
+            String nombre = fila.get("nombre");
+            String dni = fila.get("dni");
+            if (nombre.isEmpty() || dni.isEmpty()) return "Nombre y DNI son obligatorios";
+            int edad = 0;
+            if (!fila.get("edad").isEmpty()) {
+                try {
+                    edad = Integer.parseInt(fila.get("edad"));
+                } catch (NumberFormatException e) {
+                    return "Edad no válida: " + fila.get("edad");
+                }
+                if (edad < 0) return "Edad no válida: " + edad;
+            }
+
+            // El índice único de dni detecta tanto los duplicados de la DB como los del propio archivo
+            PreparedStatement pstmt = sentencias.preparar(
+                    "INSERT INTO Pacientes (id, nombre, dni, edad, antecedentes) VALUES (?, ?, ?, ?, ?) ON CONFLICT(dni) DO NOTHING");
+            pstmt.setString(1, id);
+            pstmt.setString(2, nombre);
+            pstmt.setString(3, dni);
+            pstmt.setInt(4, edad);
+            pstmt.setString(5, fila.get("antecedentes"));
+            if (pstmt.executeUpdate() == 0) return "DNI duplicado: " + dni;
+            PreparedStatement indice = sentencias.preparar(
+                    "INSERT INTO BusquedaPacientes (rowid, nombre, dni, historial) VALUES (last_insert_rowid(), ?, ?, '')");
+            indice.setString(1, nombre);
+            indice.setString(2, dni);
+            indice.executeUpdate();
+            guardarMapa(sentencias, "P", externo, id);
+            return null;
+        });
+    }
+
+    // Columnas: id, nombre, especialidad
+    ResultadoImportacion importarMedicos(Path archivo, AsignadorIds ids) {
+        return importar(archivo, new String[]{"nombre", "especialidad"}, ids, "M", (sentencias, fila, id) -> {
+            String externo = fila.get("id");
+            if (!externo.isEmpty() && buscarMapa(sentencias, "M", externo) != null) {
+                return "ID de médico repetido en el archivo";
+            }
+            String nombre = fila.get("nombre");
+            String especialidad = fila.get("especialidad");
+            if (nombre.isEmpty() || especialidad.isEmpty()) return "Nombre y especialidad son obligatorios";
+
+            PreparedStatement pstmt = sentencias.preparar("INSERT INTO Medicos (id, nombre, especialidad) VALUES (?, ?, ?)");
+            pstmt.setString(1, id);
+            pstmt.setString(2, nombre);
+            pstmt.setString(3, especialidad);
+            pstmt.executeUpdate();
+            guardarMapa(sentencias, "M", externo, id);
+            return null;
+        });
+    }
+
+    // Columnas: id, paciente_id, medico_id, fecha, hora, motivo, estado, duracion (minutos, opcional).
+    // paciente_id y medico_id pueden ser IDs de los archivos importados o IDs ya existentes en la DB.
+    // Se rechaza una cita no cancelada que se solapa con otra del mismo médico, ya guardada o de una
+    // fila anterior del archivo (la agenda en memoria se recarga al terminar la importación).
+    ResultadoImportacion importarCitas(Path archivo, AsignadorIds ids) {
+        return importar(archivo, new String[]{"paciente_id", "medico_id", "fecha", "hora"}, ids, "C", (sentencias, fila, id) -> {
+            String pacienteId = resolver(sentencias, "P", "Pacientes", fila.get("paciente_id"));
+            if (pacienteId == null) return "Paciente inexistente: " + fila.get("paciente_id");
+            String medicoId = resolver(sentencias, "M", "Medicos", fila.get("medico_id"));
+            if (medicoId == null) return "Médico inexistente: " + fila.get("medico_id");
+
+            LocalDate fecha = FechasCitas.parsearFecha(fila.get("fecha"));
+            if (fecha == null) return "Fecha no válida: " + fila.get("fecha");
+            LocalTime hora = FechasCitas.parsearHora(fila.get("hora"));
+            if (hora == null) return "Hora no válida: " + fila.get("hora");
+            EstadoCita estado = parsearEstado(fila.get("estado"));
+            if (estado == null) return "Estado no válido: " + fila.get("estado");
+            int duracion = Cita.DURACION_POR_DEFECTO;
+            if (!fila.get("duracion").isEmpty()) {
+                try {
+                    duracion = Integer.parseInt(fila.get("duracion"));
+                } catch (NumberFormatException e) {
+                    return "Duración no válida: " + fila.get("duracion");
+                }
+                if (duracion <= 0 || duracion > Cita.DURACION_MAXIMA) return "Duración no válida: " + duracion;
+            }
+            long inicio = FechasCitas.aEpoch(fecha, hora);
+            if (estado != EstadoCita.CANCELADA) {
+                String solapada = buscarSolape(sentencias, medicoId, inicio, inicio + duracion * 60L);
+                if (solapada != null) return "El médico ya tiene la cita " + solapada + " en ese horario";
+            }
+
+            PreparedStatement pstmt = sentencias.preparar(
+                    "INSERT INTO Citas (id, paciente_id, medico_id, inicio, motivo, estado, duracion) VALUES (?, ?, ?, ?, ?, ?, ?)");
+            pstmt.setString(1, id);
+            pstmt.setString(2, pacienteId);
+            pstmt.setString(3, medicoId);
+            pstmt.setLong(4, inicio);
+            pstmt.setString(5, fila.get("motivo"));
+            pstmt.setInt(6, estado.getCodigo());
+            pstmt.setInt(7, duracion);
+            pstmt.executeUpdate();
+            return null;
+        });
+    }
+
+    private ResultadoImportacion importar(Path archivo, String[] obligatorias, AsignadorIds ids, String prefijo,
+                                          ProcesadorFila procesador) {
+        String nombreArchivo = archivo.getFileName().toString();
+        long leidas = 0, importadas = 0, rechazadas = 0;
+        long confirmadas = 0; // Importadas en lotes ya confirmados
+        Path archivoRechazos = archivo.resolveSibling(nombreArchivo + ".rechazados.csv");
+        Writer rechazos = null; // Se crea con el primer rechazo
+
+        try {
+            Files.deleteIfExists(archivoRechazos); // De una importación anterior
+            try (LectorCsv lector = new LectorCsv(Files.newBufferedReader(archivo, StandardCharsets.UTF_8))) {
+                String[] cabecera = lector.siguiente();
+                if (cabecera == null) {
+                    return new ResultadoImportacion(nombreArchivo, 0, 0, 0, null);
+                }
+                Map<String, Integer> columnas = new HashMap<>();
+                for (int i = 0; i < cabecera.length; i++) {
+                    columnas.put(cabecera[i].trim().toLowerCase(Locale.ROOT), i);
+                }
+                for (String columna : obligatorias) {
+                    if (!columnas.containsKey(columna)) {
+                        throw new IOException("Falta la columna '" + columna + "' en " + nombreArchivo);
+                    }
+                }
+
+                Fila fila = new Fila(columnas);
+                String[] valores = lector.siguiente();
+                while (valores != null) {
+                    int usados = 0;
+                    try (PoolConexiones.Prestamo escritor = pool.tomarEscritor()) {
+                        Connection conexion = escritor.getConexion();
+                        CacheSentencias sentencias = pool.sentencias(conexion);
+                        conexion.setAutoCommit(false);
+                        try {
+                            long primerId = ids.primeroLibre(conexion);
+                            while (valores != null && usados < TAMANO_LOTE) {
+                                leidas++;
+                                fila.valores = valores;
+                                String motivo = procesador.procesar(sentencias, fila, prefijo + (primerId + usados));
+                                if (motivo == null) {
+                                    usados++;
+                                    importadas++;
+                                } else {
+                                    if (rechazos == null) {
+                                        rechazos = Files.newBufferedWriter(archivoRechazos, StandardCharsets.UTF_8);
+                                        escribirCsv(rechazos, cabecera, "linea", "motivo");
+                                    }
+                                    escribirCsv(rechazos, valores, Long.toString(lector.getLineaRegistro()), motivo);
+                                    rechazadas++;
+                                }
+                                valores = lector.siguiente();
+                            }
+                            ids.avanzarEnTransaccion(conexion, usados); // Solo los IDs usados
+                            conexion.commit();
+                            confirmadas = importadas;
+                        } catch (SQLException | IOException | RuntimeException e) {
+                            conexion.rollback();
+                            throw e;
+                        } finally {
+                            conexion.setAutoCommit(true);
+                        }
+                    }
+                    if (progreso != null) {
+                        progreso.avance(nombreArchivo, leidas, importadas, rechazadas);
+                    }
+                }
+            } finally {
+                if (rechazos != null) rechazos.close();
+            }
+        } catch (IOException | SQLException e) {
+            return new ResultadoImportacion(nombreArchivo, leidas, confirmadas, rechazadas,
+                    rechazadas > 0 ? archivoRechazos : null, e.getMessage());
+        }
+        return new ResultadoImportacion(nombreArchivo, leidas, importadas, rechazadas, rechazadas > 0 ? archivoRechazos : null);
+    }
+
+    private static String buscarMapa(CacheSentencias sentencias, String tipo, String externo) throws SQLException {
+        PreparedStatement pstmt = sentencias.preparar(SQL_BUSCAR_MAPA);
+        pstmt.setString(1, tipo);
+        pstmt.setString(2, externo);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private static void guardarMapa(CacheSentencias sentencias, String tipo, String externo, String id) throws SQLException {
+        if (externo.isEmpty()) return;
+        PreparedStatement pstmt = sentencias.preparar(SQL_GUARDAR_MAPA);
+        pstmt.setString(1, tipo);
+        pstmt.setString(2, externo);
+        pstmt.setString(3, id);
+        pstmt.executeUpdate();
+    }
+
+    // Primera cita no cancelada del médico que se solapa con [inicio, fin), o null. Solo pueden
+    // solaparse las que empiezan en [inicio - Cita.DURACION_MAXIMA, fin): así la consulta recorre
+    // un rango acotado de idx_citas_medico_estado en lugar de toda la agenda del médico
+    private static String buscarSolape(CacheSentencias sentencias, String medicoId, long inicio, long fin) throws SQLException {
+        PreparedStatement pstmt = sentencias.preparar(
+                "SELECT id FROM Citas WHERE medico_id = ? AND estado IN (" + EstadoCita.PROGRAMADA.getCodigo() + ", " +
+                        EstadoCita.REALIZADA.getCodigo() + ") AND inicio > ? AND inicio < ? AND inicio + duracion * 60 > ? LIMIT 1");
+        pstmt.setString(1, medicoId);
+        pstmt.setLong(2, inicio - Cita.DURACION_MAXIMA * 60L);
+        pstmt.setLong(3, fin);
+        pstmt.setLong(4, inicio);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    // ID asignado en esta importación o, si no viene de los archivos, un ID ya existente en la tabla
+    private static String resolver(CacheSentencias sentencias, String tipo, String tabla, String externo) throws SQLException {
+        if (externo.isEmpty()) return null;
+        String id = buscarMapa(sentencias, tipo, externo);
+        if (id != null) return id;
+        PreparedStatement pstmt = sentencias.preparar("SELECT id FROM " + tabla + " WHERE id = ?");
+        pstmt.setString(1, externo);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    // Por nombre (sin distinguir mayúsculas) o por código; vacío = Programada
+    private static EstadoCita parsearEstado(String texto) {
+        if (texto.isEmpty()) return EstadoCita.PROGRAMADA;
+        for (EstadoCita estado : EstadoCita.values()) {
+            if (estado.getNombre().equalsIgnoreCase(texto) || Integer.toString(estado.getCodigo()).equals(texto)) {
+                return estado;
+            }
+        }
+        return null;
+    }
+
+    // Una línea CSV: los valores de la fila original seguidos de los extra
+    private static void escribirCsv(Writer destino, String[] valores, String... extra) throws IOException {
+        for (int i = 0; i < valores.length + extra.length; i++) {
+            if (i > 0) destino.write(',');
+            String valor = i < valores.length ? valores[i] : extra[i - valores.length];
+            if (valor.indexOf(',') >= 0 || valor.indexOf('"') >= 0 || valor.indexOf('\n') >= 0 || valor.indexOf('\r') >= 0) {
+                destino.write('"');
+                destino.write(valor.replace("\"", "\"\""));
+                destino.write('"');
+            } else {
+                destino.write(valor);
+            }
+        }
+        destino.write('\n');
+    }
+}
@@ -0,0 +1,175 @@
+package com.citasmedicas.persistence;
+
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice en memoria de los horarios ocupados de cada médico, para rechazar citas solapadas
+ * sin consultar la tabla Citas. Por médico guarda un árbol ordenado por inicio de las citas no
+ * canceladas, así comprobar un hueco es O(log n).
+ *
+ * - Solo contiene las citas que terminan a partir del 'horizonte' (el inicio del día en que se
+ *   cargó): las anteriores no se pueden solapar con una cita nueva salvo que se programe en el
+ *   pasado, y ese caso lo comprueba BaseDatos con SQL dentro de la transacción de escritura.
+ * - reservar() comprueba y ocupa el hueco de forma atómica (bloqueo por médico), ANTES de escribir
+ *   en la DB; si la escritura falla, BaseDatos deshace la reserva con restaurar().
+ * - Cada cambio recalcula, con el mismo bloqueo, los bits de los días afectados en MapaOcupacion.
+ */
+final class IndiceAgenda {
+
+    // Hueco ocupado por una cita. Se compara por (inicio, citaId) para admitir varias citas con el
+    // mismo inicio (datos antiguos solapados) sin que se pisen en el árbol.
+    static final class Reserva implements Comparable<Reserva> {
+        final String citaId;
+        final String medicoId;
+        final long inicio; // Segundos (ver FechasCitas)
+        final long fin;    // Exclusivo
+
+        Reserva(String citaId, String medicoId, long inicio, long fin) {
+            this.citaId = citaId;
+            this.medicoId = medicoId;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        @Override
+        public int compareTo(Reserva otra) {
+            int c = Long.compare(inicio, otra.inicio);
+            return c != 0 ? c : citaId.compareTo(otra.citaId);
+        }
+    }
+
+    // Citas de un médico ordenadas por inicio. Se sincroniza sobre la propia agenda.
+    private static final class Agenda {
+        final NavigableSet<Reserva> reservas = new TreeSet<>();
+        long duracionMaxima; // Segundos; acota cuántas citas anteriores pueden llegar a 'inicio'
+    }
+
+    private final Map<String, Agenda> agendas = new ConcurrentHashMap<>();
+    private final Map<String, Reserva> porCita = new ConcurrentHashMap<>();
+    private final long horizonte;
+    private final MapaOcupacion ocupacion;
+
+    IndiceAgenda(long horizonte, MapaOcupacion ocupacion) {
+        this.horizonte = horizonte;
+        this.ocupacion = ocupacion;
+    }
+
+    long getHorizonte() {
+        return horizonte;
+    }
+
+    int getTamano() {
+        return porCita.size();
+    }
+
+    // Carga inicial desde la DB (sin comprobar solapamientos: se aceptan los datos existentes)
+    void cargar(String citaId, String medicoId, long inicio, long fin) {
+        Reserva reserva = new Reserva(citaId, medicoId, inicio, fin);
+        insertar(reserva);
+        porCita.put(citaId, reserva);
+    }
+
+    // Ocupa [inicio, fin) para la cita si el médico lo tiene libre (sin contar la propia cita, que
+    // puede estar moviéndose). Devuelve la reserva que tenía antes la cita (o null si no tenía),
+    // o lanza CitaSolapadaException si el hueco está ocupado. Una cita que termina antes del
+    // horizonte no se guarda en el índice (y deja libre el hueco que tuviera).
+    Reserva reservar(String citaId, String medicoId, long inicio, long fin) throws CitaSolapadaException {
+        Reserva nueva = null;
+        if (fin > horizonte) {
+            nueva = new Reserva(citaId, medicoId, inicio, fin);
+            Agenda agenda = agendas.computeIfAbsent(medicoId, k -> new Agenda());
+            synchronized (agenda) {
+                Reserva ocupada = buscarSolape(agenda, citaId, inicio, fin);
+                if (ocupada != null) {
+                    throw new CitaSolapadaException("El médico " + medicoId + " ya tiene la cita " + ocupada.citaId
+                            + " en ese horario (" + FechasCitas.desdeEpoch(ocupada.inicio) + ").");
+                }
+                insertar(agenda, nueva);
+                actualizarOcupacion(agenda, nueva);
+            }
+        }
+        Reserva anterior = nueva != null ? porCita.put(citaId, nueva) : porCita.remove(citaId);
+        if (anterior != null) {
+            quitar(anterior);
+        }
+        return anterior;
+    }
+
+    // Deshace una reserva cuya escritura falló, devolviendo a la cita el hueco que tenía antes
+    void restaurar(String citaId, Reserva anterior) {
+        Reserva actual = anterior != null ? porCita.put(citaId, anterior) : porCita.remove(citaId);
+        if (actual != null) {
+            quitar(actual);
+        }
+        if (anterior != null) {
+            insertar(anterior);
+        }
+    }
+
+    // La cita deja de ocupar su hueco (p. ej. al cancelarse). Devuelve la reserva quitada o null.
+    Reserva liberar(String citaId) {
+        Reserva reserva = porCita.remove(citaId);
+        if (reserva != null) {
+            quitar(reserva);
+        }
+        return reserva;
+    }
+
+    private static Reserva buscarSolape(Agenda agenda, String citaId, long inicio, long fin) {
+        // Solo pueden solaparse las citas que empiezan en [inicio - duracionMaxima, fin)
+        Reserva desde = new Reserva("", null, inicio - agenda.duracionMaxima, 0);
+        Reserva hasta = new Reserva("", null, fin, 0);
+        for (Reserva r : agenda.reservas.subSet(desde, true, hasta, false)) {
+            if (r.fin > inicio && !r.citaId.equals(citaId)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private void insertar(Reserva reserva) {
+        Agenda agenda = agendas.computeIfAbsent(reserva.medicoId, k -> new Agenda());
+        synchronized (agenda) {
+            insertar(agenda, reserva);
+            actualizarOcupacion(agenda, reserva);
+        }
+    }
+
+    private static void insertar(Agenda agenda, Reserva reserva) {
+        agenda.reservas.remove(reserva); // Misma cita en el mismo inicio: se sustituye la instancia
+        agenda.reservas.add(reserva);
+        agenda.duracionMaxima = Math.max(agenda.duracionMaxima, reserva.fin - reserva.inicio);
+    }
+
+    private void quitar(Reserva reserva) {
+        Agenda agenda = agendas.get(reserva.medicoId);
+        if (agenda == null) return;
+        synchronized (agenda) {
+            // remove() compara por (inicio, citaId): solo se quita si sigue siendo esta reserva
+            Reserva guardada = agenda.reservas.floor(reserva);
+            if (guardada == reserva) {
+                agenda.reservas.remove(reserva);
+                actualizarOcupacion(agenda, reserva);
+            }
+        }
+    }
+
+    // Recalcula los bits de los días que toca la reserva a partir de las citas que quedan ese día
+    private void actualizarOcupacion(Agenda agenda, Reserva reserva) {
+        long primerDia = Math.floorDiv(reserva.inicio, FechasCitas.SEGUNDOS_POR_DIA);
+        long ultimoDia = Math.floorDiv(reserva.fin - 1, FechasCitas.SEGUNDOS_POR_DIA);
+        for (long dia = primerDia; dia <= ultimoDia; dia++) {
+            long inicioDia = dia * FechasCitas.SEGUNDOS_POR_DIA;
+            Reserva desde = new Reserva("", null, inicioDia - agenda.duracionMaxima, 0);
+            Reserva hasta = new Reserva("", null, inicioDia + FechasCitas.SEGUNDOS_POR_DIA, 0);
+            int bits = 0;
+            for (Reserva r : agenda.reservas.subSet(desde, true, hasta, false)) {
+                bits |= MapaOcupacion.mascara(dia, r.inicio, r.fin);
+            }
+            ocupacion.fijar(reserva.medicoId, dia, bits);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.citasmedicas.persistence;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector CSV (RFC 4180) en streaming: devuelve un registro cada vez y solo guarda en memoria el
+ * registro actual, así que el consumo no depende del tamaño del archivo.
+ * Admite campos entre comillas con comas, comillas dobladas ("") y saltos de línea dentro.
+ */
+final class LectorCsv implements AutoCloseable {
+
+    private final Reader entrada;
+    private final char[] buffer = new char[64 * 1024];
+    private int posicion;
+    private int limite;
+    private final StringBuilder campo = new StringBuilder();
+    private long linea = 1;       // Línea física actual (para los mensajes de error)
+    private long lineaRegistro;   // Línea en la que empieza el último registro leído
+
+    LectorCsv(Reader entrada) {
+        this.entrada = entrada;
+    }
+
+    long getLineaRegistro() {
+        return lineaRegistro;
+    }
+
+    // Siguiente registro, o null al final del archivo. Las líneas vacías se saltan.
+    String[] siguiente() throws IOException {
+        List<String> campos = new ArrayList<>();
+        campo.setLength(0);
+        boolean entreComillas = false;
+        boolean hayDatos = false;
+        lineaRegistro = linea;
+        while (true) {
+            int c = leer();
+            if (c < 0) {
+                if (entreComillas) {
+                    throw new IOException("Comillas sin cerrar en el registro que empieza en la línea " + lineaRegistro);
+                }
+                if (!hayDatos) return null;
+                campos.add(campo.toString());
+                return campos.toArray(new String[0]);
+            }
+            if (entreComillas) {
+                if (c == '"') {
+                    if (mirar() == '"') {
+                        leer();
+                        campo.append('"');
+                    } else {
+                        entreComillas = false;
+                    }
+                } else {
+                    if (c == '\n') linea++;
+                    campo.append((char) c);
+                }
+                continue;
+            }
+            if (c == '"') {
+                entreComillas = true;
+                hayDatos = true;
+            } else if (c == ',') {
+                campos.add(campo.toString());
+                campo.setLength(0);
+                hayDatos = true;
+            } else if (c == '\r' || c == '\n') {
+                if (c == '\r' && mirar() == '\n') leer();
+                linea++;
+                if (!hayDatos) {
+                    lineaRegistro = linea; // Línea vacía
+                    continue;
+                }
+                campos.add(campo.toString());
+                return campos.toArray(new String[0]);
+            } else {
+                campo.append((char) c);
+                hayDatos = true;
+            }
+        }
+    }
+
+    private int leer() throws IOException {
+        if (posicion == limite && !llenar()) return -1;
+        return buffer[posicion++];
+    }
+
+    private int mirar() throws IOException {
+        if (posicion == limite && !llenar()) return -1;
+        return buffer[posicion];
+    }
+
+    private boolean llenar() throws IOException {
+        int leidos = entrada.read(buffer, 0, buffer.length);
+        if (leidos <= 0) return false;
+        posicion = 0;
+        limite = leidos;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        entrada.close();
+    }
+}
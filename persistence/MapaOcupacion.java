@@ -0,0 +1,57 @@
+package com.citasmedicas.persistence;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ocupación de la agenda de cada médico como un mapa de bits por día: el bit i indica si el hueco
+ * i del horario de atención (de HORA_APERTURA a HORA_CIERRE, en huecos de DURACION_HUECO) se
+ * solapa con alguna cita no cancelada. Un día entero cabe en un int, así que buscar huecos
+ * libres es leer un entero por médico y día.
+ *
+ * La mantiene IndiceAgenda (bajo el bloqueo de la agenda del médico) cada vez que reserva o libera
+ * un hueco; las lecturas no bloquean.
+ */
+final class MapaOcupacion {
+
+    static final long HORA_APERTURA = 8 * 3600;  // 08:00, en segundos desde el inicio del día
+    static final long HORA_CIERRE = 18 * 3600;   // 18:00
+    static final long DURACION_HUECO = 30 * 60;  // 30 minutos
+    static final int HUECOS_POR_DIA = (int) ((HORA_CIERRE - HORA_APERTURA) / DURACION_HUECO);
+    static final int DIA_COMPLETO = (1 << HUECOS_POR_DIA) - 1;
+
+    // Médico -> (número de día -> bits de huecos ocupados). Los días sin citas no se guardan.
+    private final Map<String, Map<Long, Integer>> porMedico = new ConcurrentHashMap<>();
+
+    // Bits de los huecos del día 'dia' que se solapan con [inicio, fin)
+    static int mascara(long dia, long inicio, long fin) {
+        long apertura = dia * FechasCitas.SEGUNDOS_POR_DIA + HORA_APERTURA;
+        long desde = Math.max(inicio, apertura) - apertura;
+        long hasta = Math.min(fin, apertura + HORA_CIERRE - HORA_APERTURA) - apertura;
+        if (hasta <= desde) return 0;
+        int primero = (int) (desde / DURACION_HUECO);
+        int ultimo = (int) ((hasta - 1) / DURACION_HUECO); // Incluido
+        return (DIA_COMPLETO >>> (HUECOS_POR_DIA - 1 - ultimo + primero)) << primero;
+    }
+
+    // Inicio (en segundos, ver FechasCitas) del hueco i del día
+    static long inicioHueco(long dia, int hueco) {
+        return dia * FechasCitas.SEGUNDOS_POR_DIA + HORA_APERTURA + hueco * DURACION_HUECO;
+    }
+
+    int ocupados(String medicoId, long dia) {
+        Map<Long, Integer> dias = porMedico.get(medicoId);
+        if (dias == null) return 0;
+        Integer bits = dias.get(dia);
+        return bits != null ? bits : 0;
+    }
+
+    void fijar(String medicoId, long dia, int bits) {
+        if (bits == 0) {
+            Map<Long, Integer> dias = porMedico.get(medicoId);
+            if (dias != null) dias.remove(dia);
+        } else {
+            porMedico.computeIfAbsent(medicoId, k -> new ConcurrentHashMap<>()).put(dia, bits);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.citasmedicas.persistence;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Métricas de una BaseDatos: por operación, llamadas, errores, filas leídas y escritas y un
+ * histograma de latencias; además la espera por las conexiones del pool y las estadísticas de
+ * las cachés. Se publican como MXBeans al conectar (ver registrarJmx) y se leen con jconsole,
+ * VisualVM o cualquier cliente JMX.
+ *
+ * En la ruta caliente cada operación hace inicio() al empezar y registrar()/registrarError() al
+ * terminar: dos lecturas del reloj y unas pocas sumas en LongAdder, sin bloqueos ni objetos
+ * nuevos. Deshabilitadas (propiedad citasmedicas.metricas=false o el atributo Habilitadas por
+ * JMX), inicio() devuelve 0 sin leer el reloj y registrar() no hace nada.
+ */
+public final class MetricasBaseDatos implements MetricasBaseDatosMXBean {
+
+    public enum Operacion {
+        GUARDAR_PACIENTE("guardarPaciente"),
+        OBTENER_PACIENTE("obtenerPacientePorId"),      // Solo los fallos de caché; los aciertos los cuenta la caché
+        OBTENER_TODOS_PACIENTES("obtenerTodosPacientes"),
+        BUSCAR_PACIENTES("buscarPacientes"),
+        CARGAR_HISTORIAL("cargarHistorialEntradas"),
+        GUARDAR_MEDICO("guardarMedico"),
+        OBTENER_MEDICO("obtenerMedicoPorId"),          // Solo los fallos de caché
+        OBTENER_TODOS_MEDICOS("obtenerTodosMedicos"),
+        GUARDAR_CITA("guardarCita"),
+        ACTUALIZAR_ESTADO_CITA("actualizarEstadoCita"),
+        OBTENER_CITA("obtenerCitaPorId"),
+        OBTENER_TODAS_CITAS("obtenerTodasCitas"),
+        OBTENER_CITAS_RANGO("obtenerCitasEntre"),      // También obtenerCitasPorFecha y obtenerCitasPendientesEntre
+        OBTENER_PAGINA_CITAS("obtenerPaginaCitas"),
+        CONTAR_CITAS("contarCitas"),                   // También contarCitasPendientesEntre
+        RECORRER_CITAS("recorrerCitas"),
+        EJECUTAR_REPORTE("ejecutarReporte"),
+        LEER_AGREGADOS("leerAgregados");               // Citas realizadas por paciente, médico o día y sus totales
+
+        private final String nombre;
+
+        Operacion(String nombre) {
+            this.nombre = nombre;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+    }
+
+    // Contadores de una operación; también es su MXBean
+    private static final class EstadisticasOperacion implements MetricasOperacionMXBean {
+        private final Operacion operacion;
+        private final HistogramaLatencia latencias = new HistogramaLatencia();
+        private final LongAdder errores = new LongAdder();
+        private final LongAdder filasLeidas = new LongAdder();
+        private final LongAdder filasEscritas = new LongAdder();
+
+        EstadisticasOperacion(Operacion operacion) {
+            this.operacion = operacion;
+        }
+
+        @Override
+        public String getOperacion() {
+            return operacion.getNombre();
+        }
+
+        @Override
+        public long getLlamadas() {
+            return latencias.getCuenta();
+        }
+
+        @Override
+        public long getErrores() {
+            return errores.sum();
+        }
+
+        @Override
+        public long getFilasLeidas() {
+            return filasLeidas.sum();
+        }
+
+        @Override
+        public long getFilasEscritas() {
+            return filasEscritas.sum();
+        }
+
+        @Override
+        public double getMediaMicros() {
+            return latencias.getMediaNanos() / 1_000.0;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return latencias.getPercentilNanos(50) / 1_000.0;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return latencias.getPercentilNanos(99) / 1_000.0;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return latencias.getPercentilNanos(99.9) / 1_000.0;
+        }
+
+        @Override
+        public double getMaximoMicros() {
+            return latencias.getMaximoNanos() / 1_000.0;
+        }
+
+        @Override
+        public long[] getHistogramaNanos() {
+            return latencias.getCubetas();
+        }
+
+        @Override
+        public void reiniciar() {
+            latencias.reiniciar();
+            errores.reset();
+            filasLeidas.reset();
+            filasEscritas.reset();
+        }
+    }
+
+    private final BaseDatos baseDatos; // Para las estadísticas de cachés y sentencias
+    private final EstadisticasOperacion[] operaciones;
+    private final HistogramaLatencia esperaLector = new HistogramaLatencia();
+    private final HistogramaLatencia esperaEscritor = new HistogramaLatencia();
+    private final List<ObjectName> registrados = new ArrayList<>();
+    private volatile boolean habilitadas = !"false".equalsIgnoreCase(System.getProperty("citasmedicas.metricas"));
+
+    MetricasBaseDatos(BaseDatos baseDatos) {
+        this.baseDatos = baseDatos;
+        Operacion[] tipos = Operacion.values();
+        operaciones = new EstadisticasOperacion[tipos.length];
+        for (Operacion tipo : tipos) {
+            operaciones[tipo.ordinal()] = new EstadisticasOperacion(tipo);
+        }
+    }
+
+    // --- Ruta caliente ---
+
+    // Marca de tiempo para registrar(); 0 si las métricas están deshabilitadas
+    long inicio() {
+        return habilitadas ? System.nanoTime() : 0;
+    }
+
+    void registrar(Operacion operacion, long inicio, int filasLeidas, int filasEscritas) {
+        if (inicio == 0) return;
+        EstadisticasOperacion e = operaciones[operacion.ordinal()];
+        e.latencias.registrar(System.nanoTime() - inicio);
+        if (filasLeidas != 0) e.filasLeidas.add(filasLeidas);
+        if (filasEscritas != 0) e.filasEscritas.add(filasEscritas);
+    }
+
+    void registrarError(Operacion operacion, long inicio) {
+        if (inicio == 0) return;
+        EstadisticasOperacion e = operaciones[operacion.ordinal()];
+        e.latencias.registrar(System.nanoTime() - inicio);
+        e.errores.increment();
+    }
+
+    void registrarEsperaLector(long inicio) {
+        if (inicio != 0) esperaLector.registrar(System.nanoTime() - inicio);
+    }
+
+    void registrarEsperaEscritor(long inicio) {
+        if (inicio != 0) esperaEscritor.registrar(System.nanoTime() - inicio);
+    }
+
+    // --- Lectura ---
+
+    public MetricasOperacionMXBean getOperacion(Operacion operacion) {
+        return operaciones[operacion.ordinal()];
+    }
+
+    @Override
+    public boolean isHabilitadas() {
+        return habilitadas;
+    }
+
+    @Override
+    public void setHabilitadas(boolean habilitadas) {
+        this.habilitadas = habilitadas;
+    }
+
+    @Override
+    public long getPrestamosLector() {
+        return esperaLector.getCuenta();
+    }
+
+    @Override
+    public double getEsperaMediaLectorMicros() {
+        return esperaLector.getMediaNanos() / 1_000.0;
+    }
+
+    @Override
+    public double getEsperaP99LectorMicros() {
+        return esperaLector.getPercentilNanos(99) / 1_000.0;
+    }
+
+    @Override
+    public double getEsperaMaximaLectorMicros() {
+        return esperaLector.getMaximoNanos() / 1_000.0;
+    }
+
+    @Override
+    public long getPrestamosEscritor() {
+        return esperaEscritor.getCuenta();
+    }
+
+    @Override
+    public double getEsperaMediaEscritorMicros() {
+        return esperaEscritor.getMediaNanos() / 1_000.0;
+    }
+
+    @Override
+    public double getEsperaP99EscritorMicros() {
+        return esperaEscritor.getPercentilNanos(99) / 1_000.0;
+    }
+
+    @Override
+    public double getEsperaMaximaEscritorMicros() {
+        return esperaEscritor.getMaximoNanos() / 1_000.0;
+    }
+
+    @Override
+    public long getAciertosCachePacientes() {
+        return baseDatos.getCachePacientes().getAciertos();
+    }
+
+    @Override
+    public long getFallosCachePacientes() {
+        return baseDatos.getCachePacientes().getFallos();
+    }
+
+    @Override
+    public long getDesalojosCachePacientes() {
+        return baseDatos.getCachePacientes().getDesalojos();
+    }
+
+    @Override
+    public int getTamanoCachePacientes() {
+        return baseDatos.getCachePacientes().getTamano();
+    }
+
+    @Override
+    public long getAciertosCacheMedicos() {
+        return baseDatos.getCacheMedicos().getAciertos();
+    }
+
+    @Override
+    public long getFallosCacheMedicos() {
+        return baseDatos.getCacheMedicos().getFallos();
+    }
+
+    @Override
+    public long getDesalojosCacheMedicos() {
+        return baseDatos.getCacheMedicos().getDesalojos();
+    }
+
+    @Override
+    public int getTamanoCacheMedicos() {
+        return baseDatos.getCacheMedicos().getTamano();
+    }
+
+    @Override
+    public long getPreparacionesSentencias() {
+        return sumar(baseDatos.obtenerPreparacionesSentencias().values());
+    }
+
+    @Override
+    public long getReutilizacionesSentencias() {
+        return sumar(baseDatos.obtenerReutilizacionesSentencias().values());
+    }
+
+    @Override
+    public int getEscriturasPendientes() {
+        return baseDatos.getEscriturasPendientes();
+    }
+
+    @Override
+    public void reiniciar() {
+        for (EstadisticasOperacion e : operaciones) {
+            e.reiniciar();
+        }
+        esperaLector.reiniciar();
+        esperaEscritor.reiniciar();
+    }
+
+    private static long sumar(Iterable<Long> valores) {
+        long total = 0;
+        for (long valor : valores) {
+            total += valor;
+        }
+        return total;
+    }
+
+    // --- JMX ---
+
+    // Publica este MXBean y uno por operación bajo com.citasmedicas:type=BaseDatos,name=<nombre>.
+    // Si ya hay otra BaseDatos publicada con el mismo nombre, se avisa y se sigue sin JMX.
+    synchronized void registrarJmx(String nombre) {
+        if (!registrados.isEmpty()) return;
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        String base = "com.citasmedicas:type=BaseDatos,name=" + ObjectName.quote(nombre);
+        try {
+            registrar(servidor, new ObjectName(base), this);
+            for (EstadisticasOperacion e : operaciones) {
+                registrar(servidor, new ObjectName(base + ",operacion=" + e.getOperacion()), e);
+            }
+        } catch (JMException e) {
+            System.err.println("No se pudieron publicar las métricas por JMX: " + e.getMessage());
+            retirarJmx();
+        }
+    }
+
+    private void registrar(MBeanServer servidor, ObjectName nombre, Object mxbean) throws JMException {
+        servidor.registerMBean(mxbean, nombre);
+        registrados.add(nombre);
+    }
+
+    synchronized void retirarJmx() {
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName nombre : registrados) {
+            try {
+                servidor.unregisterMBean(nombre);
+            } catch (JMException e) {
+                System.err.println("Error al retirar " + nombre + " de JMX: " + e.getMessage());
+            }
+        }
+        registrados.clear();
+    }
+}
@@ -0,0 +1,63 @@
+package com.citasmedicas.persistence;
+
+/**
+ * Métricas generales de una BaseDatos publicadas por JMX (com.citasmedicas:type=BaseDatos,name=&lt;archivo&gt;):
+ * espera por las conexiones del pool, mapas de identidad, sentencias preparadas y escritura diferida.
+ * Las de cada operación están en MetricasOperacionMXBean.
+ */
+public interface MetricasBaseDatosMXBean {
+
+    // Con las métricas deshabilitadas las operaciones no miden nada (ni leen el reloj)
+    boolean isHabilitadas();
+
+    void setHabilitadas(boolean habilitadas);
+
+    // --- Conexiones ---
+
+    long getPrestamosLector();
+
+    double getEsperaMediaLectorMicros();
+
+    double getEsperaP99LectorMicros();
+
+    double getEsperaMaximaLectorMicros();
+
+    long getPrestamosEscritor();
+
+    double getEsperaMediaEscritorMicros();
+
+    double getEsperaP99EscritorMicros();
+
+    double getEsperaMaximaEscritorMicros();
+
+    // --- Mapas de identidad ---
+
+    long getAciertosCachePacientes();
+
+    long getFallosCachePacientes();
+
+    long getDesalojosCachePacientes();
+
+    int getTamanoCachePacientes();
+
+    long getAciertosCacheMedicos();
+
+    long getFallosCacheMedicos();
+
+    long getDesalojosCacheMedicos();
+
+    int getTamanoCacheMedicos();
+
+    // --- Sentencias preparadas (todas las conexiones del pool) ---
+
+    long getPreparacionesSentencias();
+
+    long getReutilizacionesSentencias();
+
+    // --- Escritura diferida ---
+
+    int getEscriturasPendientes();
+
+    // Pone a cero las latencias, los contadores de operaciones y las esperas (no las cachés)
+    void reiniciar();
+}
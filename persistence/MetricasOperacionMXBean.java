@@ -0,0 +1,34 @@
+package com.citasmedicas.persistence;
+
+/**
+ * Métricas de una operación de BaseDatos publicadas por JMX
+ * (com.citasmedicas:type=BaseDatos,name=&lt;archivo&gt;,operacion=&lt;nombre&gt;).
+ * Las latencias están en microsegundos; los percentiles son aproximados (ver HistogramaLatencia).
+ */
+public interface MetricasOperacionMXBean {
+
+    String getOperacion();
+
+    long getLlamadas();
+
+    long getErrores();
+
+    long getFilasLeidas();
+
+    long getFilasEscritas();
+
+    double getMediaMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaximoMicros();
+
+    // Llamadas por cubeta de latencia: el elemento i cuenta las de [2^i, 2^(i+1)) nanosegundos
+    long[] getHistogramaNanos();
+
+    void reiniciar();
+}
@@ -0,0 +1,276 @@
+package com.citasmedicas.persistence;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Migraciones versionadas del esquema SQLite.
+ * La versión aplicada se guarda en PRAGMA user_version; cada paso se ejecuta una sola vez,
+ * en orden y dentro de su propia transacción junto con el cambio de versión.
+ * Para modificar el esquema se AÑADE un paso al final de la lista, nunca se edita uno existente.
+ * Tras el último paso pendiente, y en su misma transacción, los agregados de citas realizadas se
+ * recalculan con el código actual (AgregadosCitas.reconstruir), sea cual sea la forma que dejaron
+ * los pasos anteriores.
+ */
+final class MigracionesEsquema {
+
+    @FunctionalInterface
+    interface Paso {
+        void aplicar(Connection connection) throws SQLException;
+    }
+
+    private static final List<Paso> PASOS = List.of(
+            // v1: tablas base (IF NOT EXISTS para adoptar bases de datos creadas antes de las migraciones)
+            c -> ejecutar(c,
+                    "CREATE TABLE IF NOT EXISTS Pacientes (" +
+                            "id TEXT PRIMARY KEY," +
+                            "nombre TEXT NOT NULL," +
+                            "dni TEXT NOT NULL UNIQUE," +
+                            "edad INTEGER," +
+                            "antecedentes TEXT" +
+                            ")",
+                    "CREATE TABLE IF NOT EXISTS Medicos (" +
+                            "id TEXT PRIMARY KEY," +
+                            "nombre TEXT NOT NULL," +
+                            "especialidad TEXT NOT NULL" +
+                            ")",
+                    "CREATE TABLE IF NOT EXISTS Citas (" +
+                            "id TEXT PRIMARY KEY," +
+                            "paciente_id TEXT NOT NULL," +
+                            "medico_id TEXT NOT NULL," +
+                            "fecha TEXT NOT NULL," + // Guardamos como TEXT en formato YYYY-MM-DD
+                            "hora TEXT NOT NULL," + // Guardamos como TEXT en formato HH:MM
+                            "motivo TEXT," +
+                            "estado TEXT NOT NULL," + // Programada, Realizada, Cancelada
+                            "FOREIGN KEY (paciente_id) REFERENCES Pacientes(id)," +
+                            "FOREIGN KEY (medico_id) REFERENCES Medicos(id)" +
+                            ")",
+                    "CREATE TABLE IF NOT EXISTS HistorialEntradas (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," + // ID autoincremental para las entradas del historial
+                            "paciente_id TEXT NOT NULL," +
+                            "fecha TEXT NOT NULL," +
+                            "descripcion TEXT," +
+                            "FOREIGN KEY (paciente_id) REFERENCES Pacientes(id)" +
+                            ")",
+                    // Tabla para almacenar los contadores de ID
+                    "CREATE TABLE IF NOT EXISTS IdCounters (" +
+                            "name TEXT PRIMARY KEY," +
+                            "value INTEGER NOT NULL" +
+                            ")"),
+
+            // v2: índices secundarios para las búsquedas por fecha, paciente y médico
+            c -> ejecutar(c,
+                    "CREATE INDEX IF NOT EXISTS idx_citas_fecha ON Citas(fecha, hora)",
+                    "CREATE INDEX IF NOT EXISTS idx_citas_paciente ON Citas(paciente_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_citas_medico ON Citas(medico_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_historial_paciente_fecha ON HistorialEntradas(paciente_id, fecha, id)"),
+
+            // v3: índices de cobertura para los reportes (se resuelven sin leer la tabla Citas)
+            c -> ejecutar(c,
+                    "CREATE INDEX IF NOT EXISTS idx_citas_estado_paciente ON Citas(estado, paciente_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_citas_fecha_estado ON Citas(fecha, estado, hora, paciente_id, medico_id)"),
+
+            // v4: IdCounters pasa a guardar el último ID RESERVADO (bloques hi-lo). Se sube cada
+            // contador por encima del mayor ID existente, por si una versión anterior se cerró sin
+            // guardar sus contadores
+            c -> {
+                ajustarContador(c, "paciente", "Pacientes");
+                ajustarContador(c, "medico", "Medicos");
+                ajustarContador(c, "cita", "Citas");
+                ejecutar(c, "DELETE FROM IdCounters WHERE name = 'historial'"); // HistorialEntradas usa AUTOINCREMENT
+            },
+
+            // v5: agregados de citas realizadas (por paciente, médico y día), cargados con los datos actuales.
+            // Es el SQL de AgregadosCitas.crearTablas/reconstruir tal como se publicó, para el esquema
+            // de entonces (fecha y estado como texto); AgregadosCitas ya sigue la forma actual de Citas
+            c -> ejecutar(c,
+                    "CREATE TABLE IF NOT EXISTS RealizadasPorPaciente (paciente_id TEXT PRIMARY KEY,realizadas INTEGER NOT NULL)",
+                    "CREATE TABLE IF NOT EXISTS RealizadasPorMedico (medico_id TEXT PRIMARY KEY,realizadas INTEGER NOT NULL)",
+                    "CREATE TABLE IF NOT EXISTS RealizadasPorDia (fecha TEXT PRIMARY KEY,realizadas INTEGER NOT NULL)",
+                    "DELETE FROM RealizadasPorPaciente",
+                    "INSERT INTO RealizadasPorPaciente (paciente_id, realizadas) " +
+                            "SELECT paciente_id, COUNT(*) FROM Citas WHERE estado = 'Realizada' GROUP BY paciente_id",
+                    "DELETE FROM RealizadasPorMedico",
+                    "INSERT INTO RealizadasPorMedico (medico_id, realizadas) " +
+                            "SELECT medico_id, COUNT(*) FROM Citas WHERE estado = 'Realizada' GROUP BY medico_id",
+                    "DELETE FROM RealizadasPorDia",
+                    "INSERT INTO RealizadasPorDia (fecha, realizadas) " +
+                            "SELECT fecha, COUNT(*) FROM Citas WHERE estado = 'Realizada' GROUP BY fecha"),
+
+            // v6: índices de cobertura para los reportes agrupados por paciente y por médico.
+            // Sustituyen a los de una sola columna, que pasan a ser prefijos redundantes
+            c -> ejecutar(c,
+                    "CREATE INDEX IF NOT EXISTS idx_citas_paciente_estado ON Citas(paciente_id, estado, fecha, medico_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_citas_medico_estado ON Citas(medico_id, estado, fecha, paciente_id)",
+                    "DROP INDEX IF EXISTS idx_citas_paciente",
+                    "DROP INDEX IF EXISTS idx_citas_medico"),
+
+            // v7: Citas.fecha/hora (texto libre) pasan a una columna entera 'inicio' (ver FechasCitas).
+            // Se reconstruye la tabla (SQLite no puede quitar columnas en todas las versiones) y con
+            // ella sus índices; los agregados por día pasan a indexarse por número de día
+            MigracionesEsquema::migrarInicioCitas,
+
+            // v8: el estado pasa a ser un código entero (0 Programada, 1 Realizada, 2 Cancelada) y
+            // se añade un índice parcial con solo las citas pendientes, que son las que consulta la agenda
+            c -> ejecutar(c,
+                    "CREATE TABLE Citas_v8 (" +
+                            "id TEXT PRIMARY KEY," +
+                            "paciente_id TEXT NOT NULL," +
+                            "medico_id TEXT NOT NULL," +
+                            "inicio INTEGER NOT NULL," + // Segundos desde 1970-01-01T00:00, hora local (ver FechasCitas)
+                            "motivo TEXT," +
+                            "estado INTEGER NOT NULL CHECK (estado IN (0, 1, 2))," + // Ver EstadoCita
+                            "FOREIGN KEY (paciente_id) REFERENCES Pacientes(id)," +
+                            "FOREIGN KEY (medico_id) REFERENCES Medicos(id)" +
+                            ")",
+                    "INSERT INTO Citas_v8 (id, paciente_id, medico_id, inicio, motivo, estado) " +
+                            "SELECT id, paciente_id, medico_id, inicio, motivo, " +
+                            "CASE estado WHEN 'Realizada' THEN 1 WHEN 'Cancelada' THEN 2 ELSE 0 END FROM Citas",
+                    "DROP TABLE Citas",
+                    "ALTER TABLE Citas_v8 RENAME TO Citas",
+                    "CREATE INDEX idx_citas_inicio ON Citas(inicio, id)",
+                    "CREATE INDEX idx_citas_inicio_estado ON Citas(inicio, estado, paciente_id, medico_id)",
+                    "CREATE INDEX idx_citas_estado_paciente ON Citas(estado, paciente_id)",
+                    "CREATE INDEX idx_citas_paciente_estado ON Citas(paciente_id, estado, inicio, medico_id)",
+                    "CREATE INDEX idx_citas_medico_estado ON Citas(medico_id, estado, inicio, paciente_id)",
+                    // Solo se usa si la consulta lleva el literal 'estado = 0' (ver FiltroCitas)
+                    "CREATE INDEX idx_citas_programadas ON Citas(inicio, medico_id) WHERE estado = 0"),
+
+            // v9: duración de cada cita en minutos, para detectar solapamientos en la agenda del médico
+            c -> ejecutar(c,
+                    "ALTER TABLE Citas ADD COLUMN duracion INTEGER NOT NULL DEFAULT 30 CHECK (duracion > 0)"),
+
+            // v10: índice de texto completo (FTS5) de pacientes: nombre, DNI y todo su historial.
+            // Cada fila tiene el mismo rowid que el paciente en Pacientes (ver BaseDatos.indexarPaciente)
+            c -> ejecutar(c,
+                    "CREATE VIRTUAL TABLE BusquedaPacientes USING fts5(" +
+                            "nombre, dni, historial, " +
+                            "tokenize = 'unicode61 remove_diacritics 2', " + // 'Pérez' también se encuentra con 'perez'
+                            "prefix = '2 3')", // Índices de prefijo para las búsquedas mientras se escribe
+                    "INSERT INTO BusquedaPacientes (rowid, nombre, dni, historial) " +
+                            "SELECT p.rowid, p.nombre, p.dni, " +
+                            "(SELECT group_concat(h.descripcion, ' ') FROM HistorialEntradas h WHERE h.paciente_id = p.id) " +
+                            "FROM Pacientes p")
+    );
+
+    private MigracionesEsquema() {
+    }
+
+    static int versionObjetivo() {
+        return PASOS.size();
+    }
+
+    // Aplica los pasos pendientes. Si la versión guardada ya es la actual no ejecuta ningún DDL.
+    // Devuelve la versión final del esquema.
+    static int aplicar(Connection connection) throws SQLException {
+        int version = leerVersion(connection);
+        if (version >= PASOS.size()) {
+            return version;
+        }
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (int i = version; i < PASOS.size(); i++) {
+                try {
+                    PASOS.get(i).aplicar(connection);
+                    if (i == PASOS.size() - 1) {
+                        // Los agregados dependen de la forma actual de Citas. Van en la transacción del
+                        // último paso para que la versión nueva nunca quede con agregados sin recalcular
+                        AgregadosCitas.reconstruir(connection);
+                    }
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("PRAGMA user_version = " + (i + 1));
+                    }
+                    connection.commit();
+                    System.out.println("Migración de esquema aplicada: v" + (i + 1));
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Falló la migración a v" + (i + 1) + ": " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return PASOS.size();
+    }
+
+    static int leerVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // Los IDs tienen la forma <prefijo de una letra><número>, p. ej. "P42"
+    private static void ajustarContador(Connection connection, String nombre, String tabla) throws SQLException {
+        ejecutar(connection,
+                "INSERT OR REPLACE INTO IdCounters (name, value) SELECT '" + nombre + "', MAX(" +
+                        "COALESCE((SELECT value FROM IdCounters WHERE name = '" + nombre + "'), 0), " +
+                        "COALESCE((SELECT MAX(CAST(SUBSTR(id, 2) AS INTEGER)) FROM " + tabla + "), 0))");
+    }
+
+    private static void migrarInicioCitas(Connection connection) throws SQLException {
+        ejecutar(connection, "ALTER TABLE Citas ADD COLUMN inicio INTEGER");
+
+        int sinFormato = 0;
+        try (Statement leer = connection.createStatement();
+             ResultSet rs = leer.executeQuery("SELECT id, fecha, hora FROM Citas");
+             PreparedStatement escribir = connection.prepareStatement("UPDATE Citas SET inicio = ? WHERE id = ?")) {
+            while (rs.next()) {
+                LocalDate fecha = FechasCitas.parsearFecha(rs.getString("fecha"));
+                LocalTime hora = FechasCitas.parsearHora(rs.getString("hora"));
+                if (fecha == null) {
+                    // Se conserva la cita en 1970-01-01 para que se pueda corregir a mano
+                    System.err.println("Cita " + rs.getString("id") + " con fecha no reconocida: '" + rs.getString("fecha") + "'");
+                    fecha = LocalDate.EPOCH;
+                    sinFormato++;
+                }
+                if (hora == null) {
+                    hora = LocalTime.MIDNIGHT;
+                }
+                escribir.setLong(1, FechasCitas.aEpoch(fecha, hora));
+                escribir.setString(2, rs.getString("id"));
+                escribir.addBatch();
+            }
+            escribir.executeBatch();
+        }
+        if (sinFormato > 0) {
+            System.err.println(sinFormato + " cita(s) migradas sin fecha válida.");
+        }
+
+        ejecutar(connection,
+                "CREATE TABLE Citas_v7 (" +
+                        "id TEXT PRIMARY KEY," +
+                        "paciente_id TEXT NOT NULL," +
+                        "medico_id TEXT NOT NULL," +
+                        "inicio INTEGER NOT NULL," + // Segundos desde 1970-01-01T00:00, hora local (ver FechasCitas)
+                        "motivo TEXT," +
+                        "estado TEXT NOT NULL," + // Programada, Realizada, Cancelada
+                        "FOREIGN KEY (paciente_id) REFERENCES Pacientes(id)," +
+                        "FOREIGN KEY (medico_id) REFERENCES Medicos(id)" +
+                        ")",
+                "INSERT INTO Citas_v7 (id, paciente_id, medico_id, inicio, motivo, estado) " +
+                        "SELECT id, paciente_id, medico_id, inicio, motivo, estado FROM Citas",
+                "DROP TABLE Citas",
+                "ALTER TABLE Citas_v7 RENAME TO Citas",
+                // Rangos y orden de paginación (inicio, id); el resto, de cobertura para los reportes
+                "CREATE INDEX idx_citas_inicio ON Citas(inicio, id)",
+                "CREATE INDEX idx_citas_inicio_estado ON Citas(inicio, estado, paciente_id, medico_id)",
+                "CREATE INDEX idx_citas_estado_paciente ON Citas(estado, paciente_id)",
+                "CREATE INDEX idx_citas_paciente_estado ON Citas(paciente_id, estado, inicio, medico_id)",
+                "CREATE INDEX idx_citas_medico_estado ON Citas(medico_id, estado, inicio, paciente_id)",
+                "DROP TABLE IF EXISTS RealizadasPorDia",
+                "CREATE TABLE RealizadasPorDia (dia INTEGER PRIMARY KEY, realizadas INTEGER NOT NULL)"); // Días desde 1970-01-01
+    }
+
+    private static void ejecutar(Connection connection, String... sentencias) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : sentencias) {
+                stmt.execute(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.citasmedicas.persistence;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool de conexiones SQLite en modo WAL: N conexiones de solo lectura que atienden
+ * las consultas en paralelo y una única conexión de escritura serializada con un lock.
+ * En WAL los lectores no bloquean al escritor ni el escritor a los lectores, así que
+ * un reporte largo no frena el registro de citas.
+ * Tras cerrar(), pedir una conexión lanza SQLException, también a quien ya estaba esperando.
+ */
+public class PoolConexiones {
+
+    private static final int ESPERA_BLOQUEO_MS = 5000; // busy_timeout de SQLite
+    private static final int CAPACIDAD_CACHE_SENTENCIAS = 64; // Sentencias preparadas por conexión
+    private static final long ESPERA_CERRADO_MS = 100; // Cada cuánto comprueba el cierre quien espera un lector
+
+    private final String url;
+    private final Connection escritor;
+    private final ReentrantLock bloqueoEscritor = new ReentrantLock(true);
+    private final BlockingQueue<Connection> lectoresLibres;
+    private final List<Connection> lectores = new ArrayList<>();
+    private final Map<Connection, CacheSentencias> cachesSentencias; // Inmutable tras el constructor
+    private final MetricasBaseDatos metricas; // Espera por las conexiones; null = sin medir
+    private volatile boolean cerrado = false;
+
+    public PoolConexiones(String url, int numLectores) throws SQLException {
+        this(url, numLectores, null);
+    }
+
+    PoolConexiones(String url, int numLectores, MetricasBaseDatos metricas) throws SQLException {
+        if (numLectores <= 0) {
+            throw new IllegalArgumentException("Se necesita al menos una conexión de lectura: " + numLectores);
+        }
+        this.url = url;
+        this.metricas = metricas;
+        this.lectoresLibres = new ArrayBlockingQueue<>(numLectores);
+
+        // El escritor se abre primero: activa WAL, que queda persistido en el archivo
+        escritor = DriverManager.getConnection(url);
+        try (Statement stmt = escritor.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("PRAGMA synchronous = FULL"); // Cada commit es durable; la cola de escritura agrupa commits para amortizar el fsync
+            stmt.execute("PRAGMA busy_timeout = " + ESPERA_BLOQUEO_MS);
+        }
+
+        try {
+            for (int i = 0; i < numLectores; i++) {
+                Connection lector = DriverManager.getConnection(url);
+                try (Statement stmt = lector.createStatement()) {
+                    stmt.execute("PRAGMA busy_timeout = " + ESPERA_BLOQUEO_MS);
+                    stmt.execute("PRAGMA query_only = 1");
+                }
+                lectores.add(lector);
+                lectoresLibres.add(lector);
+            }
+        } catch (SQLException e) {
+            cerrar();
+            throw e;
+        }
+
+        Map<Connection, CacheSentencias> caches = new IdentityHashMap<>();
+        caches.put(escritor, new CacheSentencias(escritor, CAPACIDAD_CACHE_SENTENCIAS));
+        for (Connection lector : lectores) {
+            caches.put(lector, new CacheSentencias(lector, CAPACIDAD_CACHE_SENTENCIAS));
+        }
+        cachesSentencias = Collections.unmodifiableMap(caches);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getNumLectores() {
+        return lectores.size();
+    }
+
+    /**
+     * Conexión prestada por el pool. Se usa en un try-with-resources:
+     * al cerrarse, la conexión vuelve al pool (no se cierra la conexión real).
+     */
+    public static final class Prestamo implements AutoCloseable {
+        private final Connection conexion;
+        private final Runnable devolucion;
+
+        private Prestamo(Connection conexion, Runnable devolucion) {
+            this.conexion = conexion;
+            this.devolucion = devolucion;
+        }
+
+        public Connection getConexion() {
+            return conexion;
+        }
+
+        @Override
+        public void close() {
+            devolucion.run();
+        }
+    }
+
+    // Toma una conexión de lectura, esperando si todas están ocupadas
+    public Prestamo tomarLector() throws SQLException {
+        try {
+            long inicio = metricas != null ? metricas.inicio() : 0;
+            Connection lector;
+            do {
+                comprobarAbierto();
+                lector = lectoresLibres.poll(ESPERA_CERRADO_MS, TimeUnit.MILLISECONDS);
+            } while (lector == null);
+            if (cerrado) {
+                lectoresLibres.offer(lector); // Para que cerrar() la encuentre
+                comprobarAbierto();
+            }
+            if (metricas != null) metricas.registrarEsperaLector(inicio);
+            Connection prestado = lector;
+            return new Prestamo(prestado, () -> lectoresLibres.offer(prestado));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión de lectura", e);
+        }
+    }
+
+    // Toma la conexión de escritura en exclusiva (reentrante para el mismo hilo)
+    public Prestamo tomarEscritor() throws SQLException {
+        long inicio = metricas != null ? metricas.inicio() : 0;
+        bloqueoEscritor.lock();
+        if (cerrado) {
+            bloqueoEscritor.unlock();
+            comprobarAbierto();
+        }
+        if (metricas != null) metricas.registrarEsperaEscritor(inicio);
+        return new Prestamo(escritor, bloqueoEscritor::unlock);
+    }
+
+    private void comprobarAbierto() throws SQLException {
+        if (cerrado) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+    }
+
+    // Caché de sentencias preparadas de una conexión del pool
+    CacheSentencias sentencias(Connection conexion) {
+        CacheSentencias cache = cachesSentencias.get(conexion);
+        if (cache == null) {
+            throw new IllegalArgumentException("La conexión no pertenece a este pool");
+        }
+        return cache;
+    }
+
+    Map<String, Long> getPreparacionesSentencias() {
+        Map<String, Long> totales = new HashMap<>();
+        for (CacheSentencias cache : cachesSentencias.values()) {
+            sumar(totales, cache.getPreparaciones());
+        }
+        return totales;
+    }
+
+    Map<String, Long> getReutilizacionesSentencias() {
+        Map<String, Long> totales = new HashMap<>();
+        for (CacheSentencias cache : cachesSentencias.values()) {
+            sumar(totales, cache.getReutilizaciones());
+        }
+        return totales;
+    }
+
+    private static void sumar(Map<String, Long> totales, Map<String, LongAdder> contadores) {
+        for (Map.Entry<String, LongAdder> e : contadores.entrySet()) {
+            totales.merge(e.getKey(), e.getValue().sum(), Long::sum);
+        }
+    }
+
+    // Deja de prestar conexiones y las cierra. Espera (como mucho el busy_timeout) a que se
+    // devuelvan los lectores prestados y a que termine quien tenga el escritor.
+    public void cerrar() {
+        cerrado = true;
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ESPERA_BLOQUEO_MS);
+        int devueltos = 0;
+        try {
+            while (devueltos < lectores.size()) {
+                long restante = limite - System.nanoTime();
+                if (restante <= 0 || lectoresLibres.poll(restante, TimeUnit.NANOSECONDS) == null) break;
+                devueltos++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (devueltos < lectores.size()) {
+            System.err.println("Se cierran " + (lectores.size() - devueltos) + " conexión(es) de lectura todavía en uso.");
+        }
+
+        // Las sentencias en caché se cierran antes que sus conexiones
+        if (cachesSentencias != null) {
+            for (CacheSentencias cache : cachesSentencias.values()) {
+                cache.cerrar();
+            }
+        }
+        for (Connection lector : lectores) {
+            cerrarSilenciosamente(lector);
+        }
+        lectores.clear();
+        lectoresLibres.clear();
+        bloqueoEscritor.lock();
+        try {
+            cerrarSilenciosamente(escritor);
+        } finally {
+            bloqueoEscritor.unlock();
+        }
+    }
+
+    private static void cerrarSilenciosamente(Connection connection) {
+        try {
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar conexión del pool: " + e.getMessage());
+        }
+    }
+}
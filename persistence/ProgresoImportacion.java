@@ -0,0 +1,9 @@
+package com.citasmedicas.persistence;
+
+/**
+ * Recibe el avance de una importación CSV tras confirmar cada lote (ver BaseDatos.importarCsv).
+ */
+@FunctionalInterface
+public interface ProgresoImportacion {
+    void avance(String archivo, long leidas, long importadas, long rechazadas);
+}
@@ -0,0 +1,9 @@
+package com.citasmedicas.persistence;
+
+/**
+ * Recibe, fila a fila, un agregado de citas realizadas (ver ConteoRealizadas).
+ */
+@FunctionalInterface
+public interface ReceptorConteoRealizadas {
+    void fila(String clave, String nombre, int realizadas);
+}
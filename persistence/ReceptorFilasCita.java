@@ -0,0 +1,10 @@
+package com.citasmedicas.persistence;
+
+/**
+ * Recibe las citas de un listado a medida que se leen del cursor, con los nombres de
+ * paciente y médico ya resueltos (null si no existen) y sin construir objetos Cita.
+ */
+@FunctionalInterface
+public interface ReceptorFilasCita {
+    void fila(String id, String paciente, String medico, String fecha, String hora, String motivo, String estado);
+}
@@ -0,0 +1,10 @@
+package com.citasmedicas.persistence;
+
+/**
+ * Recibe las filas agregadas de un reporte a medida que se leen del cursor.
+ * Los contadores llegan como primitivos para no crear un objeto por fila.
+ */
+@FunctionalInterface
+public interface ReceptorFilasReporte {
+    void fila(String clave, String etiqueta, int total, int realizadas, int canceladas, int programadas, int pacientesDistintos);
+}
@@ -0,0 +1,343 @@
+package com.citasmedicas.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.zip.CRC32C;
+
+/**
+ * Respaldo en caliente de la base de datos, página a página, sin detener la aplicación.
+ *
+ * En modo WAL el archivo principal solo cambia en los checkpoints. Con el escritor bloqueado un
+ * instante se vuelca el WAL al archivo (wal_checkpoint(TRUNCATE)) y se desactiva el checkpoint
+ * automático; a partir de ahí los guardar*() siguen escribiendo en el WAL mientras el archivo
+ * principal queda congelado y se copia en segundo plano, limitando los bytes por segundo. Al
+ * terminar se reactiva el checkpoint automático.
+ *
+ * En el directorio de respaldos:
+ * - base.db / base.crc: copia completa y su manifiesto (CRC32C de cada página).
+ * - incremento-NNNN.delta / .crc: solo las páginas cuyo CRC cambió respecto al manifiesto anterior.
+ * restaurar() aplica base + incrementos, comprueba cada página contra el manifiesto y la
+ * integridad con PRAGMA integrity_check antes de sustituir el archivo de destino.
+ */
+final class RespaldoEnLinea {
+
+    private static final int AUTOCHECKPOINT_POR_DEFECTO = 1000; // Páginas, el valor por defecto de SQLite
+    private static final int PAGINAS_POR_LECTURA = 256;
+    private static final int MAX_INTENTOS_CHECKPOINT = 50;
+
+    private final PoolConexiones pool;
+    private final Path archivoDb;
+    private final long bytesPorSegundo; // <= 0: sin límite
+
+    RespaldoEnLinea(PoolConexiones pool, Path archivoDb, long bytesPorSegundo) {
+        this.pool = pool;
+        this.archivoDb = archivoDb;
+        this.bytesPorSegundo = bytesPorSegundo;
+    }
+
+    // Hace un respaldo completo si el directorio no tiene base, o un incremento si la tiene.
+    // Devuelve las páginas escritas en el respaldo.
+    long respaldar(Path directorio) throws IOException, SQLException {
+        Files.createDirectories(directorio);
+        int tamanoPagina = congelarArchivo();
+        try {
+            Path manifiestoAnterior = ultimoManifiesto(directorio);
+            return manifiestoAnterior == null
+                    ? copiarCompleto(directorio, tamanoPagina)
+                    : copiarIncremento(directorio, tamanoPagina, leerManifiesto(manifiestoAnterior), siguienteIncremento(directorio));
+        } finally {
+            descongelarArchivo();
+        }
+    }
+
+    // Reconstruye en 'destino' el estado del respaldo hasta el incremento 'hasta' (0 = solo la base,
+    // negativo = el último). Si algo no cuadra lanza una excepción y 'destino' no se toca.
+    static void restaurar(Path directorio, int hasta, Path destino) throws IOException, SQLException {
+        Path base = directorio.resolve("base.db");
+        if (!Files.exists(base)) {
+            throw new IOException("No hay respaldo base en " + directorio);
+        }
+        int ultimo = siguienteIncremento(directorio) - 1;
+        int objetivo = hasta < 0 ? ultimo : hasta;
+        if (objetivo > ultimo) {
+            throw new IOException("No existe el incremento " + objetivo + " (el último es " + ultimo + ")");
+        }
+
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".restaurando");
+        Files.copy(base, temporal, StandardCopyOption.REPLACE_EXISTING);
+        try {
+            Path manifiesto = directorio.resolve("base.crc");
+            try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.WRITE)) {
+                for (int n = 1; n <= objetivo; n++) {
+                    aplicarIncremento(directorio.resolve(nombreIncremento(n) + ".delta"), salida);
+                    manifiesto = directorio.resolve(nombreIncremento(n) + ".crc");
+                }
+                int[] crcs = leerManifiesto(manifiesto);
+                int tamanoPagina = crcs[0];
+                long paginas = crcs.length - 1;
+                salida.truncate(paginas * tamanoPagina);
+                verificarPaginas(salida, tamanoPagina, crcs);
+            }
+            verificarIntegridad(temporal);
+
+            // Un WAL viejo junto al archivo restaurado se volvería a aplicar encima al abrirlo
+            Files.deleteIfExists(destino.resolveSibling(destino.getFileName() + "-wal"));
+            Files.deleteIfExists(destino.resolveSibling(destino.getFileName() + "-shm"));
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    // --- Congelar el archivo principal ---
+
+    // Vuelca el WAL y desactiva el checkpoint automático; devuelve el tamaño de página
+    private int congelarArchivo() throws SQLException {
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor();
+             Statement stmt = escritor.getConexion().createStatement()) {
+            stmt.execute("PRAGMA wal_autocheckpoint = 0");
+            boolean volcado = false;
+            for (int intento = 0; intento < MAX_INTENTOS_CHECKPOINT && !volcado; intento++) {
+                // Columnas: busy (1 si un lector impidió terminar), páginas del WAL, páginas volcadas
+                try (ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
+                    volcado = rs.next() && rs.getInt(1) == 0;
+                }
+                if (!volcado) esperar(20);
+            }
+            if (!volcado) {
+                stmt.execute("PRAGMA wal_autocheckpoint = " + AUTOCHECKPOINT_POR_DEFECTO);
+                throw new SQLException("No se pudo volcar el WAL: hay lecturas largas en curso");
+            }
+            try (ResultSet rs = stmt.executeQuery("PRAGMA page_size")) {
+                return rs.next() ? rs.getInt(1) : 4096;
+            }
+        }
+    }
+
+    private void descongelarArchivo() {
+        try (PoolConexiones.Prestamo escritor = pool.tomarEscritor();
+             Statement stmt = escritor.getConexion().createStatement()) {
+            stmt.execute("PRAGMA wal_autocheckpoint = " + AUTOCHECKPOINT_POR_DEFECTO);
+        } catch (SQLException e) {
+            System.err.println("Error al reactivar el checkpoint automático: " + e.getMessage());
+        }
+    }
+
+    // --- Copia ---
+
+    private long copiarCompleto(Path directorio, int tamanoPagina) throws IOException {
+        Path temporal = directorio.resolve("base.db.tmp");
+        int[] crcs;
+        try (FileChannel entrada = FileChannel.open(archivoDb, StandardOpenOption.READ);
+             FileChannel salida = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            crcs = recorrerPaginas(entrada, tamanoPagina, (pagina, datos) -> {
+                long posicion = pagina * tamanoPagina;
+                while (datos.hasRemaining()) {
+                    posicion += salida.write(datos, posicion);
+                }
+            }, null);
+            salida.force(true);
+        }
+        // Incrementos de una base anterior que ya no se pueden aplicar sobre la nueva
+        for (int n = 1; Files.exists(directorio.resolve(nombreIncremento(n) + ".delta")); n++) {
+            Files.deleteIfExists(directorio.resolve(nombreIncremento(n) + ".crc"));
+            Files.delete(directorio.resolve(nombreIncremento(n) + ".delta"));
+        }
+        Files.move(temporal, directorio.resolve("base.db"), StandardCopyOption.REPLACE_EXISTING);
+        escribirManifiesto(directorio.resolve("base.crc"), crcs); // El .crc marca la base como completa
+        return crcs.length - 1;
+    }
+
+    private long copiarIncremento(Path directorio, int tamanoPagina, int[] anterior, int numero) throws IOException {
+        if (anterior[0] != tamanoPagina) {
+            throw new IOException("El tamaño de página cambió desde el último respaldo: se necesita una base nueva");
+        }
+        Path temporal = directorio.resolve(nombreIncremento(numero) + ".delta.tmp");
+        long[] copiadas = new long[1];
+        int[] crcs;
+        try (FileChannel entrada = FileChannel.open(archivoDb, StandardOpenOption.READ);
+             DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal), 256 * 1024))) {
+            salida.writeInt(tamanoPagina);
+            byte[] copia = new byte[tamanoPagina];
+            crcs = recorrerPaginas(entrada, tamanoPagina, (pagina, datos) -> {
+                salida.writeLong(pagina);
+                datos.get(copia);
+                salida.write(copia);
+                copiadas[0]++;
+            }, anterior);
+            salida.writeLong(-1); // Fin de las páginas
+        }
+        Path delta = directorio.resolve(nombreIncremento(numero) + ".delta");
+        Files.move(temporal, delta, StandardCopyOption.REPLACE_EXISTING);
+        escribirManifiesto(directorio.resolve(nombreIncremento(numero) + ".crc"), crcs); // El .crc marca el incremento como completo
+        return copiadas[0];
+    }
+
+    @FunctionalInterface
+    private interface DestinoPagina {
+        void escribir(long pagina, ByteBuffer datos) throws IOException;
+    }
+
+    // Lee el archivo en bloques de páginas, calcula el CRC de cada una y entrega al destino las que
+    // no coinciden con 'anterior' (todas si es null). Devuelve el manifiesto: {tamaño de página, crc...}
+    private int[] recorrerPaginas(FileChannel entrada, int tamanoPagina, DestinoPagina destino, int[] anterior) throws IOException {
+        long paginas = entrada.size() / tamanoPagina;
+        if (paginas > Integer.MAX_VALUE - 1) {
+            throw new IOException("Base de datos demasiado grande para el manifiesto");
+        }
+        int[] crcs = new int[(int) paginas + 1];
+        crcs[0] = tamanoPagina;
+        ByteBuffer bloque = ByteBuffer.allocateDirect(tamanoPagina * PAGINAS_POR_LECTURA);
+        CRC32C crc = new CRC32C();
+        long inicio = System.nanoTime();
+        long leidos = 0;
+        for (long primera = 0; primera < paginas; primera += PAGINAS_POR_LECTURA) {
+            int enBloque = (int) Math.min(PAGINAS_POR_LECTURA, paginas - primera);
+            bloque.clear().limit(enBloque * tamanoPagina);
+            long posicion = primera * tamanoPagina;
+            while (bloque.hasRemaining()) {
+                int n = entrada.read(bloque, posicion + bloque.position());
+                if (n < 0) throw new IOException("El archivo se acortó durante el respaldo");
+            }
+            for (int i = 0; i < enBloque; i++) {
+                long pagina = primera + i;
+                ByteBuffer datos = bloque.duplicate();
+                datos.limit((i + 1) * tamanoPagina).position(i * tamanoPagina);
+                crc.reset();
+                crc.update(datos.duplicate());
+                int valor = (int) crc.getValue();
+                crcs[(int) pagina + 1] = valor;
+                boolean cambiada = anterior == null || pagina + 1 >= anterior.length || anterior[(int) pagina + 1] != valor;
+                if (cambiada) {
+                    destino.escribir(pagina, datos);
+                }
+            }
+            leidos += (long) enBloque * tamanoPagina;
+            limitarVelocidad(inicio, leidos);
+        }
+        return crcs;
+    }
+
+    // Duerme lo necesario para no pasar de bytesPorSegundo de media
+    private void limitarVelocidad(long inicioNanos, long bytes) {
+        if (bytesPorSegundo <= 0) return;
+        long objetivoNanos = bytes * 1_000_000_000L / bytesPorSegundo;
+        long adelanto = objetivoNanos - (System.nanoTime() - inicioNanos);
+        if (adelanto > 1_000_000) {
+            esperar(adelanto / 1_000_000);
+        }
+    }
+
+    // --- Restauración ---
+
+    private static void aplicarIncremento(Path delta, FileChannel salida) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(delta), 256 * 1024))) {
+            int tamanoPagina = entrada.readInt();
+            byte[] datos = new byte[tamanoPagina];
+            long pagina;
+            while ((pagina = entrada.readLong()) >= 0) {
+                entrada.readFully(datos);
+                ByteBuffer buffer = ByteBuffer.wrap(datos);
+                while (buffer.hasRemaining()) {
+                    salida.write(buffer, pagina * tamanoPagina + buffer.position());
+                }
+            }
+        }
+    }
+
+    private static void verificarPaginas(FileChannel archivo, int tamanoPagina, int[] crcs) throws IOException {
+        ByteBuffer pagina = ByteBuffer.allocate(tamanoPagina);
+        CRC32C crc = new CRC32C();
+        for (long i = 0; i < crcs.length - 1; i++) {
+            pagina.clear();
+            while (pagina.hasRemaining()) {
+                if (archivo.read(pagina, i * tamanoPagina + pagina.position()) < 0) {
+                    throw new IOException("Respaldo incompleto: falta la página " + i);
+                }
+            }
+            pagina.flip();
+            crc.reset();
+            crc.update(pagina);
+            if ((int) crc.getValue() != crcs[(int) i + 1]) {
+                throw new IOException("La página " + i + " del respaldo no coincide con su manifiesto");
+            }
+        }
+    }
+
+    private static void verificarIntegridad(Path archivo) throws SQLException {
+        try (Connection conexion = DriverManager.getConnection("jdbc:sqlite:" + archivo);
+             Statement stmt = conexion.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA integrity_check")) {
+            String resultado = rs.next() ? rs.getString(1) : null;
+            if (!"ok".equals(resultado)) {
+                throw new SQLException("El respaldo restaurado no pasa integrity_check: " + resultado);
+            }
+        }
+    }
+
+    // --- Manifiestos ---
+
+    private static void escribirManifiesto(Path archivo, int[] crcs) throws IOException {
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+            salida.writeInt(crcs.length);
+            for (int crc : crcs) {
+                salida.writeInt(crc);
+            }
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int[] leerManifiesto(Path archivo) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo)))) {
+            int[] crcs = new int[entrada.readInt()];
+            for (int i = 0; i < crcs.length; i++) {
+                crcs[i] = entrada.readInt();
+            }
+            return crcs;
+        }
+    }
+
+    private static Path ultimoManifiesto(Path directorio) {
+        int ultimo = siguienteIncremento(directorio) - 1;
+        Path manifiesto = directorio.resolve(ultimo > 0 ? nombreIncremento(ultimo) + ".crc" : "base.crc");
+        return Files.exists(manifiesto) ? manifiesto : null;
+    }
+
+    // Número del próximo incremento: el primero sin manifiesto (los incompletos no tienen .crc)
+    private static int siguienteIncremento(Path directorio) {
+        if (!Files.exists(directorio.resolve("base.crc"))) return 1;
+        int n = 1;
+        while (Files.exists(directorio.resolve(nombreIncremento(n) + ".crc"))) {
+            n++;
+        }
+        return n;
+    }
+
+    private static String nombreIncremento(int numero) {
+        return String.format("incremento-%04d", numero);
+    }
+
+    private static void esperar(long milisegundos) {
+        try {
+            Thread.sleep(milisegundos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.citasmedicas.persistence;
+
+import java.nio.file.Path;
+
+/**
+ * Resultado de importar un archivo CSV: filas leídas, importadas y rechazadas, y el archivo
+ * con las filas rechazadas y su motivo (null si no se rechazó ninguna).
+ * Si la importación del archivo falló, getError() da el motivo y las importadas son solo las de
+ * los lotes confirmados antes del fallo.
+ */
+public class ResultadoImportacion {
+    private final String archivo;
+    private final long leidas;
+    private final long importadas;
+    private final long rechazadas;
+    private final Path archivoRechazos;
+    private final String error;
+
+    public ResultadoImportacion(String archivo, long leidas, long importadas, long rechazadas, Path archivoRechazos) {
+        this(archivo, leidas, importadas, rechazadas, archivoRechazos, null);
+    }
+
+    public ResultadoImportacion(String archivo, long leidas, long importadas, long rechazadas, Path archivoRechazos,
+                                String error) {
+        this.archivo = archivo;
+        this.leidas = leidas;
+        this.importadas = importadas;
+        this.rechazadas = rechazadas;
+        this.archivoRechazos = archivoRechazos;
+        this.error = error;
+    }
+
+    public String getArchivo() {
+        return archivo;
+    }
+
+    public long getLeidas() {
+        return leidas;
+    }
+
+    public long getImportadas() {
+        return importadas;
+    }
+
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    public Path getArchivoRechazos() {
+        return archivoRechazos;
+    }
+
+    // Motivo por el que el archivo no se importó completo, o null si se importó entero
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return archivo + ": " + leidas + " leídas, " + importadas + " importadas, " + rechazadas + " rechazadas" +
+                (archivoRechazos != null ? " (ver " + archivoRechazos + ")" : "") +
+                (error != null ? ". ERROR: " + error : "");
+    }
+}
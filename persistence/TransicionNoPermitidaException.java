@@ -0,0 +1,14 @@
+package com.citasmedicas.persistence;
+
+import java.sql.SQLException;
+
+/**
+ * La cita guardada está en un estado desde el que no se puede pasar al estado pedido
+ * (ver EstadoCita.puedePasarA). Es una SQLException por lo mismo que CitaSolapadaException.
+ */
+public class TransicionNoPermitidaException extends SQLException {
+
+    public TransicionNoPermitidaException(String mensaje) {
+        super(mensaje);
+    }
+}
@@ -0,0 +1,72 @@
+package com.citasmedicas.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.citasmedicas.model.Historial;
+import com.citasmedicas.model.Paciente;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * desconectar() mientras otros hilos leen y escriben: las operaciones en curso terminan o
+ * fallan con el error habitual, sin NullPointerException y sin quedarse esperando una conexión.
+ */
+class DesconexionConcurrenteTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void desconectarConOperacionesEnCurso() throws Exception {
+        BaseDatos baseDatos = new BaseDatos(directorio.resolve("citas.db"), 100, 2);
+        for (int i = 0; i < 50; i++) {
+            baseDatos.guardarPaciente(new Paciente("Paciente " + i, "DNI" + i, 30, new Historial(null)));
+        }
+
+        int hilos = 8; // Más hilos que lectores: algunos esperan una conexión al desconectar
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        Queue<Throwable> errores = new ConcurrentLinkedQueue<>();
+        CountDownLatch arrancados = new CountDownLatch(hilos);
+        List<Runnable> tareas = new ArrayList<>();
+        for (int h = 0; h < hilos; h++) {
+            int hilo = h;
+            tareas.add(() -> {
+                arrancados.countDown();
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        if (hilo % 4 == 0) {
+                            baseDatos.guardarPaciente(new Paciente("Nuevo " + hilo + "-" + i, "N" + hilo + i, 40, new Historial(null)));
+                        } else {
+                            baseDatos.obtenerTodosPacientes();
+                            baseDatos.buscarPacientes("paciente", 10);
+                            try {
+                                baseDatos.obtenerPaginaCitas(null, null, 20);
+                            } catch (java.sql.SQLException e) {
+                                // Esperado tras desconectar
+                            }
+                        }
+                    }
+                } catch (Throwable t) {
+                    errores.add(t);
+                }
+            });
+        }
+        tareas.forEach(ejecutor::execute);
+        arrancados.await();
+        Thread.sleep(20);
+        baseDatos.desconectar();
+
+        ejecutor.shutdown();
+        assertTrue(ejecutor.awaitTermination(30, TimeUnit.SECONDS), "Algún hilo quedó esperando una conexión");
+        assertTrue(errores.isEmpty(), () -> "Errores inesperados: " + errores);
+    }
+}
@@ -0,0 +1,73 @@
+package com.citasmedicas.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.citasmedicas.model.Cita;
+import com.citasmedicas.model.EstadoCita;
+import com.citasmedicas.model.Historial;
+import com.citasmedicas.model.Medico;
+import com.citasmedicas.model.Paciente;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * guardarCita solo cambia el estado de una cita guardada si EstadoCita.puedePasarA lo permite.
+ */
+class GuardarCitaTest {
+
+    @TempDir
+    Path directorio;
+
+    private BaseDatos baseDatos;
+
+    @BeforeEach
+    void abrir() {
+        baseDatos = new BaseDatos(directorio.resolve("citas.db"));
+    }
+
+    @AfterEach
+    void cerrar() {
+        baseDatos.desconectar();
+    }
+
+    @Test
+    void citaRealizadaNoVuelveAProgramada() {
+        Cita cita = nuevaCita();
+        assertTrue(baseDatos.guardarCita(cita));
+        assertTrue(baseDatos.actualizarEstadoCita(cita.getId(), EstadoCita.REALIZADA));
+        int[] totales = baseDatos.obtenerTotalesRealizadas();
+
+        Cita leida = baseDatos.obtenerCitaPorId(cita.getId());
+        leida.setEstadoDesdeDB(EstadoCita.PROGRAMADA);
+        assertFalse(baseDatos.guardarCita(leida));
+
+        assertEquals(EstadoCita.REALIZADA, baseDatos.obtenerCitaPorId(cita.getId()).getEstado());
+        assertEquals(totales[0], baseDatos.obtenerTotalesRealizadas()[0]);
+    }
+
+    @Test
+    void citaGuardadaConTransicionPermitida() {
+        Cita cita = nuevaCita();
+        assertTrue(baseDatos.guardarCita(cita));
+        cita.setMotivo("Control anual");
+        assertTrue(baseDatos.guardarCita(cita)); // Mismo estado: se guarda
+        cita.cambiarEstado(EstadoCita.CANCELADA);
+        assertTrue(baseDatos.guardarCita(cita));
+        assertEquals(EstadoCita.CANCELADA, baseDatos.obtenerCitaPorId(cita.getId()).getEstado());
+    }
+
+    private Cita nuevaCita() {
+        Paciente paciente = new Paciente("Luis Paredes", "87654321", 35, new Historial(null));
+        baseDatos.guardarPaciente(paciente);
+        Medico medico = new Medico("Dra. Flores", "Cardiología");
+        baseDatos.guardarMedico(medico);
+        return new Cita(paciente, medico, LocalDate.of(2030, 3, 4), LocalTime.of(9, 0), "Consulta");
+    }
+}
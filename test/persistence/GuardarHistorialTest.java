@@ -0,0 +1,119 @@
+package com.citasmedicas.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.citasmedicas.model.Historial;
+import com.citasmedicas.model.Paciente;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Entradas de historial cuyo guardado falla después del INSERT por lotes: el rollback quita sus
+ * filas, así que deben volver a quedar sin ID y guardarse (una sola vez) en el siguiente intento.
+ * El fallo se provoca renombrando el índice BusquedaPacientes, que se actualiza después del lote.
+ * También: una entrada guardada antes de la carga diferida del historial no aparece dos veces.
+ */
+class GuardarHistorialTest {
+
+    @TempDir
+    Path directorio;
+
+    private Path archivo;
+    private BaseDatos baseDatos;
+
+    @BeforeEach
+    void abrir() {
+        archivo = directorio.resolve("citas.db");
+        baseDatos = new BaseDatos(archivo);
+    }
+
+    @AfterEach
+    void cerrar() {
+        baseDatos.desconectar();
+    }
+
+    @Test
+    void entradasSeReintentanSiFallaLaTransaccion() throws SQLException {
+        Paciente paciente = pacienteConEntrada();
+
+        ejecutar("ALTER TABLE BusquedaPacientes RENAME TO BusquedaPacientesAparte");
+        baseDatos.guardarPaciente(paciente); // Falla al indexar y se deshace
+        assertEquals(0, paciente.getHistorial().getEntradasNuevas().get(0).getId());
+        assertEquals(0, contarEntradas(paciente.getId()));
+
+        ejecutar("ALTER TABLE BusquedaPacientesAparte RENAME TO BusquedaPacientes");
+        baseDatos.guardarPaciente(paciente);
+        assertEquals(0, paciente.getHistorial().getEntradasNuevas().size());
+        assertEquals(1, contarEntradas(paciente.getId()));
+    }
+
+    @Test
+    void entradasSeReintentanSiFallaLaEscrituraDiferida() throws SQLException {
+        Paciente paciente = pacienteConEntrada();
+        baseDatos.habilitarEscrituraDiferida(16, 8, 5);
+
+        ejecutar("ALTER TABLE BusquedaPacientes RENAME TO BusquedaPacientesAparte");
+        try {
+            baseDatos.guardarPacienteDiferido(paciente).join();
+        } catch (CompletionException e) {
+            // Esperado: la operación se deshace hasta su savepoint
+        }
+        assertEquals(0, paciente.getHistorial().getEntradasNuevas().get(0).getId());
+        assertEquals(0, contarEntradas(paciente.getId()));
+
+        ejecutar("ALTER TABLE BusquedaPacientesAparte RENAME TO BusquedaPacientes");
+        baseDatos.guardarPacienteDiferido(paciente).join();
+        assertEquals(0, paciente.getHistorial().getEntradasNuevas().size());
+        assertEquals(1, contarEntradas(paciente.getId()));
+    }
+
+    @Test
+    void entradaGuardadaAntesDeCargarNoSeDuplica() {
+        Paciente guardado = pacienteConEntrada();
+        baseDatos.guardarPaciente(guardado);
+
+        Paciente paciente = baseDatos.obtenerPacientePorId(guardado.getId());
+        assertFalse(paciente.getHistorial().isCargado());
+        paciente.getHistorial().addEntrada("Cita completada");
+        baseDatos.guardarPaciente(paciente); // Guarda la entrada sin cargar el historial
+
+        List<Historial.HistorialEntry> entradas = paciente.getHistorial().getEntradas(); // Carga diferida
+        assertEquals(2, entradas.size());
+        assertEquals(1, entradas.stream().filter(e -> e.getDescripcion().equals("Cita completada")).count());
+    }
+
+    // Paciente ya guardado con una entrada nueva pendiente de guardar
+    private Paciente pacienteConEntrada() {
+        Historial historial = new Historial(null);
+        Paciente paciente = new Paciente("Ana Ruiz", "12345678", 40, historial);
+        baseDatos.guardarPaciente(paciente);
+        historial.addEntrada("Control de presión arterial");
+        return paciente;
+    }
+
+    private void ejecutar(String sql) throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archivo);
+             Statement st = c.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    private int contarEntradas(String pacienteId) throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archivo);
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM HistorialEntradas WHERE paciente_id = '" + pacienteId + "'")) {
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.citasmedicas.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.citasmedicas.model.Historial;
+import com.citasmedicas.model.Paciente;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * importarCsv rechaza las citas solapadas como el resto de filas no válidas, y un archivo que
+ * falla queda reflejado en su resultado y en el de los archivos que ya no se importan. Solo se
+ * reservan los IDs de las filas importadas.
+ */
+class ImportarCsvTest {
+
+    @TempDir
+    Path directorio;
+
+    private BaseDatos baseDatos;
+
+    @BeforeEach
+    void abrir() {
+        baseDatos = new BaseDatos(directorio.resolve("citas.db"));
+    }
+
+    @AfterEach
+    void cerrar() {
+        baseDatos.desconectar();
+    }
+
+    @Test
+    void citaSolapadaSeRechaza() throws IOException {
+        Path pacientes = escribir("pacientes.csv", "id,nombre,dni\np1,Ana,111\n");
+        Path medicos = escribir("medicos.csv", "id,nombre,especialidad\nm1,Dr. Luis,General\n");
+        Path citas = escribir("citas.csv", "id,paciente_id,medico_id,fecha,hora,estado,duracion\n" +
+                "c1,p1,m1,2030-03-04,09:00,,60\n" +
+                "c2,p1,m1,2030-03-04,09:30,,30\n" + // Dentro de c1
+                "c3,p1,m1,2030-03-04,10:00,,30\n" + // Empieza cuando termina c1
+                "c4,p1,m1,2030-03-04,10:00,Cancelada,30\n"); // Las canceladas no ocupan hueco
+
+        List<ResultadoImportacion> resultados = baseDatos.importarCsv(pacientes, medicos, citas, null);
+
+        ResultadoImportacion resultado = resultados.get(2);
+        assertNull(resultado.getError());
+        assertEquals(3, resultado.getImportadas());
+        assertEquals(1, resultado.getRechazadas());
+        List<String> rechazos = Files.readAllLines(resultado.getArchivoRechazos(), StandardCharsets.UTF_8);
+        assertEquals(2, rechazos.size());
+        assertTrue(rechazos.get(1).startsWith("c2,"), rechazos.get(1));
+    }
+
+    @Test
+    void archivoFallidoDetieneLaImportacion() throws IOException {
+        Path pacientes = escribir("pacientes.csv", "id,nombre,dni\np1,Ana,111\n");
+        Path medicos = escribir("medicos.csv", "id,nombre\nm1,Dr. Luis\n"); // Falta la especialidad
+        Path citas = escribir("citas.csv", "id,paciente_id,medico_id,fecha,hora\nc1,p1,m1,2030-03-04,09:00\n");
+
+        List<ResultadoImportacion> resultados = baseDatos.importarCsv(pacientes, medicos, citas, null);
+
+        assertEquals(3, resultados.size());
+        assertNull(resultados.get(0).getError());
+        assertEquals(1, resultados.get(0).getImportadas());
+        assertNotNull(resultados.get(1).getError());
+        assertNotNull(resultados.get(2).getError());
+        assertEquals(0, resultados.get(2).getImportadas());
+        assertEquals(0, baseDatos.contarCitas(null));
+    }
+
+    @Test
+    void soloSeReservanLosIdsImportados() throws IOException, SQLException {
+        long antes = contador("paciente");
+        Path pacientes = escribir("pacientes.csv", "id,nombre,dni\np1,Ana,111\np2,Luis,222\np3,Rosa,111\n"); // p3: DNI repetido
+
+        ResultadoImportacion resultado = baseDatos.importarCsv(pacientes, null, null, null).get(0);
+
+        assertEquals(2, resultado.getImportadas());
+        assertEquals(antes + 2, contador("paciente"));
+        Paciente nuevo = new Paciente("Elena", "333", 30, new Historial(null));
+        baseDatos.guardarPaciente(nuevo); // Su ID no choca con los importados
+        assertEquals(3, baseDatos.obtenerTodosPacientes().size());
+    }
+
+    private long contador(String nombre) throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + directorio.resolve("citas.db"));
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT value FROM IdCounters WHERE name = '" + nombre + "'")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private Path escribir(String nombre, String contenido) throws IOException {
+        return Files.writeString(directorio.resolve(nombre), contenido, StandardCharsets.UTF_8);
+    }
+}
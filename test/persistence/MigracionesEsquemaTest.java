@@ -0,0 +1,91 @@
+package com.citasmedicas.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * El recálculo de agregados va en la misma transacción que el último paso: si falla, la base de
+ * datos se queda en la versión anterior y el paso se repite en el siguiente arranque. Una base
+ * anterior a las migraciones pasa por todos los pasos (v5 con el esquema de entonces).
+ */
+class MigracionesEsquemaTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void falloDelRecalculoNoConfirmaLaUltimaVersion() throws SQLException {
+        Path archivo = directorio.resolve("citas.db");
+        new BaseDatos(archivo).desconectar(); // Esquema completo
+        int objetivo = MigracionesEsquema.versionObjetivo();
+
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archivo)) {
+            // Vuelve a la versión anterior y hace que el recálculo falle
+            ejecutar(c, "DROP TABLE BusquedaPacientes",
+                    "DROP TABLE RealizadasPorMedico",
+                    "PRAGMA user_version = " + (objetivo - 1));
+
+            assertThrows(SQLException.class, () -> MigracionesEsquema.aplicar(c));
+            assertEquals(objetivo - 1, MigracionesEsquema.leerVersion(c));
+            assertFalse(existeTabla(c, "BusquedaPacientes")); // El último paso también se deshizo
+
+            ejecutar(c, "CREATE TABLE RealizadasPorMedico (medico_id TEXT PRIMARY KEY, realizadas INTEGER NOT NULL)");
+            assertEquals(objetivo, MigracionesEsquema.aplicar(c));
+            assertEquals(objetivo, MigracionesEsquema.leerVersion(c));
+        }
+    }
+
+    @Test
+    void baseAnteriorALasMigracionesLlegaConAgregadosCorrectos() throws SQLException {
+        Path archivo = directorio.resolve("antigua.db");
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archivo)) {
+            // Tablas tal como las creaba la aplicación antes de las migraciones (user_version = 0)
+            ejecutar(c, "CREATE TABLE Pacientes (id TEXT PRIMARY KEY, nombre TEXT NOT NULL, dni TEXT NOT NULL UNIQUE, " +
+                            "edad INTEGER, antecedentes TEXT)",
+                    "CREATE TABLE Medicos (id TEXT PRIMARY KEY, nombre TEXT NOT NULL, especialidad TEXT NOT NULL)",
+                    "CREATE TABLE Citas (id TEXT PRIMARY KEY, paciente_id TEXT NOT NULL, medico_id TEXT NOT NULL, " +
+                            "fecha TEXT NOT NULL, hora TEXT NOT NULL, motivo TEXT, estado TEXT NOT NULL)",
+                    "INSERT INTO Pacientes VALUES ('P1', 'Ana', '111', 40, '')",
+                    "INSERT INTO Medicos VALUES ('M1', 'Dr. Luis', 'General')",
+                    "INSERT INTO Citas VALUES ('C1', 'P1', 'M1', '2024-01-02', '09:00', '', 'Realizada')",
+                    "INSERT INTO Citas VALUES ('C2', 'P1', 'M1', '02/01/2024', '10:00', '', 'Realizada')",
+                    "INSERT INTO Citas VALUES ('C3', 'P1', 'M1', '2024-01-03', '09:00', '', 'Programada')");
+
+            assertEquals(MigracionesEsquema.versionObjetivo(), MigracionesEsquema.aplicar(c));
+            assertEquals(2, contar(c, "SELECT realizadas FROM RealizadasPorMedico WHERE medico_id = 'M1'"));
+            assertEquals(2, contar(c, "SELECT realizadas FROM RealizadasPorPaciente WHERE paciente_id = 'P1'"));
+            assertEquals(1, contar(c, "SELECT COUNT(*) FROM RealizadasPorDia")); // Las dos el mismo día
+        }
+    }
+
+    private static int contar(Connection c, String sql) throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void ejecutar(Connection c, String... sentencias) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            for (String sql : sentencias) {
+                st.execute(sql);
+            }
+        }
+    }
+
+    private static boolean existeTabla(Connection c, String nombre) throws SQLException {
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE name = '" + nombre + "'")) {
+            return rs.getInt(1) > 0;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.citasmedicas.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.citasmedicas.model.Cita;
+import com.citasmedicas.model.Historial;
+import com.citasmedicas.model.Medico;
+import com.citasmedicas.model.Paciente;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * contarCitas cuenta exactamente las filas que devuelven las páginas, también si hay citas cuyo
+ * médico ya no existe (ModeloTablaCitas dimensiona la tabla con ese número).
+ */
+class PaginaCitasTest {
+
+    @TempDir
+    Path directorio;
+
+    private Path archivo;
+    private BaseDatos baseDatos;
+
+    @BeforeEach
+    void abrir() {
+        archivo = directorio.resolve("citas.db");
+        baseDatos = new BaseDatos(archivo);
+    }
+
+    @AfterEach
+    void cerrar() {
+        baseDatos.desconectar();
+    }
+
+    @Test
+    void citaSinMedicoNoSeCuenta() throws SQLException {
+        Paciente paciente = new Paciente("Luis Paredes", "87654321", 35, new Historial(null));
+        baseDatos.guardarPaciente(paciente);
+        Medico medico = new Medico("Dra. Flores", "Cardiología");
+        baseDatos.guardarMedico(medico);
+        for (int hora = 8; hora < 11; hora++) {
+            assertTrue(baseDatos.guardarCita(new Cita(paciente, medico, LocalDate.of(2030, 3, 4), LocalTime.of(hora, 0), "Consulta")));
+        }
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archivo);
+             Statement st = c.createStatement()) {
+            st.executeUpdate("UPDATE Citas SET medico_id = 'M-borrado' WHERE inicio = " +
+                    FechasCitas.aEpoch(LocalDate.of(2030, 3, 4), LocalTime.of(9, 0)));
+        }
+
+        assertEquals(2, baseDatos.contarCitas(null));
+        assertEquals(2, baseDatos.obtenerPaginaCitas(null, null, 100).size());
+    }
+}